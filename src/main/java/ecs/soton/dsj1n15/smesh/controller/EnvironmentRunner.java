@@ -1,23 +1,47 @@
 package ecs.soton.dsj1n15.smesh.controller;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import ecs.soton.dsj1n15.smesh.controller.TimerWheel.Timer;
 import ecs.soton.dsj1n15.smesh.model.environment.Environment;
 import ecs.soton.dsj1n15.smesh.radio.Radio;
 
 /**
- * Environment runner for executing simulation on a separate thread with incremental tick behaviour.
- * 
+ * Environment runner for executing simulation with incremental tick behaviour. The simulation can
+ * either be driven on the caller's thread using the blocking {@link #step()},
+ * {@link #runFor(long)} and {@link #runUntil(BooleanSupplier, long)} calls, or on a separate
+ * execution thread using the start/stop and unit controls or the asynchronous variants. The
+ * execution thread is only created when first needed and is parked whilst there is no work.
+ * <br>
+ * When event driven, stretches of time in which every radio is idle and nothing is transmitting are
+ * skipped straight to the next scheduled event or protocol wake up; as a skipped tick would have
+ * done nothing the results are identical to ticking through them. Radios are held in a
+ * {@link TimerWheel} by the next wake time of their tick listeners, so the next wake up is found
+ * without asking every listener. Tick listeners themselves are only ticked by their radio once
+ * their wake time is reached or a radio event they are interested in happens.
+ *
  * @author David Jones (dsj1n15)
  */
 public class EnvironmentRunner {
   /** The currently loaded environment */
-  private Environment environment = null;
-  /** Thread simulation is being executed on */
-  private final Thread runner;
+  private volatile Environment environment = null;
+  /** Thread simulation is being executed on, created on first use */
+  private Thread runner = null;
 
   /** Whether the environment is running */
   private volatile boolean running = false;
@@ -25,62 +49,357 @@ public class EnvironmentRunner {
   private volatile long unitsToRun = 0;
   /** The amount of time each unit represents */
   private volatile int timeUnit = 5;
+  /** Whether idle periods should be skipped */
+  private volatile boolean eventDriven = true;
 
   /** List of listeners */
   private List<EnvironmentRunnerListener> listeners = new ArrayList<>();
 
-  /** List of events to execute */
-  private Map<Long, List<Event>> eventMap = new LinkedHashMap<>();
+  /** List of events to execute, ordered by time */
+  private NavigableMap<Long, List<Event>> eventMap = new TreeMap<>();
+
+  /** Radios waiting for a future wake time, created at the environment time on first use */
+  private TimerWheel<Radio> wakeWheel = null;
+  /** Wake up of every radio that has been ticked, null if it is not waiting in the wheel */
+  private final Map<Radio, Timer<Radio>> wakeTimers = new HashMap<>();
+  /** Radios that were not idle or needed the next tick when last ticked, or are yet to be ticked */
+  private final Set<Radio> unsettled = new HashSet<>();
+  /** Environment wake version the unsettled radios are current for */
+  private long settledVersion = -1;
+
+  /** Lock guarding the execution thread state */
+  private final ReentrantLock lock = new ReentrantLock();
+  /** Signalled when new work is available for the execution thread */
+  private final Condition workAvailable = lock.newCondition();
+  /** Signalled when the execution thread has run out of work */
+  private final Condition workFinished = lock.newCondition();
+  /** Tasks queued for the execution thread */
+  private final Queue<Runnable> tasks = new ArrayDeque<>();
+  /** Whether the execution thread is parked waiting for work */
+  private volatile boolean parked = true;
+
+  /** Lock held whilst the simulation is being advanced, on any thread */
+  private final ReentrantLock executionLock = new ReentrantLock();
 
   /**
-   * Start a new execution thread running the environment.
+   * Create a new runner with no environment.
    */
   public EnvironmentRunner() {
-    runner = new Thread(new Runnable() {
-      @Override
-      public void run() {
-        while (!Thread.interrupted()) {
-          try {
-            Thread.sleep(50);
-          } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    // Execution thread is started on first use
+  }
+
+  /**
+   * @return The execution thread running the environment, started if it does not yet exist
+   */
+  public Thread getExecutionThread() {
+    lock.lock();
+    try {
+      if (runner == null) {
+        runner = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            execute();
           }
-          if (environment != null) {
-            while (running || unitsToRun > 0) {
-              // Run any initialisation events one time
-              if (environment.getTime() == 0) {
-                runEvents();
-              }
-              environment.addTime(timeUnit);
-              if (unitsToRun > 0) {
-                unitsToRun--;
-              }
-              // Do simulation behaviour
-              runEvents();
-              // Handle radio behaviour
-              for (Radio radio : environment.getNodes()) {
-                if (radio.getCurrentTransmission() == null) {
-                  radio.recv();
-                }
-                radio.tick();
-              }
-              // Let listeners know an update has occurred
-              for (EnvironmentRunnerListener listener : listeners) {
-                listener.update();
-              }
-            }
+        });
+        runner.start();
+      }
+      return runner;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Stop the execution thread if it has been started. Work that has not yet completed is
+   * abandoned.
+   */
+  public void shutdown() {
+    lock.lock();
+    try {
+      if (runner != null) {
+        runner.interrupt();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Main loop of the execution thread. Parks until there is work, runs any queued tasks and any
+   * requested units, then signals waiters once there is nothing left to do.
+   */
+  private void execute() {
+    while (!Thread.currentThread().isInterrupted()) {
+      Runnable task;
+      lock.lock();
+      try {
+        while (!hasWork()) {
+          parked = true;
+          workFinished.signalAll();
+          workAvailable.await();
+        }
+        parked = false;
+        task = tasks.poll();
+      } catch (InterruptedException e) {
+        parked = true;
+        workFinished.signalAll();
+        Thread.currentThread().interrupt();
+        return;
+      } finally {
+        lock.unlock();
+      }
+      if (task != null) {
+        task.run();
+      } else {
+        runUnits();
+      }
+    }
+  }
+
+  /**
+   * @return Whether the execution thread has anything to do, must be called whilst holding the
+   *         lock
+   */
+  private boolean hasWork() {
+    return !tasks.isEmpty() || (environment != null && (running || unitsToRun > 0));
+  }
+
+  /**
+   * Run units on the execution thread until stopped or all requested units have been run.
+   */
+  private void runUnits() {
+    executionLock.lock();
+    try {
+      while (running || unitsToRun > 0) {
+        long consumed = advance(running ? Long.MAX_VALUE : unitsToRun);
+        lock.lock();
+        try {
+          if (unitsToRun > 0) {
+            unitsToRun = Math.max(0, unitsToRun - consumed);
           }
+        } finally {
+          lock.unlock();
         }
       }
+    } finally {
+      executionLock.unlock();
+    }
+  }
+
+  /**
+   * Advance the simulation by either a single unit or a block of skipped idle units.
+   *
+   * @param maxUnits The maximum number of units that may be consumed, Long.MAX_VALUE if unbounded
+   * @return The number of units consumed
+   */
+  private long advance(long maxUnits) {
+    // Run any initialisation events one time
+    if (environment.getTime() == 0) {
+      runEvents();
+    }
+    updateWakeWheel();
+    // Jump over any period where nothing can happen
+    long idleUnits = getIdleUnits(maxUnits);
+    if (idleUnits > 0) {
+      skipUnits(idleUnits);
+      return idleUnits;
+    }
+    environment.addTime(timeUnit);
+    updateWakeWheel();
+    // Do simulation behaviour
+    runEvents();
+    // Handle radio behaviour
+    for (Radio radio : environment.getNodes()) {
+      if (radio.getCurrentTransmission() == null) {
+        radio.recv();
+      }
+      radio.tick();
+      scheduleWake(radio);
+    }
+    if (wakeTimers.size() > environment.getNodes().size()) {
+      forgetRemovedNodes();
+    }
+    // Every node has now reported its state
+    settledVersion = environment.getWakeVersion();
+    // Let listeners know an update has occurred
+    for (EnvironmentRunnerListener listener : listeners) {
+      listener.update();
+    }
+    return 1;
+  }
+
+  /**
+   * Acquire the execution lock for running on the caller's thread.
+   */
+  private void acquireForCaller() {
+    if (environment == null) {
+      throw new IllegalStateException("No environment to run");
+    }
+    if (!executionLock.tryLock()) {
+      throw new IllegalStateException("Runner is already executing");
+    }
+    if (running || unitsToRun > 0) {
+      executionLock.unlock();
+      throw new IllegalStateException("Runner has units scheduled on its execution thread");
+    }
+  }
+
+  /**
+   * Run a single unit on the caller's thread.
+   */
+  public void step() {
+    acquireForCaller();
+    try {
+      advance(1);
+    } finally {
+      executionLock.unlock();
+    }
+  }
+
+  /**
+   * Run for the given amount of time on the caller's thread, blocking until complete. The time is
+   * rounded up to a whole number of units.
+   *
+   * @param time Time in ms to run for
+   */
+  public void runFor(long time) {
+    acquireForCaller();
+    try {
+      long units = (long) Math.ceil(time / (double) timeUnit);
+      while (units > 0) {
+        units -= advance(units);
+      }
+    } finally {
+      executionLock.unlock();
+    }
+  }
+
+  /**
+   * Run on the caller's thread until the condition is met, blocking until complete. The condition
+   * is checked before running and after every unit, or block of skipped idle units, so a
+   * condition on time alone may be overshot; use {@link #runFor(long)} for those.
+   *
+   * @param condition Condition to stop at
+   * @param maxTime Maximum time in ms to run for before giving up, rounded up to a whole number of
+   *        units
+   * @return Whether the condition was met
+   */
+  public boolean runUntil(BooleanSupplier condition, long maxTime) {
+    acquireForCaller();
+    try {
+      long units = (long) Math.ceil(maxTime / (double) timeUnit);
+      while (!condition.getAsBoolean()) {
+        if (units <= 0) {
+          return false;
+        }
+        units -= advance(units);
+      }
+      return true;
+    } finally {
+      executionLock.unlock();
+    }
+  }
+
+  /**
+   * Run on the caller's thread until the condition is met, blocking until complete. See
+   * {@link #runUntil(BooleanSupplier, long)}.
+   *
+   * @param condition Condition to stop at
+   */
+  public void runUntil(BooleanSupplier condition) {
+    runUntil(condition, Long.MAX_VALUE);
+  }
+
+  /**
+   * Run a single unit on the execution thread.
+   *
+   * @return Future that completes once the unit has run
+   */
+  public CompletableFuture<Void> stepAsync() {
+    return submit(() -> {
+      step();
+      return null;
     });
-    runner.start();
   }
 
   /**
-   * @return The execution thread running the environment
+   * Run for the given amount of time on the execution thread. See {@link #runFor(long)}.
+   *
+   * @param time Time in ms to run for
+   * @return Future that completes once the time has been run
    */
-  public Thread getExecutionThread() {
-    return runner;
+  public CompletableFuture<Void> runForAsync(long time) {
+    return submit(() -> {
+      runFor(time);
+      return null;
+    });
+  }
+
+  /**
+   * Run on the execution thread until the condition is met. See
+   * {@link #runUntil(BooleanSupplier, long)}.
+   *
+   * @param condition Condition to stop at
+   * @param maxTime Maximum time in ms to run for before giving up
+   * @return Future that completes with whether the condition was met
+   */
+  public CompletableFuture<Boolean> runUntilAsync(BooleanSupplier condition, long maxTime) {
+    return submit(() -> runUntil(condition, maxTime));
+  }
+
+  /**
+   * Queue a task for the execution thread.
+   *
+   * @param task Task to run
+   * @return Future that completes with the task result
+   */
+  private <T> CompletableFuture<T> submit(Supplier<T> task) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    getExecutionThread();
+    lock.lock();
+    try {
+      tasks.add(() -> {
+        try {
+          future.complete(task.get());
+        } catch (Throwable e) {
+          future.completeExceptionally(e);
+        }
+      });
+      workAvailable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    return future;
+  }
+
+  /**
+   * Block until the execution thread has no more work, i.e. it has been stopped or has finished
+   * running all requested units and tasks.
+   *
+   * @throws InterruptedException If interrupted whilst waiting
+   */
+  public void awaitIdle() throws InterruptedException {
+    lock.lock();
+    try {
+      while (isRunning()) {
+        workFinished.await();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Signal the execution thread that there may be new work, starting it if required.
+   */
+  private void signalWork() {
+    getExecutionThread();
+    lock.lock();
+    try {
+      workAvailable.signalAll();
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
@@ -94,8 +413,12 @@ public class EnvironmentRunner {
    * @param environment The new environment to run
    */
   public void setEnvironment(Environment environment) {
-    if (!running && unitsToRun == 0) {
+    if (!isRunning() && !executionLock.isLocked()) {
       this.environment = environment;
+      this.wakeWheel = null;
+      this.wakeTimers.clear();
+      this.unsettled.clear();
+      this.settledVersion = -1;
     } else {
       throw new IllegalStateException("Cannot change environment whilst running");
     }
@@ -105,23 +428,150 @@ public class EnvironmentRunner {
    * Run all events
    */
   private void runEvents() {
-    for (int i = (timeUnit); i > 0; i--) {
-      long time = environment.getTime() - i;
-      if (time < 0) {
-        continue;
+    long from = Math.max(0, environment.getTime() - timeUnit);
+    for (List<Event> events : eventMap.subMap(from, true, environment.getTime(), false).values()) {
+      for (Event event : events) {
+        event.execute();
       }
-      List<Event> events = eventMap.get(time);
-      if (events != null) {
-        for (Event event : events) {
-          event.execute();
+    }
+  }
+
+  /**
+   * Determine how many of the upcoming units can be skipped without changing the simulation. Units
+   * can only be skipped if there are no transmissions and every radio is idle and has been ticked,
+   * in which case the next unit that needs running is the first that reaches either a scheduled
+   * event or a radio wake up. The state each radio reported when last ticked is used unless the
+   * environment has seen a node woken since, so no radio needs visiting.
+   *
+   * @param maxUnits The maximum number of units that may be skipped, Long.MAX_VALUE if unbounded
+   * @return The number of units that can be skipped
+   */
+  private long getIdleUnits(long maxUnits) {
+    if (!eventDriven || !environment.getTransmissions().isEmpty()) {
+      return 0;
+    }
+    long time = environment.getTime();
+    // Events are run by the first unit that passes them
+    Long nextEvent = eventMap.ceilingKey(time);
+    long wakeTime = nextEvent == null ? Long.MAX_VALUE : nextEvent + 1;
+    if (settledVersion != environment.getWakeVersion()) {
+      resettle();
+    }
+    // Radios that need every tick or have listeners not yet ticked are not in the wheel
+    if (!unsettled.isEmpty()) {
+      return 0;
+    }
+    wakeTime = Math.min(wakeTime, wakeWheel.nextExpiry());
+    if (wakeTime <= time + timeUnit) {
+      return 0;
+    }
+    if (wakeTime == Long.MAX_VALUE) {
+      // Nothing will ever happen, only skip what has been asked for
+      return maxUnits == Long.MAX_VALUE ? 0 : maxUnits;
+    }
+    // Run the unit that reaches the wake time, skip those before it
+    long idleUnits = (wakeTime - time + timeUnit - 1) / timeUnit - 1;
+    return Math.min(idleUnits, maxUnits);
+  }
+
+  /**
+   * Skip a number of units, moving time forward without ticking the radios.
+   *
+   * @param units Number of units to skip
+   */
+  private void skipUnits(long units) {
+    environment.addTime(units * timeUnit);
+    updateWakeWheel();
+    for (Radio radio : environment.getNodes()) {
+      radio.fastForward();
+    }
+    // Let listeners know an update has occurred
+    for (EnvironmentRunnerListener listener : listeners) {
+      listener.update();
+    }
+  }
+
+  /**
+   * Find the unsettled radios again after nodes have been changed outside of their ticks.
+   */
+  private void resettle() {
+    forgetRemovedNodes();
+    long time = environment.getTime();
+    for (Radio radio : environment.getNodes()) {
+      if (!radio.isIdle() || !wakeTimers.containsKey(radio) || radio.getNextWakeTime() <= time) {
+        unsettled.add(radio);
+      } else {
+        unsettled.remove(radio);
+      }
+    }
+    settledVersion = environment.getWakeVersion();
+  }
+
+  /**
+   * Move the wake wheel up to the environment time, starting again if there is no wheel or the
+   * environment time has been moved backwards.
+   */
+  private void updateWakeWheel() {
+    long time = environment.getTime();
+    if (wakeWheel == null || time < wakeWheel.getTime()) {
+      wakeWheel = new TimerWheel<>(time);
+      wakeTimers.clear();
+      unsettled.clear();
+      settledVersion = -1;
+    } else {
+      // Any radio reaching its wake time is ticked and rescheduled this unit
+      wakeWheel.advance(time);
+    }
+  }
+
+  /**
+   * Reschedule a radio in the wake wheel using its wake time after being ticked.
+   *
+   * @param radio Radio that has just been ticked
+   */
+  private void scheduleWake(Radio radio) {
+    long wakeTime = radio.getNextWakeTime();
+    if (!radio.isIdle() || wakeTime <= environment.getTime()) {
+      unsettled.add(radio);
+    } else {
+      unsettled.remove(radio);
+    }
+    Timer<Radio> timer = wakeTimers.get(radio);
+    if (timer != null) {
+      if (timer.isScheduled() && timer.getTime() == wakeTime) {
+        return;
+      }
+      wakeWheel.cancel(timer);
+    }
+    // Radios needing every tick or never waking are not held
+    if (wakeTime > environment.getTime() && wakeTime != Long.MAX_VALUE) {
+      wakeTimers.put(radio, wakeWheel.schedule(wakeTime, radio));
+    } else {
+      wakeTimers.put(radio, null);
+    }
+  }
+
+  /**
+   * Remove the wake ups of radios that are no longer in the environment.
+   */
+  private void forgetRemovedNodes() {
+    Set<Radio> nodes = new HashSet<>(environment.getNodes());
+    Iterator<Entry<Radio, Timer<Radio>>> it = wakeTimers.entrySet().iterator();
+    while (it.hasNext()) {
+      Entry<Radio, Timer<Radio>> entry = it.next();
+      if (!nodes.contains(entry.getKey())) {
+        if (entry.getValue() != null) {
+          wakeWheel.cancel(entry.getValue());
         }
+        unsettled.remove(entry.getKey());
+        it.remove();
       }
     }
   }
 
   /**
    * Add new events, appending existing events.
-   * 
+   *
    * @param eventMap Map of new events
    */
   public void addEvents(Map<Long, List<Event>> eventMap) {
@@ -142,10 +592,16 @@ public class EnvironmentRunner {
   }
 
   /**
-   * @return Whether the simulation is running
+   * @return Whether the simulation is running on the execution thread
    */
   public boolean isRunning() {
-    return running || unitsToRun > 0;
+    // Task queue is changed by the execution thread so can only be read under the lock
+    lock.lock();
+    try {
+      return running || unitsToRun > 0 || !tasks.isEmpty() || !parked;
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
@@ -154,6 +610,7 @@ public class EnvironmentRunner {
   public void start() {
     this.running = true;
     this.unitsToRun = 0;
+    signalWork();
   }
 
   /**
@@ -175,14 +632,26 @@ public class EnvironmentRunner {
    * @param unitsToRun The new number of units to run
    */
   public void setUnitsToRun(int unitsToRun) {
-    this.unitsToRun = unitsToRun;
+    lock.lock();
+    try {
+      this.unitsToRun = unitsToRun;
+    } finally {
+      lock.unlock();
+    }
+    signalWork();
   }
 
   /**
    * @param unitsToRun Add units to run
    */
   public void addUnitsToRun(long unitsToRun) {
-    this.unitsToRun += unitsToRun;
+    lock.lock();
+    try {
+      this.unitsToRun += unitsToRun;
+    } finally {
+      lock.unlock();
+    }
+    signalWork();
   }
 
   /**
@@ -199,6 +668,20 @@ public class EnvironmentRunner {
     this.timeUnit = timeUnit;
   }
 
+  /**
+   * @return Whether idle periods are skipped
+   */
+  public boolean isEventDriven() {
+    return eventDriven;
+  }
+
+  /**
+   * @param eventDriven Whether idle periods should be skipped, if false every unit is ticked
+   */
+  public void setEventDriven(boolean eventDriven) {
+    this.eventDriven = eventDriven;
+  }
+
   /**
    * @return A list of valid time units
    */
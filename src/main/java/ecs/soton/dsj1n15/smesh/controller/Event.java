@@ -1,5 +1,7 @@
 package ecs.soton.dsj1n15.smesh.controller;
 
+import ecs.soton.dsj1n15.smesh.radio.Radio;
+
 /**
  * Event that can be executed by a EnvironmentRunner.
  * 
@@ -11,5 +13,10 @@ public interface Event {
    * Method that gets executed by runner.
    */
   public void execute();
-  
+
+  /**
+   * @return The radio the event acts on, null if it acts on the environment as a whole
+   */
+  public Radio getRadio();
+
 }
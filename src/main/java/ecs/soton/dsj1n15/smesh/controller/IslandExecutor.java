@@ -0,0 +1,316 @@
+package ecs.soton.dsj1n15.smesh.controller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import ecs.soton.dsj1n15.smesh.controller.ReplicateReport.Replicate;
+import ecs.soton.dsj1n15.smesh.model.SimulationContext;
+import ecs.soton.dsj1n15.smesh.model.environment.Environment;
+import ecs.soton.dsj1n15.smesh.model.environment.IslandPartition;
+import ecs.soton.dsj1n15.smesh.model.lora.protocol.Protocol;
+import ecs.soton.dsj1n15.smesh.model.lora.protocol.ReceiveCounts;
+import ecs.soton.dsj1n15.smesh.model.lora.protocol.TransmissionResult;
+import ecs.soton.dsj1n15.smesh.model.presets.Preset;
+import ecs.soton.dsj1n15.smesh.radio.Radio;
+
+/**
+ * Executor for running a single simulation split into interference islands across all available
+ * cores, see {@link IslandPartition}. The preset is generated once to find the islands, with every
+ * position a {@link MoveEvent} takes a node to joining islands it brings together. Each island is
+ * then run as its own simulation on its own runner and clock, generated from the same seed with
+ * every node outside of the island removed, and the results are merged. All randomness is keyed by
+ * node, so a node draws the same values whichever island it is simulated in.<br>
+ * Results only differ from running the whole environment where a signal falls below the margin,
+ * and in that receivers outside of an island do not record the island's transmissions as missed.
+ * Partitioning by configuration is only valid for protocols that do not reconfigure radios on to
+ * another channel; if a radio changes its interference group during a run an exception is thrown
+ * as soon as it does.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class IslandExecutor {
+  /** Factory generating a fresh preset using a given context */
+  private final Function<SimulationContext, Preset> presetFactory;
+  /** Factory attaching a protocol to a generated environment */
+  private final Function<Environment, Protocol<?>> protocolFactory;
+  /** Time in ms to run the simulation for */
+  private final long runTime;
+
+  /** Number of islands to run in parallel */
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+  /** The amount of time each unit represents */
+  private int timeUnit = 10;
+  /** Whether results should be filtered to only wanted transmissions */
+  private boolean filterWanted = false;
+  /** Maximum distance between nodes that can interact */
+  private double range = Double.POSITIVE_INFINITY;
+  /** How far below a receiver's noise floor a signal must be to be ignored, in dB */
+  private double margin = 30;
+  /** Whether nodes must also have compatible configurations to interact */
+  private boolean configurationAware = false;
+
+  /** Islands found by the last run, as node IDs */
+  private List<Set<Integer>> islands = new ArrayList<>();
+
+  /**
+   * Create a new island executor.
+   *
+   * @param presetFactory Factory generating a fresh preset using a given context
+   * @param protocolFactory Factory attaching a protocol to a generated environment
+   * @param runTime Time in ms to run the simulation for
+   */
+  public IslandExecutor(Function<SimulationContext, Preset> presetFactory,
+      Function<Environment, Protocol<?>> protocolFactory, long runTime) {
+    this.presetFactory = presetFactory;
+    this.protocolFactory = protocolFactory;
+    this.runTime = runTime;
+  }
+
+  /**
+   * Partition and run the simulation for a seed, blocking until every island has completed.
+   *
+   * @param seed Seed of the simulation
+   * @return Results of all islands merged, nodes and transmissions grouped by island
+   */
+  public Replicate run(long seed) {
+    islands = partition(seed);
+    // Start the largest islands first so that small islands fill in around them
+    List<Set<Integer>> order = new ArrayList<>(islands);
+    order.sort((a, b) -> Integer.compare(b.size(), a.size()));
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      Map<Set<Integer>, ForkJoinTask<Replicate>> tasks = new HashMap<>();
+      for (Set<Integer> island : order) {
+        tasks.put(island, pool.submit(() -> runIsland(seed, island)));
+      }
+      // Merge in island order
+      Map<Integer, ReceiveCounts> nodeResults = new LinkedHashMap<>();
+      List<TransmissionResult> transmissionResults = new ArrayList<>();
+      for (Set<Integer> island : islands) {
+        Replicate result = tasks.get(island).join();
+        nodeResults.putAll(result.nodeResults);
+        transmissionResults.addAll(result.transmissionResults);
+      }
+      return new Replicate(seed, nodeResults, transmissionResults);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Generate the simulation and find its islands, joining any that move events bring together.
+   *
+   * @param seed Seed of the simulation
+   * @return Node IDs of each island, in order of their first node
+   */
+  private List<Set<Integer>> partition(long seed) {
+    Preset preset = generate(seed);
+    Environment environment = preset.getEnvironment();
+    // Configurations are only final once the protocol has set up each radio
+    protocolFactory.apply(environment);
+    IslandPartition partition =
+        new IslandPartition(environment, range, margin, configurationAware);
+    // Link every position nodes are moved to in the order they are moved
+    for (List<Event> events : new TreeMap<>(preset.getEvents()).values()) {
+      boolean moved = false;
+      for (Event event : events) {
+        if (event instanceof MoveEvent) {
+          event.execute();
+          moved = true;
+        }
+      }
+      if (moved) {
+        partition.link(environment);
+      }
+    }
+    List<Set<Integer>> islands = new ArrayList<>();
+    for (List<Radio> island : partition.getIslands()) {
+      Set<Integer> ids = new HashSet<>();
+      for (Radio radio : island) {
+        ids.add(radio.getID());
+      }
+      islands.add(ids);
+    }
+    return islands;
+  }
+
+  /**
+   * Generate and run a single island on the current thread.
+   *
+   * @param seed Seed of the simulation
+   * @param island IDs of the nodes in the island
+   * @return Results of the island
+   */
+  private Replicate runIsland(long seed, Set<Integer> island) {
+    Preset preset = generate(seed);
+    Environment environment = preset.getEnvironment();
+    for (Radio radio : new ArrayList<>(environment.getNodes())) {
+      if (!island.contains(radio.getID())) {
+        environment.removeNode(radio);
+      }
+    }
+    Protocol<?> protocol = protocolFactory.apply(environment);
+    EnvironmentRunner runner = new EnvironmentRunner();
+    runner.setTimeUnit(timeUnit);
+    runner.setEnvironment(environment);
+    // Only keep events acting on the island or the whole environment
+    for (Entry<Long, List<Event>> entry : preset.getEvents().entrySet()) {
+      List<Event> events = new ArrayList<>();
+      for (Event event : entry.getValue()) {
+        if (event.getRadio() == null || event.getRadio().getEnvironment() == environment) {
+          events.add(event);
+        }
+      }
+      Map<Long, List<Event>> eventMap = new HashMap<>();
+      eventMap.put(entry.getKey(), events);
+      runner.addEvents(eventMap);
+    }
+    // A single island holds every node so cannot be joined to another
+    if (configurationAware && islands.size() > 1) {
+      Map<Radio, Object> groups = getInterferenceGroups(environment);
+      environment.addNodeListener(radio -> {
+        if (!Objects.equals(groups.get(radio), radio.getInterferenceGroup())) {
+          throw new IllegalStateException(String.format("Radio %d reconfigured on to another "
+              + "channel at %dms, islands may not be independent", radio.getID(),
+              environment.getTime()));
+        }
+      });
+    }
+    runner.runFor(runTime);
+    return new Replicate(seed, protocol.getNodeResults(filterWanted),
+        protocol.getTransmissionResults(filterWanted));
+  }
+
+  /**
+   * Generate the preset for a seed with debug output disabled.
+   *
+   * @param seed Seed of the simulation
+   * @return Generated preset
+   */
+  private Preset generate(long seed) {
+    SimulationContext context = new SimulationContext(seed);
+    context.getDebugger().setOutputEnabled(false);
+    return Objects.requireNonNull(presetFactory.apply(context));
+  }
+
+  /**
+   * @param environment Environment holding the nodes
+   * @return Mapping of each node to its current interference group
+   */
+  private static Map<Radio, Object> getInterferenceGroups(Environment environment) {
+    Map<Radio, Object> groups = new HashMap<>();
+    for (Radio radio : environment.getNodes()) {
+      groups.put(radio, radio.getInterferenceGroup());
+    }
+    return groups;
+  }
+
+  /**
+   * @return Islands found by the last run as sets of node IDs, in order of their first node
+   */
+  public List<Set<Integer>> getIslands() {
+    return islands;
+  }
+
+  /**
+   * @return Number of islands run in parallel
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * @param parallelism Number of islands to run in parallel
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1");
+    }
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * @return The time unit each island is run with
+   */
+  public int getTimeUnit() {
+    return timeUnit;
+  }
+
+  /**
+   * @param timeUnit The time unit to run each island with
+   */
+  public void setTimeUnit(int timeUnit) {
+    this.timeUnit = timeUnit;
+  }
+
+  /**
+   * @return Whether results are filtered to only wanted transmissions
+   */
+  public boolean isFilterWanted() {
+    return filterWanted;
+  }
+
+  /**
+   * @param filterWanted Whether results should be filtered to only wanted transmissions
+   */
+  public void setFilterWanted(boolean filterWanted) {
+    this.filterWanted = filterWanted;
+  }
+
+  /**
+   * @return Maximum distance between nodes that can interact, infinite if unknown
+   */
+  public double getRange() {
+    return range;
+  }
+
+  /**
+   * @param range Maximum distance between nodes that can interact, infinite if unknown; a finite
+   *        range avoids evaluating the link budget of every pair when partitioning
+   */
+  public void setRange(double range) {
+    if (!(range >= 0)) {
+      throw new IllegalArgumentException("Range must not be negative");
+    }
+    this.range = range;
+  }
+
+  /**
+   * @return How far below a receiver's noise floor a signal must be to be ignored, in dB
+   */
+  public double getMargin() {
+    return margin;
+  }
+
+  /**
+   * @param margin How far below a receiver's noise floor a signal must be to be ignored, in dB
+   */
+  public void setMargin(double margin) {
+    this.margin = margin;
+  }
+
+  /**
+   * @return Whether nodes must also have compatible configurations to interact
+   */
+  public boolean isConfigurationAware() {
+    return configurationAware;
+  }
+
+  /**
+   * @param configurationAware Whether nodes must also have compatible configurations to interact
+   */
+  public void setConfigurationAware(boolean configurationAware) {
+    this.configurationAware = configurationAware;
+  }
+
+}
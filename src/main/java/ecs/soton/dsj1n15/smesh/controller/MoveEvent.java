@@ -46,4 +46,9 @@ public class MoveEvent implements Event {
     radio.setY(newY);
   }
 
+  @Override
+  public Radio getRadio() {
+    return radio;
+  }
+
 }
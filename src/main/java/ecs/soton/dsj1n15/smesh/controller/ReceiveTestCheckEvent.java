@@ -60,4 +60,10 @@ public class ReceiveTestCheckEvent implements Event {
       }
     }
   }
+
+  @Override
+  public Radio getRadio() {
+    return receiver;
+  }
+
 }
@@ -0,0 +1,156 @@
+package ecs.soton.dsj1n15.smesh.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import ecs.soton.dsj1n15.smesh.controller.ReplicateReport.Replicate;
+import ecs.soton.dsj1n15.smesh.model.SimulationContext;
+import ecs.soton.dsj1n15.smesh.model.environment.Environment;
+import ecs.soton.dsj1n15.smesh.model.lora.protocol.Protocol;
+import ecs.soton.dsj1n15.smesh.model.presets.Preset;
+
+/**
+ * Executor for running independent replicates of a simulation across all available cores. Each
+ * replicate gets its own simulation context seeded with the replicate seed, which the preset
+ * factory must generate the preset with (e.g. using {@link Preset#setContext(SimulationContext)}).
+ * The protocol factory then attaches the protocol and the replicate is run for a fixed time on its
+ * own runner. Replicates are scheduled on a work-stealing pool and their results merged into a
+ * single report in seed order. Debug output is disabled for every replicate.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class ReplicateExecutor {
+  /** Factory generating a fresh preset using a given context */
+  private final Function<SimulationContext, Preset> presetFactory;
+  /** Factory attaching a protocol to a generated environment */
+  private final Function<Environment, Protocol<?>> protocolFactory;
+  /** Time in ms to run each replicate for */
+  private final long runTime;
+
+  /** Number of replicates to run in parallel */
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+  /** The amount of time each unit represents */
+  private int timeUnit = 10;
+  /** Whether results should be filtered to only wanted transmissions */
+  private boolean filterWanted = false;
+
+  /**
+   * Create a new replicate executor.
+   *
+   * @param presetFactory Factory generating a fresh preset using a given context
+   * @param protocolFactory Factory attaching a protocol to a generated environment
+   * @param runTime Time in ms to run each replicate for
+   */
+  public ReplicateExecutor(Function<SimulationContext, Preset> presetFactory,
+      Function<Environment, Protocol<?>> protocolFactory, long runTime) {
+    this.presetFactory = presetFactory;
+    this.protocolFactory = protocolFactory;
+    this.runTime = runTime;
+  }
+
+  /**
+   * Run a replicate for each seed, blocking until all have completed.
+   *
+   * @param seeds Seeds of the replicates to run
+   * @return Report containing the results of every replicate in seed order
+   */
+  public ReplicateReport run(long... seeds) {
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      List<ForkJoinTask<Replicate>> tasks = new ArrayList<>();
+      for (long seed : seeds) {
+        tasks.add(pool.submit(() -> runReplicate(seed)));
+      }
+      ReplicateReport report = new ReplicateReport();
+      for (ForkJoinTask<Replicate> task : tasks) {
+        report.add(task.join());
+      }
+      return report;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Run a replicate for each of the seeds from 0 to count - 1.
+   *
+   * @param count Number of replicates to run
+   * @return Report containing the results of every replicate in seed order
+   */
+  public ReplicateReport run(int count) {
+    long[] seeds = new long[count];
+    for (int i = 0; i < count; i++) {
+      seeds[i] = i;
+    }
+    return run(seeds);
+  }
+
+  /**
+   * Generate and run a single replicate on the current thread.
+   *
+   * @param seed Seed of the replicate
+   * @return Results of the replicate
+   */
+  private Replicate runReplicate(long seed) {
+    SimulationContext context = new SimulationContext(seed);
+    context.getDebugger().setOutputEnabled(false);
+    Preset preset = presetFactory.apply(context);
+    Environment environment = preset.getEnvironment();
+    Protocol<?> protocol = protocolFactory.apply(environment);
+    EnvironmentRunner runner = new EnvironmentRunner();
+    runner.setTimeUnit(timeUnit);
+    runner.setEnvironment(environment);
+    runner.addEvents(preset.getEvents());
+    runner.runFor(runTime);
+    return new Replicate(seed, protocol.getNodeResults(filterWanted),
+        protocol.getTransmissionResults(filterWanted));
+  }
+
+  /**
+   * @return Number of replicates run in parallel
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * @param parallelism Number of replicates to run in parallel
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1");
+    }
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * @return The time unit each replicate is run with
+   */
+  public int getTimeUnit() {
+    return timeUnit;
+  }
+
+  /**
+   * @param timeUnit The time unit to run each replicate with
+   */
+  public void setTimeUnit(int timeUnit) {
+    this.timeUnit = timeUnit;
+  }
+
+  /**
+   * @return Whether results are filtered to only wanted transmissions
+   */
+  public boolean isFilterWanted() {
+    return filterWanted;
+  }
+
+  /**
+   * @param filterWanted Whether results should be filtered to only wanted transmissions
+   */
+  public void setFilterWanted(boolean filterWanted) {
+    this.filterWanted = filterWanted;
+  }
+
+}
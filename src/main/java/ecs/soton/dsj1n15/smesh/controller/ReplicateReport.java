@@ -0,0 +1,118 @@
+package ecs.soton.dsj1n15.smesh.controller;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import ecs.soton.dsj1n15.smesh.lib.Utilities;
+import ecs.soton.dsj1n15.smesh.model.lora.protocol.ReceiveCounts;
+import ecs.soton.dsj1n15.smesh.model.lora.protocol.TransmissionResult;
+
+/**
+ * Aggregated results of a set of replicate simulations, each identified by its seed. Node results
+ * are summed by node ID over all replicates, transmission results are kept per replicate.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class ReplicateReport {
+  /** Results of each replicate in seed order */
+  private final List<Replicate> replicates = new ArrayList<>();
+
+  /**
+   * @param replicate Replicate results to add to the report
+   */
+  public void add(Replicate replicate) {
+    replicates.add(replicate);
+  }
+
+  /**
+   * @return Results of each replicate in the order they were added
+   */
+  public List<Replicate> getReplicates() {
+    return Collections.unmodifiableList(replicates);
+  }
+
+  /**
+   * @return Mapping of node ID to its receive results summed over all replicates
+   */
+  public Map<Integer, ReceiveCounts> getNodeResults() {
+    Map<Integer, ReceiveCounts> results = new TreeMap<>();
+    for (Replicate replicate : replicates) {
+      for (Entry<Integer, ReceiveCounts> entry : replicate.nodeResults.entrySet()) {
+        results.computeIfAbsent(entry.getKey(), x -> new ReceiveCounts()).add(entry.getValue());
+      }
+    }
+    return results;
+  }
+
+  /**
+   * @return Receive results of all transmissions summed over all replicates
+   */
+  public ReceiveCounts getTransmissionTotals() {
+    ReceiveCounts totals = new ReceiveCounts();
+    for (Replicate replicate : replicates) {
+      for (TransmissionResult result : replicate.transmissionResults) {
+        totals.add(result.counts);
+      }
+    }
+    return totals;
+  }
+
+  /**
+   * Print the summed results of every node.
+   *
+   * @param pw Print writer to use for writing to file
+   */
+  public void printNodeResults(PrintWriter pw) {
+    Utilities.printAndWrite(pw, "id," + ReceiveCounts.CSV_HEADER + "\n");
+    for (Entry<Integer, ReceiveCounts> entry : getNodeResults().entrySet()) {
+      Utilities.printAndWrite(pw, String.format("%d,%s\n", entry.getKey(), entry.getValue()));
+    }
+  }
+
+  /**
+   * Print the results of every transmission of every replicate, prefixed with the replicate seed.
+   *
+   * @param pw Print writer to use for writing to file
+   */
+  public void printTransmissionResults(PrintWriter pw) {
+    Utilities.printAndWrite(pw, "seed," + TransmissionResult.CSV_HEADER + "\n");
+    for (Replicate replicate : replicates) {
+      for (TransmissionResult result : replicate.transmissionResults) {
+        Utilities.printAndWrite(pw, String.format("%d,%s\n", replicate.seed, result));
+      }
+    }
+  }
+
+  /**
+   * Results of a single replicate simulation.
+   *
+   * @author David Jones (dsj1n15)
+   */
+  public static class Replicate {
+    /** Seed the replicate was generated with */
+    public final long seed;
+    /** Mapping of node ID to its receive results */
+    public final Map<Integer, ReceiveCounts> nodeResults;
+    /** Results of each finished transmission */
+    public final List<TransmissionResult> transmissionResults;
+
+    /**
+     * Create a new set of replicate results.
+     *
+     * @param seed Seed the replicate was generated with
+     * @param nodeResults Mapping of node ID to its receive results
+     * @param transmissionResults Results of each finished transmission
+     */
+    public Replicate(long seed, Map<Integer, ReceiveCounts> nodeResults,
+        List<TransmissionResult> transmissionResults) {
+      this.seed = seed;
+      this.nodeResults = nodeResults;
+      this.transmissionResults = transmissionResults;
+    }
+  }
+
+}
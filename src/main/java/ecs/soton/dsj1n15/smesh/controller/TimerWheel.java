@@ -0,0 +1,283 @@
+package ecs.soton.dsj1n15.smesh.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timer wheel holding items that are due at a given time in ms. Each level of the
+ * wheel has a slot for every value of one 6 bit digit of the due time, a timer being held at the
+ * level of the highest digit in which its time differs from the current time of the wheel. As the
+ * wheel moves forward the timers of a slot are moved down the levels once the current time reaches
+ * it, so scheduling, cancelling and expiring a timer take constant time. Timers of a level are
+ * always due before those of any higher level, so the next expiry is found using the occupied
+ * slots of the lowest occupied level without visiting every timer.
+ *
+ * @author David Jones (dsj1n15)
+ * @param <T> Type of item being scheduled
+ */
+public class TimerWheel<T> {
+  /** Number of bits of the time each level covers */
+  private static final int SLOT_BITS = 6;
+  /** Number of slots in each level */
+  private static final int SLOTS = 1 << SLOT_BITS;
+  /** Number of levels required to cover every non-negative time */
+  private static final int LEVELS = (Long.SIZE - 1 + SLOT_BITS - 1) / SLOT_BITS;
+
+  /** First timer in each slot of each level */
+  private final List<Timer<T>> slots = new ArrayList<>();
+  /** Bit mask of the occupied slots of each level */
+  private final long[] occupied = new long[LEVELS];
+  /** Current time of the wheel, every held timer is due after it */
+  private long time;
+  /** Number of held timers */
+  private int size = 0;
+
+  /**
+   * Create an empty timer wheel.
+   *
+   * @param time The current time in ms
+   */
+  public TimerWheel(long time) {
+    if (time < 0) {
+      throw new IllegalArgumentException("Timer wheel time must not be negative");
+    }
+    this.time = time;
+    for (int i = 0; i < LEVELS * SLOTS; i++) {
+      slots.add(null);
+    }
+  }
+
+  /**
+   * Schedule an item to be due at a time.
+   *
+   * @param time Time in ms the item is due at, after the current time of the wheel
+   * @param item Item to schedule
+   * @return Timer that can be used to cancel the item
+   */
+  public Timer<T> schedule(long time, T item) {
+    if (time <= this.time) {
+      throw new IllegalArgumentException("Timers must be due after the current time of the wheel");
+    }
+    Timer<T> timer = new Timer<>(time, item);
+    link(timer);
+    size++;
+    return timer;
+  }
+
+  /**
+   * Cancel a timer so that its item never becomes due. Timers that have already expired or been
+   * cancelled are ignored.
+   *
+   * @param timer Timer to cancel
+   */
+  public void cancel(Timer<T> timer) {
+    if (timer.level < 0) {
+      return;
+    }
+    unlink(timer);
+    size--;
+  }
+
+  /**
+   * @return The time in ms the next held timer is due at, Long.MAX_VALUE if none are held
+   */
+  public long nextExpiry() {
+    for (int level = 0; level < LEVELS; level++) {
+      // Timers of a level are always in slots after the current time's
+      int digit = getDigit(time, level);
+      long later = digit == SLOTS - 1 ? 0 : occupied[level] & (-1L << (digit + 1));
+      if (later != 0) {
+        long expiry = Long.MAX_VALUE;
+        Timer<T> timer = getSlot(level, Long.numberOfTrailingZeros(later));
+        for (; timer != null; timer = timer.next) {
+          expiry = Math.min(expiry, timer.time);
+        }
+        return expiry;
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+  /**
+   * Move the wheel forward, expiring every timer due at or before the new time.
+   *
+   * @param time The new time in ms, not before the current time of the wheel
+   * @return Items of the expired timers in the order they were due
+   */
+  public List<T> advance(long time) {
+    if (time < this.time) {
+      throw new IllegalArgumentException("Timer wheel cannot move backwards");
+    }
+    List<T> expired = new ArrayList<>();
+    while (true) {
+      // Step between expiries, nothing is held between them that needs moving down
+      long next = nextExpiry();
+      if (next > time) {
+        moveTo(time, expired);
+        return expired;
+      }
+      moveTo(next, expired);
+    }
+  }
+
+  /**
+   * Set the current time of the wheel, moving down the timers of every slot the new time has
+   * reached. There must be no held timers due before the new time.
+   *
+   * @param time The new time in ms
+   * @param expired List to add the items of timers that are due to
+   */
+  private void moveTo(long time, List<T> expired) {
+    this.time = time;
+    // Higher levels first so that timers moved down are then handled by the lower levels
+    for (int level = LEVELS - 1; level >= 0; level--) {
+      int digit = getDigit(time, level);
+      Timer<T> timer = getSlot(level, digit);
+      while (timer != null) {
+        Timer<T> next = timer.next;
+        unlink(timer);
+        if (timer.time <= time) {
+          size--;
+          expired.add(timer.item);
+        } else {
+          link(timer);
+        }
+        timer = next;
+      }
+    }
+  }
+
+  /**
+   * Add a timer to the slot of the highest digit its time differs from the current time in.
+   *
+   * @param timer Timer to add
+   */
+  private void link(Timer<T> timer) {
+    int level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(timer.time ^ time)) / SLOT_BITS;
+    int digit = getDigit(timer.time, level);
+    Timer<T> head = getSlot(level, digit);
+    timer.level = level;
+    timer.digit = digit;
+    timer.prev = null;
+    timer.next = head;
+    if (head != null) {
+      head.prev = timer;
+    }
+    slots.set(level * SLOTS + digit, timer);
+    occupied[level] |= 1L << digit;
+  }
+
+  /**
+   * Remove a timer from its slot.
+   *
+   * @param timer Timer to remove
+   */
+  private void unlink(Timer<T> timer) {
+    if (timer.prev != null) {
+      timer.prev.next = timer.next;
+    } else {
+      slots.set(timer.level * SLOTS + timer.digit, timer.next);
+      if (timer.next == null) {
+        occupied[timer.level] &= ~(1L << timer.digit);
+      }
+    }
+    if (timer.next != null) {
+      timer.next.prev = timer.prev;
+    }
+    timer.prev = null;
+    timer.next = null;
+    timer.level = -1;
+  }
+
+  /**
+   * @param level Level of the wheel
+   * @param digit Slot of the level
+   * @return The first timer in the slot, null if it is empty
+   */
+  private Timer<T> getSlot(int level, int digit) {
+    return slots.get(level * SLOTS + digit);
+  }
+
+  /**
+   * @param time A time in ms
+   * @param level Level of the wheel
+   * @return The digit of the time the level covers
+   */
+  private static int getDigit(long time, int level) {
+    return (int) ((time >>> (level * SLOT_BITS)) & (SLOTS - 1));
+  }
+
+  /**
+   * @return The current time of the wheel in ms
+   */
+  public long getTime() {
+    return time;
+  }
+
+  /**
+   * @return Number of timers held by the wheel
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return Whether the wheel holds no timers
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Scheduled item of a timer wheel.
+   *
+   * @author David Jones (dsj1n15)
+   * @param <T> Type of item being scheduled
+   */
+  public static final class Timer<T> {
+    /** Time in ms the item is due at */
+    private final long time;
+    /** Item that is scheduled */
+    private final T item;
+
+    /** Level of the wheel holding the timer, -1 once expired or cancelled */
+    private int level = -1;
+    /** Slot of the level holding the timer */
+    private int digit;
+    /** Previous timer in the slot */
+    private Timer<T> prev;
+    /** Next timer in the slot */
+    private Timer<T> next;
+
+    /**
+     * @param time Time in ms the item is due at
+     * @param item Item that is scheduled
+     */
+    private Timer(long time, T item) {
+      this.time = time;
+      this.item = item;
+    }
+
+    /**
+     * @return Time in ms the item is due at
+     */
+    public long getTime() {
+      return time;
+    }
+
+    /**
+     * @return Item that is scheduled
+     */
+    public T getItem() {
+      return item;
+    }
+
+    /**
+     * @return Whether the timer is still held by its wheel
+     */
+    public boolean isScheduled() {
+      return level >= 0;
+    }
+  }
+
+}
@@ -29,4 +29,9 @@ public class TransmissionEvent implements Event {
     radio.send(packet);
   }
 
+  @Override
+  public Radio getRadio() {
+    return radio;
+  }
+
 }
@@ -1,54 +1,71 @@
 package ecs.soton.dsj1n15.smesh.lib;
 
+import java.io.PrintStream;
+
 /**
- * Very simple static wrapper for sending print statements that can be toggled off globally.
- * 
+ * Very simple wrapper for sending print statements to a sink that can be toggled off. Each
+ * simulation holds its own debugger so that output can be controlled per simulation.
+ *
  * @author David Jones (dsj1n15)
  */
 public class Debugger {
+  /** Stream all output is sent to */
+  private final PrintStream out;
+
   /** Whether output is enabled for any debug reports */
-  private static boolean outputEnabled = true;
+  private volatile boolean outputEnabled = true;
 
   /**
-   * This class should not be instantiated.
+   * Create a new debugger that prints to standard output.
    */
-  private Debugger() {}
+  public Debugger() {
+    this(System.out);
+  }
+
+  /**
+   * Create a new debugger that prints to the given stream.
+   *
+   * @param out Stream to send output to
+   */
+  public Debugger(PrintStream out) {
+    this.out = out;
+  }
 
   /**
-   * @param outputEnabled Whether debug output should be enabled globally
+   * @param outputEnabled Whether debug output should be enabled
    */
-  public static void setOutputEnabled(boolean outputEnabled) {
-    Debugger.outputEnabled = outputEnabled;
+  public void setOutputEnabled(boolean outputEnabled) {
+    this.outputEnabled = outputEnabled;
   }
 
   /**
-   * @return Whether global debug output is enabled
+   * @return Whether debug output is enabled
    */
-  public static boolean isOutputEnabled() {
-    return Debugger.outputEnabled;
+  public boolean isOutputEnabled() {
+    return outputEnabled;
   }
 
   /**
    * Print with no linefeed if output is enabled.<br>
-   * See {@link System.out#print()}.
-   * 
+   * See {@link PrintStream#print(String)}.
+   *
    * @param obj Object to print
    */
-  public static void print(Object obj) {
-    if (Debugger.isOutputEnabled()) {
-      System.out.print(obj.toString());
+  public void print(Object obj) {
+    if (outputEnabled) {
+      out.print(obj.toString());
     }
   }
 
   /**
    * Print with linefeed if output is enabled.<br>
-   * See {@link System.out#println()}.
-   * 
+   * See {@link PrintStream#println(String)}.
+   *
    * @param obj Object to print
    */
-  public static void println(Object obj) {
-    if (Debugger.isOutputEnabled()) {
-      System.out.println(obj.toString());
+  public void println(Object obj) {
+    if (outputEnabled) {
+      out.println(obj.toString());
     }
   }
 
@@ -0,0 +1,82 @@
+package ecs.soton.dsj1n15.smesh.lib;
+
+/**
+ * Fast conversions between dBm and mW for code that converts many values and can accept a small
+ * error, such as the interval receive model. A 256 entry table with a short polynomial is used in
+ * place of {@link Math#pow} and {@link Math#log10}:<br>
+ * {@link #fastDbm2mw(double)} is within a relative error of 1e-11 of {@link Utilities#dbm2mw}.<br>
+ * {@link #fastMw2dbm(double)} is within an absolute error of 1e-11 dB of {@link Utilities#mw2dbm}.
+ * <br>
+ * Infinite, NaN, zero and negative values give the same results as the exact conversions.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class PowerConversion {
+  /** Number of table entries, a power of two */
+  private static final int TABLE_SIZE = 256;
+
+  /** log2(10) / 10, converts dB to a power of two */
+  private static final double DB_TO_LOG2 = Math.log(10) / Math.log(2) / 10;
+  /** 10 / log2(10), converts a power of two to dB */
+  private static final double LOG2_TO_DB = 10 / (Math.log(10) / Math.log(2));
+  /** Natural logarithm of 2 */
+  private static final double LN2 = Math.log(2);
+
+  /** 2 ^ (i / TABLE_SIZE) */
+  private static final double[] EXP2 = new double[TABLE_SIZE];
+  /** log2(1 + i / TABLE_SIZE) */
+  private static final double[] LOG2 = new double[TABLE_SIZE];
+  /** 1 / (1 + i / TABLE_SIZE) */
+  private static final double[] RECIPROCAL = new double[TABLE_SIZE];
+  static {
+    for (int i = 0; i < TABLE_SIZE; i++) {
+      double fraction = i / (double) TABLE_SIZE;
+      EXP2[i] = Math.pow(2, fraction);
+      LOG2[i] = Math.log1p(fraction) / LN2;
+      RECIPROCAL[i] = 1 / (1 + fraction);
+    }
+  }
+
+  /**
+   * Utility class, cannot be instantiated.
+   */
+  private PowerConversion() {}
+
+  /**
+   * @param dbm Value in dBm
+   * @return Value in mW, see class description for accuracy
+   */
+  public static double fastDbm2mw(double dbm) {
+    double exponent = dbm * DB_TO_LOG2;
+    // Leave values the table cannot represent to the exact conversion
+    if (!(exponent > -1000 && exponent < 1000)) {
+      return Utilities.dbm2mw(dbm);
+    }
+    double whole = Math.floor(exponent);
+    double scaled = (exponent - whole) * TABLE_SIZE;
+    int index = (int) scaled;
+    // 2 ^ r using a cubic, r < 1 / TABLE_SIZE
+    double t = (scaled - index) * (LN2 / TABLE_SIZE);
+    double remainder = 1 + t * (1 + t * (0.5 + t * (1 / 6.0)));
+    return Math.scalb(EXP2[index] * remainder, (int) whole);
+  }
+
+  /**
+   * @param mw Value in mW
+   * @return Value in dBm, see class description for accuracy
+   */
+  public static double fastMw2dbm(double mw) {
+    // Leave values the table cannot represent to the exact conversion
+    if (!(mw >= Double.MIN_NORMAL && mw <= Double.MAX_VALUE)) {
+      return Utilities.mw2dbm(mw);
+    }
+    int exponent = Math.getExponent(mw);
+    double mantissa = Math.scalb(mw, -exponent);
+    int index = (int) ((mantissa - 1) * TABLE_SIZE);
+    // log2(1 + r) using a quartic, r < 1 / TABLE_SIZE
+    double r = mantissa * RECIPROCAL[index] - 1;
+    double ln = r * (1 - r * (0.5 - r * (1 / 3.0 - r * 0.25)));
+    return (exponent + LOG2[index] + ln / LN2) * LOG2_TO_DB;
+  }
+
+}
@@ -1,7 +1,6 @@
 package ecs.soton.dsj1n15.smesh.lib;
 
 import java.io.PrintWriter;
-import java.util.Random;
 
 /**
  * Collection of extraneous utilities for whole project.
@@ -9,8 +8,6 @@ import java.util.Random;
  * @author David Jones (dsj1n15)
  */
 public class Utilities {
-  public static Random RANDOM = new Random(0);
-
   /**
    * @param mw Value in mW
    * @return Value in dBm
@@ -0,0 +1,110 @@
+package ecs.soton.dsj1n15.smesh.model;
+
+import java.util.Random;
+import ecs.soton.dsj1n15.smesh.model.environment.Environment;
+
+/**
+ * Counter-based random number stream. Rather than stepping a shared state, every value is a
+ * SplitMix64 hash of the stream key (seed, owner ID and purpose), the current simulation time and a
+ * counter of the draws already made at that time. A draw therefore only depends on what the owner
+ * has drawn for the same purpose earlier in the same tick, so results are reproducible regardless
+ * of the order radios are evaluated in or how many simulations share the process.<br>
+ * Keyed draws ({@link #doubleAt(long, long)}) depend only on their arguments and can be used where
+ * even the order within a tick should not matter.<br>
+ * Streams hold per-tick counter state and are not thread safe; each should only be used by the
+ * simulation that owns it.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class RandomStream extends Random {
+  private static final long serialVersionUID = 1L;
+
+  /** Owner ID used for streams that belong to the environment as a whole */
+  public static final int ENVIRONMENT_ID = -1;
+
+  /** Golden ratio increment used by SplitMix64 */
+  private static final long GAMMA = 0x9e3779b97f4a7c15L;
+
+  /** Key identifying the stream */
+  private final long key;
+  /** Environment providing the time draws are keyed by, time is fixed at 0 if null */
+  private final Environment environment;
+
+  /** Time of the last draw */
+  private long time = Long.MIN_VALUE;
+  /** Hash of the key and the time of the last draw */
+  private long timeKey;
+  /** Number of draws already made at the time of the last draw */
+  private long counter = 0;
+
+  /**
+   * Create a new stream.
+   *
+   * @param seed Seed of the simulation
+   * @param id ID of the owner of the stream
+   * @param purpose What the stream is used for
+   * @param environment Environment providing the time draws are keyed by, null for a stream that
+   *        is not time keyed
+   */
+  public RandomStream(long seed, long id, Purpose purpose, Environment environment) {
+    super(0);
+    this.key = mix(mix(mix(seed) + id * GAMMA) + purpose.ordinal());
+    this.environment = environment;
+  }
+
+  @Override
+  protected int next(int bits) {
+    long now = environment == null ? 0 : environment.getTime();
+    if (now != time) {
+      time = now;
+      timeKey = mix(key ^ mix(now));
+      counter = 0;
+    }
+    long value = mix(timeKey + GAMMA * ++counter);
+    return (int) (value >>> (64 - bits));
+  }
+
+  /**
+   * Get a keyed value in the range [0, 1). The same arguments will always return the same value and
+   * no stream state is changed.
+   *
+   * @param time Time to key the draw by
+   * @param subkey Further key for the draw, e.g. the ID of another radio
+   * @return Uniformly distributed value
+   */
+  public double doubleAt(long time, long subkey) {
+    long value = mix(mix(key ^ mix(time)) ^ mix(subkey + GAMMA));
+    return (value >>> 11) * 0x1.0p-53;
+  }
+
+  /**
+   * SplitMix64 finalising mix function.
+   *
+   * @param z Value to mix
+   * @return Mixed value
+   */
+  public static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * What a stream is used for, so that different uses by the same owner do not share values.
+   *
+   * @author David Jones (dsj1n15)
+   */
+  public enum Purpose {
+    /** Simulation setup such as node placement */
+    SETUP,
+    /** Noise added to signals as they are listened to */
+    LISTEN_NOISE,
+    /** Decisions on whether demodulation succeeds */
+    RECEIVE,
+    /** Test criteria on whether a transmission is wanted by a receiver */
+    WANTED,
+    /** Protocol decisions such as back-off and packet contents */
+    PROTOCOL
+  }
+
+}
@@ -0,0 +1,155 @@
+package ecs.soton.dsj1n15.smesh.model;
+
+import java.util.Random;
+import ecs.soton.dsj1n15.smesh.lib.Debugger;
+import ecs.soton.dsj1n15.smesh.model.RandomStream.Purpose;
+import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
+import ecs.soton.dsj1n15.smesh.model.lora.LoRaRadio;
+import ecs.soton.dsj1n15.smesh.model.lora.RFM95W;
+import ecs.soton.dsj1n15.smesh.model.lora.ReceiveMode;
+import ecs.soton.dsj1n15.smesh.model.lora.protocol.adaptive.AdaptiveTuning;
+
+/**
+ * Per-simulation state that would otherwise be global: the seed of all randomness, the type of
+ * radio presets generate, protocol tuning and the debug output sink. Every environment holds a
+ * context so that any number of simulations can run in the same process without interfering with
+ * each other. A context may be shared by simulations that run one after another, in which case
+ * they continue the same random sequence.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class SimulationContext {
+  /** Seed used when none is given */
+  public static final long DEFAULT_SEED = 0;
+
+  /** Seed for all randomness in the simulation */
+  private final long seed;
+
+  /** Random stream used for simulation setup */
+  private final RandomStream random;
+
+  /** Radio type generated by presets */
+  private volatile RadioType radioType = RadioType.RFM95W;
+
+  /** How generated LoRa radios evaluate the channel whilst listening */
+  private volatile ReceiveMode receiveMode = ReceiveMode.SLOT;
+
+  /** Tuning used by any adaptive broadcast protocol */
+  private final AdaptiveTuning adaptiveTuning = new AdaptiveTuning();
+
+  /** Sink for debug output */
+  private final Debugger debugger = new Debugger();
+
+  /**
+   * Create a new context using the default seed.
+   */
+  public SimulationContext() {
+    this(DEFAULT_SEED);
+  }
+
+  /**
+   * Create a new context.
+   *
+   * @param seed Seed for all randomness in the simulation
+   */
+  public SimulationContext(long seed) {
+    this.seed = seed;
+    this.random = new RandomStream(seed, RandomStream.ENVIRONMENT_ID, Purpose.SETUP, null);
+  }
+
+  /**
+   * @return Seed for all randomness in the simulation
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Get the random stream used for simulation setup, such as node placement. Each environment
+   * created with the context also draws its own seed from this stream, so environments generated
+   * one after another from the same context see different randomness. Randomness during a
+   * simulation should use the environment's time keyed streams, see
+   * {@link ecs.soton.dsj1n15.smesh.model.environment.Environment#getRandom(int, Purpose)}.
+   *
+   * @return Random stream used for simulation setup
+   */
+  public Random getRandom() {
+    return random;
+  }
+
+  /**
+   * @return The radio type generated by presets
+   */
+  public RadioType getRadioType() {
+    return radioType;
+  }
+
+  /**
+   * @param radioType The radio type presets should generate
+   */
+  public void setRadioType(RadioType radioType) {
+    this.radioType = radioType;
+  }
+
+  /**
+   * @return How generated LoRa radios evaluate the channel whilst listening
+   */
+  public ReceiveMode getReceiveMode() {
+    return receiveMode;
+  }
+
+  /**
+   * @param receiveMode How generated LoRa radios should evaluate the channel whilst listening
+   */
+  public void setReceiveMode(ReceiveMode receiveMode) {
+    this.receiveMode = receiveMode;
+  }
+
+  /**
+   * Create a LoRa radio of the configured radio type and receive mode. Will throw an exception if
+   * the current radio type selection is not LoRa.
+   *
+   * @param id ID of radio
+   * @param cfg LoRa configuration to use
+   * @return Created radio
+   */
+  public LoRaRadio createLoRaRadio(int id, LoRaCfg cfg) {
+    LoRaRadio radio;
+    switch (radioType) {
+      case LoRaRadio:
+        radio = new LoRaRadio(id, cfg);
+        break;
+      case RFM95W:
+        radio = new RFM95W(id, cfg);
+        break;
+      default:
+        throw new IllegalStateException("Current radio type is not a LoRa radio");
+    }
+    radio.setReceiveMode(receiveMode);
+    return radio;
+  }
+
+  /**
+   * @return Tuning used by any adaptive broadcast protocol
+   */
+  public AdaptiveTuning getAdaptiveTuning() {
+    return adaptiveTuning;
+  }
+
+  /**
+   * @return Sink for debug output
+   */
+  public Debugger getDebugger() {
+    return debugger;
+  }
+
+  /**
+   * Types of radio that can be created.
+   *
+   * @author David Jones (dsj1n15)
+   */
+  public enum RadioType {
+    LoRaRadio, RFM95W
+  }
+
+}
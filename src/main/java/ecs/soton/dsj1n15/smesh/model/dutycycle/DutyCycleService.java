@@ -0,0 +1,127 @@
+package ecs.soton.dsj1n15.smesh.model.dutycycle;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Duty cycle accounting for a single radio across every sub-band it transmits in. Each sub-band has
+ * its own duty cycle manager, picked using the frequency of the transmission, so a radio that
+ * changes channel is held to the limit of whichever sub-band it is currently using. Unless another
+ * manager is given, a sub-band is managed over a one hour period at its regulatory duty cycle, see
+ * {@link SubBand}. Channels outside every known sub-band share a single manager at
+ * {@link #DEFAULT_DUTY_CYCLE}.<br>
+ * {@link #whenCanTransmit(double, long, int)} gives the exact time a transmission becomes allowed,
+ * so callers can sleep until then rather than checking again every tick.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class DutyCycleService {
+  /** Period that sub-band duty cycles are calculated over by default */
+  public static final int DEFAULT_PERIOD = 60 * 60 * 1000;
+  /** Duty cycle used for channels that are not in a known sub-band by default */
+  public static final double DEFAULT_DUTY_CYCLE = 0.01;
+
+  /** Manager of each sub-band that has been used or configured */
+  private final Map<SubBand, DutyCycleManager> managers = new EnumMap<>(SubBand.class);
+  /** Manager of channels that are not in a known sub-band, null if not yet used or configured */
+  private DutyCycleManager otherManager = null;
+
+  /**
+   * Get the duty cycle manager for a sub-band, creating the default manager if none has been set.
+   *
+   * @param band The sub-band
+   * @return The duty cycle manager of the sub-band
+   */
+  public DutyCycleManager getManager(SubBand band) {
+    DutyCycleManager manager = managers.get(band);
+    if (manager == null) {
+      manager = new FullPeriodDutyCycleManager(band.getDutyCycle(), DEFAULT_PERIOD);
+      managers.put(band, manager);
+    }
+    return manager;
+  }
+
+  /**
+   * Get the duty cycle manager for the sub-band a channel is in. Channels that are not in a known
+   * sub-band all use the same manager.
+   *
+   * @param freq Centre frequency of the channel in MHz
+   * @return The duty cycle manager of the sub-band
+   */
+  public DutyCycleManager getManager(double freq) {
+    SubBand band = SubBand.of(freq);
+    if (band != null) {
+      return getManager(band);
+    }
+    if (otherManager == null) {
+      otherManager = new FullPeriodDutyCycleManager(DEFAULT_DUTY_CYCLE, DEFAULT_PERIOD);
+    }
+    return otherManager;
+  }
+
+  /**
+   * Use a different duty cycle manager for a sub-band, such as one with a lower duty cycle than
+   * the regulatory limit. Should be set before the sub-band is first used.
+   *
+   * @param band The sub-band
+   * @param manager Duty cycle manager to use
+   */
+  public void setManager(SubBand band, DutyCycleManager manager) {
+    if (band == null) {
+      throw new IllegalArgumentException("Sub-band must be given");
+    }
+    managers.put(band, manager);
+  }
+
+  /**
+   * Use a different duty cycle manager for the sub-band a channel is in, or for every channel not
+   * in a known sub-band. Should be set before the channel is first used.
+   *
+   * @param freq Centre frequency of the channel in MHz
+   * @param manager Duty cycle manager to use
+   */
+  public void setManager(double freq, DutyCycleManager manager) {
+    SubBand band = SubBand.of(freq);
+    if (band != null) {
+      setManager(band, manager);
+    } else {
+      otherManager = manager;
+    }
+  }
+
+  /**
+   * Determine whether a packet could be transmitted on a channel at this time legally.
+   *
+   * @param freq Centre frequency of the channel in MHz
+   * @param time The current time in ms
+   * @param airtime The full packet airtime in ms
+   * @return Whether the packet can be transmitted legally
+   */
+  public boolean canTransmit(double freq, long time, int airtime) {
+    return getManager(freq).canTransmit(time, airtime);
+  }
+
+  /**
+   * Record a transmission on a channel against its sub-band.
+   *
+   * @param freq Centre frequency of the channel in MHz
+   * @param time The current time in ms
+   * @param airtime The full packet airtime in ms
+   */
+  public void transmit(double freq, long time, int airtime) {
+    getManager(freq).transmit(time, airtime);
+  }
+
+  /**
+   * Determine the earliest time a packet can be transmitted on a channel legally.
+   *
+   * @param freq Centre frequency of the channel in MHz
+   * @param time The current time in ms
+   * @param airtime The full packet airtime in ms
+   * @return Time the packet can be sent
+   */
+  public long whenCanTransmit(double freq, long time, int airtime) {
+    return getManager(freq).whenCanTransmit(time, airtime);
+  }
+
+}
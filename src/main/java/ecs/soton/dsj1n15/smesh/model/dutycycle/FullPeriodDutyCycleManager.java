@@ -1,27 +1,46 @@
 package ecs.soton.dsj1n15.smesh.model.dutycycle;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
-
 /**
  * Duty cycle manager for calculating the allowed airtime over the full duty cycle interval. Allows
  * for sequential transmissions and more advanced behaviour over SingleTransmissionDutyCycleManager.
- * 
+ * <br>
+ * The used airtime only falls as the period moves forward, linearly between the points where
+ * transmissions start and finish leaving it. These points are held in a ledger in time order, kept
+ * as transmissions are added, along with the airtime in the period starting at a cursor and how
+ * many transmissions are part way out of it. Points are dropped as the cursor moves forward with
+ * queries, so the airtime of a period is found by only visiting the points between the cursor and
+ * its start, and the time a transmission becomes possible is solved directly from the points rather
+ * than by stepping through time. Every query only moves the cursor to the start of the period
+ * ending at its time, so queries at the same time can be made in any order, but query times must
+ * not go backwards.
+ *
  * @author David Jones (dsj1n15)
  */
 public class FullPeriodDutyCycleManager extends DutyCycleManager {
   private int dutyCyclePeriod;
 
-  /** List of transmission occurrence times and their duration */
-  private List<Pair<Long, Integer>> transmissions = new ArrayList<>();
+  /**
+   * Points after the cursor where a held transmission starts or finishes leaving the period,
+   * encoded with {@link #encodeEvent(long, int)}, as a ring buffer in time order
+   */
+  private long[] events = new long[32];
+  /** Index of the earliest held point */
+  private int head = 0;
+  /** Number of held points */
+  private int count = 0;
+  /** Period start the ledger has been moved forward to */
+  private long cursor = Long.MIN_VALUE;
+  /** Airtime in the period starting at the cursor */
+  private long cursorAirtime = 0;
+  /** Number of transmissions part way out of the period starting at the cursor */
+  private int cursorLeaving = 0;
+  /** Sweep reused by every query */
+  private final Sweep sweep = new Sweep();
 
   /**
    * Create a new transmission duty cycle manager that keeps track of all previous transmissions to
    * determine next transmission times.
-   * 
+   *
    * @param dutyCycle Duty cycle as a decimal e.g. 0.01 = 1%
    * @param dutyCyclePeriod The length the duty cycle period is calculated over
    */
@@ -35,65 +54,77 @@ public class FullPeriodDutyCycleManager extends DutyCycleManager {
     if (!canTransmit(time, airtime)) {
       throw new IllegalStateException("Cannot transmit within boundaries of duty cycle manager");
     }
-    transmissions.add(new ImmutablePair<>(time, airtime));
+    // Transmission starts after the cursor so is wholly in its period
+    insertEvent(encodeEvent(time, 1));
+    insertEvent(encodeEvent(time + airtime, -1));
+    cursorAirtime += airtime;
   }
 
   @Override
   public boolean canTransmit(long time, int airtime) {
-    int allowance = getPeriodTotalAirtime();
-    int before = allowance - getPeriodAirtime(time + 1);
-    int after = allowance - getPeriodAirtime(time + airtime);
-    boolean canTransmit = true;
-    canTransmit &= before >= 1;
-    canTransmit &= (after - airtime) >= 0;
-    return canTransmit;
+    evict(time - dutyCyclePeriod);
+    long allowance = getPeriodTotalAirtime();
+    long before = allowance - getAirtime(time + 1 - dutyCyclePeriod);
+    long after = allowance - getAirtime(time + airtime - dutyCyclePeriod);
+    return before >= 1 && (after - airtime) >= 0;
   }
 
   @Override
   public long whenCanTransmit(long time, int airtime) {
-    if (airtime > getPeriodTotalAirtime()) {
+    int allowance = getPeriodTotalAirtime();
+    if (airtime > allowance) {
       return Long.MAX_VALUE;
     }
-    while (!canTransmit(time, airtime)) {
-      time++;
-      if (time == 475) {
-        System.out.println("");
-      }
+    evict(time - dutyCyclePeriod);
+    // Each condition of canTransmit holds from the first period start meeting it onwards
+    long before = whenAirtimeAtMost(time + 1 - dutyCyclePeriod, allowance - 1);
+    long after = whenAirtimeAtMost(time + airtime - dutyCyclePeriod, allowance - airtime);
+    if (before == Long.MAX_VALUE || after == Long.MAX_VALUE) {
+      return Long.MAX_VALUE;
     }
-    return time;
+    return Math.max(time,
+        Math.max(before - 1 + dutyCyclePeriod, after - airtime + dutyCyclePeriod));
   }
 
   @Override
   public long getAvailableTransmitTime(long time) {
-    int airtime = 0;
-    while (canTransmit(time, airtime + 1)) {
-      airtime++;
+    long periodStart = time + 1 - dutyCyclePeriod;
+    evict(time - dutyCyclePeriod);
+    long allowance = getPeriodTotalAirtime();
+    Sweep s = seek(periodStart);
+    if (allowance - s.used < 1) {
+      return 0;
+    }
+    // Find the first airtime where the used airtime at the end of the transmission plus the
+    // airtime exceeds the allowance, this only rises whilst no held transmission is leaving the
+    // period
+    long airtime = 1;
+    while (true) {
+      long next = s.nextTime();
+      if (s.leaving == 0 && next > s.at) {
+        // Used airtime is fixed, so the sum rises with the airtime
+        long fails = airtime + (allowance - (s.used + airtime)) + 1;
+        if (next == Long.MAX_VALUE || s.at + (fails - airtime) <= next) {
+          return fails - 1;
+        }
+      }
+      if (next == Long.MAX_VALUE) {
+        break;
+      }
+      airtime += next - s.at;
+      s.apply();
     }
-    return airtime;
+    throw new IllegalStateException("Available airtime could not be found");
   }
 
   /**
    * Determine the amount of airtime that has been used in the past period.
-   * 
+   *
    * @param time The current time in ms to index from
    * @return The amount of airtime in the period
    */
   public int getPeriodAirtime(long time) {
-    int totalAirtime = 0;
-    long periodStart = time - dutyCyclePeriod;
-    for (Pair<Long, Integer> transmission : transmissions) {
-      // If it is completely outside of the duty cycle period ignore it
-      if ((transmission.getLeft() + transmission.getRight()) < periodStart) {
-        continue;
-      }
-      totalAirtime += transmission.getRight();
-      // If it is partially outside the duty cycle period do not sum the expired part
-      if (transmission.getLeft() < periodStart) {
-        long expired = periodStart - transmission.getLeft();
-        totalAirtime -= expired;
-      }
-    }
-    return totalAirtime;
+    return (int) getAirtime(time - dutyCyclePeriod);
   }
 
   /**
@@ -105,21 +136,214 @@ public class FullPeriodDutyCycleManager extends DutyCycleManager {
 
   /**
    * Clear any transmissions from the log that will no longer effect duty cycle calculations (those
-   * outside the interval).
-   * 
+   * outside the interval). This is done automatically as queries move forward.
+   *
    * @param time The current time in ms
    */
   public void clearExpired(long time) {
-    Iterator<Pair<Long, Integer>> itrTransmissions = transmissions.iterator();
-    long periodStart = time - dutyCyclePeriod;
-    while (itrTransmissions.hasNext()) {
-      Pair<Long, Integer> next = itrTransmissions.next();
-      if ((next.getLeft() + next.getRight()) < periodStart) {
-        itrTransmissions.remove();
+    evict(time - dutyCyclePeriod);
+  }
+
+  /**
+   * Move the cursor forward to a period start, dropping every point it passes.
+   *
+   * @param periodStart Start of the period
+   */
+  private void evict(long periodStart) {
+    if (periodStart <= cursor) {
+      return;
+    }
+    Sweep s = seek(periodStart);
+    head = (head + s.position) % events.length;
+    count -= s.position;
+    cursor = periodStart;
+    cursorAirtime = s.used;
+    cursorLeaving = s.leaving;
+  }
+
+  /**
+   * Determine the airtime in a period, counting any transmission that started before the period
+   * start only from the period start.
+   *
+   * @param periodStart Start of the period
+   * @return The airtime in the period
+   */
+  private long getAirtime(long periodStart) {
+    return seek(periodStart).used;
+  }
+
+  /**
+   * Find the first period start from which the airtime in the period is at most a limit.
+   *
+   * @param periodStart Earliest period start
+   * @param limit Airtime limit
+   * @return The first period start meeting the limit, Long.MAX_VALUE if it is never met
+   */
+  private long whenAirtimeAtMost(long periodStart, long limit) {
+    Sweep s = seek(periodStart);
+    if (s.used <= limit) {
+      return periodStart;
+    }
+    while (true) {
+      long next = s.nextTime();
+      if (s.leaving > 0 && next > s.at) {
+        // Airtime falls by one per ms for each transmission leaving
+        long steps = (s.used - limit + s.leaving - 1) / s.leaving;
+        if (s.at + steps <= next) {
+          return s.at + steps;
+        }
       }
-      if (next.getLeft() >= (time - dutyCyclePeriod)) {
-        break;
+      if (next == Long.MAX_VALUE) {
+        return Long.MAX_VALUE;
+      }
+      s.apply();
+    }
+  }
+
+  /**
+   * Sweep from the cursor to a period start.
+   *
+   * @param periodStart Start of the period, not before the cursor
+   * @return The shared sweep positioned at the period start
+   */
+  private Sweep seek(long periodStart) {
+    if (periodStart < cursor) {
+      throw new IllegalArgumentException("Period has already been evicted from the ledger");
+    }
+    sweep.reset();
+    sweep.seek(periodStart);
+    return sweep;
+  }
+
+  /**
+   * Add a point to the ledger, keeping time order. Points are almost always added at the end.
+   *
+   * @param event Encoded point
+   */
+  private void insertEvent(long event) {
+    if (count == events.length) {
+      grow();
+    }
+    int position = count;
+    while (position > 0 && events[index(position - 1)] > event) {
+      events[index(position)] = events[index(position - 1)];
+      position--;
+    }
+    events[index(position)] = event;
+    count++;
+  }
+
+  /**
+   * Encode a change in the number of transmissions leaving the period so that events sort by time.
+   *
+   * @param time Time of the change
+   * @param change Change in the number of leaving transmissions, 1 or -1
+   * @return Encoded event
+   */
+  private static long encodeEvent(long time, int change) {
+    return (time << 1) | (change > 0 ? 1 : 0);
+  }
+
+  /**
+   * @param event Encoded event
+   * @return Time of the event
+   */
+  private static long decodeTime(long event) {
+    return event >> 1;
+  }
+
+  /**
+   * @param event Encoded event
+   * @return Change in the number of leaving transmissions
+   */
+  private static int decodeChange(long event) {
+    return (event & 1) == 1 ? 1 : -1;
+  }
+
+  /**
+   * @param position Position of a held point from the earliest
+   * @return Index of the point in the ring buffer
+   */
+  private int index(int position) {
+    return (head + position) % events.length;
+  }
+
+  /**
+   * Double the capacity of the ring buffer, moving the earliest point to the front.
+   */
+  private void grow() {
+    long[] newEvents = new long[events.length * 2];
+    for (int i = 0; i < count; i++) {
+      newEvents[i] = events[index(i)];
+    }
+    events = newEvents;
+    head = 0;
+  }
+
+  /**
+   * Walk forward through the held points from the cursor, tracking the airtime in the period
+   * starting at the current position.
+   *
+   * @author David Jones (dsj1n15)
+   */
+  private class Sweep {
+    /** Current period start */
+    private long at;
+    /** Airtime in the period starting at the current position */
+    private long used;
+    /** Number of transmissions part way out of the period at the current position */
+    private int leaving;
+    /** Position of the next point from the earliest */
+    private int position;
+
+    /**
+     * Move back to the cursor.
+     */
+    private void reset() {
+      at = cursor;
+      used = cursorAirtime;
+      leaving = cursorLeaving;
+      position = 0;
+    }
+
+    /**
+     * @return Time of the next point, Long.MAX_VALUE if there are none left
+     */
+    private long nextTime() {
+      return position < count ? decodeTime(events[index(position)]) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Move to the next point and apply its change.
+     */
+    private void apply() {
+      moveTo(nextTime());
+      leaving += decodeChange(events[index(position)]);
+      position++;
+    }
+
+    /**
+     * Move to a period start, applying every point at or before it.
+     *
+     * @param time Period start to move to
+     */
+    private void seek(long time) {
+      while (nextTime() <= time) {
+        apply();
+      }
+      moveTo(time);
+    }
+
+    /**
+     * Move to a period start without passing any point.
+     *
+     * @param time Period start to move to
+     */
+    private void moveTo(long time) {
+      if (leaving != 0) {
+        used -= (long) leaving * (time - at);
       }
+      at = time;
     }
   }
 
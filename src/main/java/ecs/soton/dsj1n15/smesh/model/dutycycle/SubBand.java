@@ -0,0 +1,76 @@
+package ecs.soton.dsj1n15.smesh.model.dutycycle;
+
+/**
+ * ETSI EN 300 220 sub-bands of the 868 MHz band as used by LoRaWAN, each with its own regulatory
+ * duty cycle. Duty cycle is accounted separately in each sub-band, so a radio may use the full duty
+ * cycle of every sub-band it transmits in.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public enum SubBand {
+  /** 863.0 - 868.0 MHz, 1% duty cycle */
+  G(863.0, 868.0, 0.01),
+  /** 868.0 - 868.6 MHz, 1% duty cycle */
+  G1(868.0, 868.6, 0.01),
+  /** 868.7 - 869.2 MHz, 0.1% duty cycle */
+  G2(868.7, 869.2, 0.001),
+  /** 869.4 - 869.65 MHz, 10% duty cycle */
+  G3(869.4, 869.65, 0.1),
+  /** 869.7 - 870.0 MHz, 1% duty cycle */
+  G4(869.7, 870.0, 0.01);
+
+  /** Lowest frequency in the sub-band in MHz, inclusive */
+  private final double minFreq;
+  /** Highest frequency in the sub-band in MHz, exclusive */
+  private final double maxFreq;
+  /** Regulatory duty cycle as a decimal */
+  private final double dutyCycle;
+
+  /**
+   * @param minFreq Lowest frequency in the sub-band in MHz, inclusive
+   * @param maxFreq Highest frequency in the sub-band in MHz, exclusive
+   * @param dutyCycle Regulatory duty cycle as a decimal
+   */
+  private SubBand(double minFreq, double maxFreq, double dutyCycle) {
+    this.minFreq = minFreq;
+    this.maxFreq = maxFreq;
+    this.dutyCycle = dutyCycle;
+  }
+
+  /**
+   * Find the sub-band a channel is in.
+   *
+   * @param freq Centre frequency of the channel in MHz
+   * @return The sub-band, null if the frequency is not in any sub-band
+   */
+  public static SubBand of(double freq) {
+    for (SubBand band : values()) {
+      if (freq >= band.minFreq && freq < band.maxFreq) {
+        return band;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return Lowest frequency in the sub-band in MHz
+   */
+  public double getMinFreq() {
+    return minFreq;
+  }
+
+  /**
+   * @return Highest frequency in the sub-band in MHz
+   */
+  public double getMaxFreq() {
+    return maxFreq;
+  }
+
+  /**
+   * @return Regulatory duty cycle as a decimal e.g. 0.01 = 1%
+   */
+  public double getDutyCycle() {
+    return dutyCycle;
+  }
+
+}
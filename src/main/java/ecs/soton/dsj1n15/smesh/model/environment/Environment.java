@@ -1,15 +1,31 @@
 package ecs.soton.dsj1n15.smesh.model.environment;
 
-import java.util.HashSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import ecs.soton.dsj1n15.smesh.lib.Utilities;
+import ecs.soton.dsj1n15.smesh.model.RandomStream;
+import ecs.soton.dsj1n15.smesh.model.RandomStream.Purpose;
+import ecs.soton.dsj1n15.smesh.model.SimulationContext;
 import ecs.soton.dsj1n15.smesh.model.propogation.EmpiricalFreeSpacePropogationModel;
 import ecs.soton.dsj1n15.smesh.model.propogation.FreeSpacePropagationModel;
 import ecs.soton.dsj1n15.smesh.model.propogation.PlainEarthPropagationModel;
 import ecs.soton.dsj1n15.smesh.model.propogation.PropagationModel;
+import ecs.soton.dsj1n15.smesh.radio.NodeListener;
 import ecs.soton.dsj1n15.smesh.radio.Radio;
 import ecs.soton.dsj1n15.smesh.radio.Transmission;
+import ecs.soton.dsj1n15.smesh.radio.TransmissionListener;
 import math.geom2d.line.Line2D;
 
 /**
@@ -21,25 +37,115 @@ import math.geom2d.line.Line2D;
 public class Environment {
 
   /** A list of objects in the environment */
-  private final Set<EnvironmentObject> objects = new LinkedHashSet<>();
+  private final Set<EnvironmentObject> objects = new EnvironmentObjectSet(this);
 
   /** A list of all nodes in the environment */
   private final Set<Radio> nodes = new LinkedHashSet<>();
 
   /** The current time in the environment */
   private long time;
+  /** The time (ms) before the last time change */
+  private long previousTime;
 
   /** The free space model used by the environment */
   public final FreeSpaceModelType fsmType;
 
+  /** The context of the simulation the environment belongs to */
+  private final SimulationContext context;
+
+  /** Seed of all random streams in the environment */
+  private final long seed;
+
+  /** Random streams handed out, keyed by owner ID and purpose */
+  private final Map<Long, RandomStream> randomStreams = new HashMap<>();
+
+  /** Read only view of all active transmissions in node order, replaced whenever they change */
+  private List<Transmission> transmissions = Collections.emptyList();
+
+  /** Index into the active transmissions of the members of each interference group */
+  private int[][] groups = new int[0][];
+  /** Version the interference groups were found for */
+  private long groupsVersion = -1;
+
+  /** Transmissions that have recently ended, in the order they were cleared */
+  private final Deque<Transmission> endedTransmissions = new ArrayDeque<>();
+
+  /** Read only view of transmissions that have recently ended */
+  private final Collection<Transmission> endedView =
+      Collections.unmodifiableCollection(endedTransmissions);
+
+  /** Longest airtime of any transmission that has ended, used to decide how long to keep them */
+  private long longestAirtime = 0;
+
+  /** Listeners alerted whenever a transmission starts or ends */
+  private final List<TransmissionListener> transmissionListeners = new ArrayList<>();
+
+  /** Listeners alerted whenever a node's position or configuration changes */
+  private final List<NodeListener> nodeListeners = new ArrayList<>();
+
+  /** Version of all transmissions and links, incremented whenever any change */
+  private long version = 0;
+
+  /** Version of node positions and configurations, incremented whenever any change */
+  private long nodeVersion = 0;
+
+  /** Version of the nodes' need to be ticked, incremented whenever a node may need waking */
+  private long wakeVersion = 0;
+
+  /** Running interference power of each receiver that has listened */
+  private final Map<Radio, InterferenceAccumulator> interference = new IdentityHashMap<>();
+
+  /** Averaged path loss held between every pair of nodes */
+  private final LinkBudgetCache links = new LinkBudgetCache();
+
+  /** Spatial index of objects, null if it needs to be rebuilt */
+  private EnvironmentObjectIndex objectIndex;
+
 
   /**
-   * Create an environment with the specified free space model.
+   * Create an environment with the specified free space model and a default simulation context.
    * 
    * @param fsmType Free space model type
    */
   public Environment(FreeSpaceModelType fsmType) {
+    this(fsmType, new SimulationContext());
+  }
+
+  /**
+   * Create an environment with the specified free space model.
+   * 
+   * @param fsmType Free space model type
+   * @param context The context of the simulation the environment belongs to
+   */
+  public Environment(FreeSpaceModelType fsmType, SimulationContext context) {
     this.fsmType = fsmType;
+    this.context = context;
+    this.seed = context.getRandom().nextLong();
+  }
+
+  /**
+   * @return The context of the simulation the environment belongs to
+   */
+  public SimulationContext getContext() {
+    return context;
+  }
+
+  /**
+   * Get the random stream for an owner and purpose, draws from it are keyed by the environment
+   * time. The same stream is returned for every call with the same arguments.
+   * 
+   * @param id ID of the owner, {@link RandomStream#ENVIRONMENT_ID} if not owned by a radio
+   * @param purpose What the stream is used for
+   * @return The random stream
+   */
+  public RandomStream getRandom(int id, Purpose purpose) {
+    long key = ((long) id << 8) | purpose.ordinal();
+    RandomStream stream = randomStreams.get(key);
+    if (stream == null) {
+      stream = new RandomStream(seed, id, purpose, this);
+      randomStreams.put(key, stream);
+    }
+    return stream;
   }
 
 
@@ -82,30 +188,182 @@ public class Environment {
    * receiver noise and noise from any signal that crosses into the listening channel. If the signal
    * is considered to not interfere for other reasons such as orthogonality it is also ignored. If a
    * target transmission is provided (not null), it will not be considered in any noise calculation.
+   * <br>
+   * Each receiver keeps a running total of the power it sees that is updated as transmissions start
+   * and end, so the noise excluding a target is the total minus the target, see
+   * {@link InterferenceAccumulator}.
    * 
    * @param rx The receiver
    * @param target Signal to not count as noise
    * @return The amount of noise in the channel in dBm
    */
   public double getNoise(Radio rx, Transmission target) {
-    // Calculate base noise level
-    double noise = Utilities.dbm2mw(rx.getNoiseFloor());
-    // Sum the effect of any interfering transmissions on the target transmission
-    for (Transmission interferer : getTransmissions()) {
-      // Can't transmit and receive at the same time
-      if (interferer.sender == rx) {
-        continue;
+    InterferenceAccumulator accumulator = getInterference(rx);
+    if (target == null || !isCounted(target, rx)) {
+      return Utilities.mw2dbm(accumulator.total);
+    }
+    double targetPower = Utilities.dbm2mw(getReceivePower(target.sender, rx));
+    double noise = accumulator.total - targetPower;
+    // Subtracting a target far stronger than everything else leaves too few significant bits
+    if (targetPower > noise * InterferenceAccumulator.PRECISION_RATIO) {
+      noise = sumNoise(rx, target);
+    }
+    return Utilities.mw2dbm(noise);
+  }
+
+  /**
+   * Get the running interference of a receiver, summing it in full if it is not valid.
+   * 
+   * @param rx The receiver
+   * @return Running interference of the receiver
+   */
+  private InterferenceAccumulator getInterference(Radio rx) {
+    InterferenceAccumulator accumulator = interference.get(rx);
+    if (accumulator == null) {
+      accumulator = new InterferenceAccumulator();
+      interference.put(rx, accumulator);
+    }
+    if (!accumulator.valid) {
+      accumulator.reset(Utilities.dbm2mw(rx.getNoiseFloor()));
+      for (Transmission transmission : getAudibleTransmissions(rx)) {
+        if (interferes(transmission, rx)) {
+          accumulator.add(Utilities.dbm2mw(getReceivePower(transmission.sender, rx)));
+        }
       }
+    }
+    return accumulator;
+  }
+
+  /**
+   * @param transmission A transmission
+   * @param rx The receiver
+   * @return Whether the transmission is active and counted in the interference of the receiver
+   */
+  private boolean isCounted(Transmission transmission, Radio rx) {
+    Radio sender = transmission.sender;
+    return sender.getCurrentTransmission() == transmission && sender.getEnvironment() == this
+        && interferes(transmission, rx);
+  }
+
+  /**
+   * @param transmission A transmission
+   * @param rx The receiver
+   * @return Whether the transmission interferes with the receiver whilst active
+   */
+  private static boolean interferes(Transmission transmission, Radio rx) {
+    // Can't transmit and receive at the same time
+    return transmission.sender != rx && transmission.sender.canInterfere(rx);
+  }
+
+  /**
+   * Sum the running interference of every receiver in full when next used.
+   */
+  private void invalidateInterference() {
+    for (InterferenceAccumulator accumulator : interference.values()) {
+      accumulator.valid = false;
+    }
+  }
+
+  /**
+   * Get the active transmissions that a receiver can hear or be interfered by. Transmissions are
+   * grouped by the interference group of their sender (see {@link Radio#getInterferenceGroup()}),
+   * and only groups that the receiver can hear or be interfered by are included, so receivers on
+   * different channels or chirp rates do not look at each other's transmissions. The result is held
+   * until a transmission starts or ends or a node changes.
+   * 
+   * @param rx The receiver
+   * @return Read only list of transmissions that may affect the receiver, in node order
+   */
+  public List<Transmission> getAudibleTransmissions(Radio rx) {
+    int[][] groups = getInterferenceGroups();
+    if (groups.length <= 1) {
+      return transmissions;
+    }
+    InterferenceAccumulator accumulator = interference.get(rx);
+    if (accumulator == null) {
+      accumulator = new InterferenceAccumulator();
+      interference.put(rx, accumulator);
+    }
+    List<Transmission> held = accumulator.getAudible(version);
+    if (held == null) {
+      // Find the members of every group the receiver is affected by
+      int[] audible = new int[transmissions.size()];
+      int count = 0;
+      for (int[] group : groups) {
+        Radio sender = transmissions.get(group[0]).sender;
+        if (sender.canInterfere(rx) || rx.canCommunicate(sender)) {
+          System.arraycopy(group, 0, audible, count, group.length);
+          count += group.length;
+        }
+      }
+      if (count == audible.length) {
+        held = transmissions;
+      } else {
+        // Keep node order
+        Arrays.sort(audible, 0, count);
+        List<Transmission> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          list.add(transmissions.get(audible[i]));
+        }
+        held = Collections.unmodifiableList(list);
+      }
+      accumulator.setAudible(held, version);
+    }
+    return held;
+  }
+
+  /**
+   * Group the active transmissions by the interference group of their sender, regrouping if
+   * anything has changed since they were last grouped.
+   * 
+   * @return Index into the active transmissions of the members of each group, in node order
+   */
+  private int[][] getInterferenceGroups() {
+    if (groupsVersion != version) {
+      Map<Object, List<Integer>> members = new LinkedHashMap<>();
+      for (int i = 0; i < transmissions.size(); i++) {
+        Object group = transmissions.get(i).sender.getInterferenceGroup();
+        List<Integer> indices = members.get(group);
+        if (indices == null) {
+          indices = new ArrayList<>();
+          members.put(group, indices);
+        }
+        indices.add(i);
+      }
+      groups = new int[members.size()][];
+      int g = 0;
+      for (List<Integer> indices : members.values()) {
+        int[] group = new int[indices.size()];
+        for (int i = 0; i < group.length; i++) {
+          group[i] = indices.get(i);
+        }
+        groups[g++] = group;
+      }
+      groupsVersion = version;
+    }
+    return groups;
+  }
+
+  /**
+   * Sum up all noise that the receiver will see without using the running total, see
+   * {@link #getNoise(Radio, Transmission)}.
+   * 
+   * @param rx The receiver
+   * @param target Signal to not count as noise
+   * @return The amount of noise in the channel in mW
+   */
+  private double sumNoise(Radio rx, Transmission target) {
+    double noise = Utilities.dbm2mw(rx.getNoiseFloor());
+    for (Transmission interferer : getAudibleTransmissions(rx)) {
       // Not noise if its the signal we want or it doesn't interfere
-      if (target == interferer || !interferer.sender.canInterfere(rx)) {
-        continue;
+      if (target != interferer && interferes(interferer, rx)) {
+        noise += Utilities.dbm2mw(getReceivePower(interferer.sender, rx));
       }
-      double rp = Utilities.dbm2mw(getReceivePower(interferer.sender, rx));
-      noise += rp;
     }
-    return Utilities.mw2dbm(noise);
+    return noise;
   }
 
+
   /**
    * Calculate how much power from a transmission will reach the receiver taking into account
    * transmission power, gains and path loss.
@@ -125,13 +383,94 @@ public class Environment {
    * two calls of {@link #getPathLoss(Radio tx, Radio rx)} with the input order reversed. This
    * creates a value that is approximately the worst case scenario and causes the value to be the
    * same in both directions. This is not necessarily realistic but avoids unrealistic path
-   * differences.
+   * differences.<br>
+   * The value is held for pairs of nodes in the environment until either node moves or is
+   * reconfigured, or environment objects change, so steady-state calls do no geometry.
    * 
    * @param tx A radio
    * @param rx A radio
    * @return The path loss in dbm in either direction
    */
   public double getAveragedPathLoss(Radio tx, Radio rx) {
+    int a = links.indexOf(tx);
+    int b = links.indexOf(rx);
+    // Only hold values for nodes in the environment as nothing else alerts of changes
+    if (a < 0 || b < 0) {
+      return calculateAveragedPathLoss(tx, rx);
+    }
+    double loss = links.getPathLoss(a, b);
+    if (Double.isNaN(loss)) {
+      loss = calculateAveragedPathLoss(tx, rx);
+      links.setPathLoss(a, b, loss);
+    }
+    return loss;
+  }
+
+  /**
+   * Calculate the averaged path loss between two nodes and hold it, for use whilst building a link
+   * matrix. Safe to call from multiple threads for different pairs once every row is allocated.
+   * 
+   * @param a A node in the environment
+   * @param b A node in the environment
+   * @return The path loss in dbm in either direction
+   */
+  double holdAveragedPathLoss(Radio a, Radio b) {
+    double loss = calculateAveragedPathLoss(a, b);
+    links.setPathLoss(links.indexOf(a), links.indexOf(b), loss);
+    return loss;
+  }
+
+  /**
+   * Evaluate the averaged path loss between every pair of nodes in parallel, see
+   * {@link #computeLinkMatrix(double, ForkJoinPool)}.
+   * 
+   * @return Dense matrix of all pairs
+   */
+  public LinkMatrix computeLinkMatrix() {
+    return computeLinkMatrix(Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Evaluate the averaged path loss between every pair of nodes within range in parallel using the
+   * common fork/join pool, see {@link #computeLinkMatrix(double, ForkJoinPool)}.
+   * 
+   * @param range Maximum distance between pairs to evaluate, infinite for a dense matrix
+   * @return Matrix of all pairs within range
+   */
+  public LinkMatrix computeLinkMatrix(double range) {
+    return computeLinkMatrix(range, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Evaluate the averaged path loss between every pair of nodes within range in parallel. Every
+   * evaluated value is also held for the simulation, so this can be called after generating a
+   * large topology to avoid the first ticks evaluating each pair on a single thread. Pairs beyond
+   * the range are left to be evaluated when first used. The environment must not be modified or
+   * run whilst the matrix is built.
+   * 
+   * @param range Maximum distance between pairs to evaluate, infinite for a dense matrix
+   * @param pool Pool to evaluate pairs on
+   * @return Matrix of all pairs within range
+   */
+  public LinkMatrix computeLinkMatrix(double range, ForkJoinPool pool) {
+    if (!(range >= 0)) {
+      throw new IllegalArgumentException("Range must not be negative");
+    }
+    Radio[] radios = nodes.toArray(new Radio[nodes.size()]);
+    links.allocateRows();
+    getObjectIndex();
+    return new LinkMatrixBuilder(this, radios, range).build(pool);
+  }
+
+  /**
+   * Calculate the averaged path loss without using any held values, see
+   * {@link #getAveragedPathLoss(Radio, Radio)}.
+   * 
+   * @param tx A radio
+   * @param rx A radio
+   * @return The path loss in dbm in either direction
+   */
+  private double calculateAveragedPathLoss(Radio tx, Radio rx) {
     double a = getPathLoss(tx, rx);
     double b = getPathLoss(rx, tx);
     return Math.max(a, b);
@@ -139,7 +478,8 @@ public class Environment {
 
   /**
    * Calculate the path loss after passing through objects in the environment. This is the sum of
-   * loss in free space and the sum of all propagation effects of said objects.
+   * loss in free space and the sum of all propagation effects of said objects. Only objects whose
+   * bounding box the line of sight crosses are queried.
    * 
    * @param tx Transmitter
    * @param rx Receiver
@@ -165,13 +505,26 @@ public class Environment {
         throw new IllegalStateException("Unsupported free space model type");
     }
     double loss = freeSpaceModel.getPathLoss(los.length());
-    // Add propagation effects of environmental objects
-    for (EnvironmentObject object : objects) {
+    // Add propagation effects of environmental objects the line of sight may pass through, any
+    // others contribute no loss
+    List<EnvironmentObject> crossed =
+        getObjectIndex().query(tx.getX(), tx.getY(), rx.getX(), rx.getY());
+    for (EnvironmentObject object : crossed) {
       loss += object.getLOSPathLoss(tx, rx);
     }
     return loss;
   }
 
+  /**
+   * @return Spatial index of objects, built if the objects have changed
+   */
+  private EnvironmentObjectIndex getObjectIndex() {
+    if (objectIndex == null) {
+      objectIndex = new EnvironmentObjectIndex(objects);
+    }
+    return objectIndex;
+  }
+
   /**
    * @return All nodes in the environment
    */
@@ -195,6 +548,14 @@ public class Environment {
     }
     if (!nodes.contains(radio)) {
       nodes.add(radio);
+      links.add(radio);
+      nodeVersion++;
+      wakeVersion++;
+      if (radio.getCurrentTransmission() != null) {
+        updateTransmissions();
+        invalidateInterference();
+      }
+      version++;
     }
   }
 
@@ -220,23 +581,215 @@ public class Environment {
    */
   public void removeNode(Radio radio) {
     radio.setEnvironment(null);
-    nodes.remove(radio);
+    if (nodes.remove(radio)) {
+      if (radio.getCurrentTransmission() != null) {
+        updateTransmissions();
+        invalidateInterference();
+      }
+      interference.remove(radio);
+      links.remove(radio);
+      nodeVersion++;
+      wakeVersion++;
+      version++;
+    }
   }
 
   /**
-   * Check every node in the environment to see if they are transmitting, collating any found
-   * transmissions.
+   * Get all transmissions in the environment. The returned view is maintained as radios start and
+   * stop transmitting so it is cheap to call repeatedly, it will not change whilst being iterated
+   * over as a new view is made on any change.
    * 
-   * @return All transmissions in the environment
+   * @return Read only view of all transmissions in the environment, in node order
    */
-  public Set<Transmission> getTransmissions() {
-    HashSet<Transmission> transmissions = new LinkedHashSet<>();
+  public List<Transmission> getTransmissions() {
+    return transmissions;
+  }
+
+  /**
+   * Get transmissions that have recently ended. They are kept for twice the longest airtime seen
+   * before the previous time slice, so every transmission that overlapped one that is active or
+   * ended in the last time slice is included. Receivers can use this to look back over the channel
+   * without listening to every time slice.
+   * 
+   * @return Read only view of recently ended transmissions, in the order they were cleared
+   */
+  public Collection<Transmission> getEndedTransmissions() {
+    return endedView;
+  }
+
+  /**
+   * Alert the environment that one of its nodes has started a transmission.
+   * 
+   * @param transmission The transmission that has started
+   */
+  public void transmissionStarted(Transmission transmission) {
+    updateTransmissions();
+    for (Map.Entry<Radio, InterferenceAccumulator> entry : interference.entrySet()) {
+      InterferenceAccumulator accumulator = entry.getValue();
+      Radio rx = entry.getKey();
+      if (accumulator.valid && interferes(transmission, rx)) {
+        accumulator.add(Utilities.dbm2mw(getReceivePower(transmission.sender, rx)));
+      }
+    }
+    for (Radio radio : nodes) {
+      radio.transmissionStarted(transmission);
+    }
+    for (TransmissionListener listener : transmissionListeners) {
+      listener.transmissionStarted(transmission);
+    }
+  }
+
+  /**
+   * Alert the environment that one of its nodes has finished a transmission.
+   * 
+   * @param transmission The transmission that has ended
+   */
+  public void transmissionEnded(Transmission transmission) {
+    updateTransmissions();
+    for (Map.Entry<Radio, InterferenceAccumulator> entry : interference.entrySet()) {
+      InterferenceAccumulator accumulator = entry.getValue();
+      Radio rx = entry.getKey();
+      if (accumulator.valid && interferes(transmission, rx)) {
+        accumulator.remove(Utilities.dbm2mw(getReceivePower(transmission.sender, rx)));
+      }
+    }
+    // Keep the transmission whilst it could still overlap one being received, the transmission
+    // that has just ended is always kept as coarse time units can report it well after its end.
+    // Receivers can evaluate a window a time slice after it ends, so count from the previous slice
+    longestAirtime = Math.max(longestAirtime, transmission.airtime);
+    while (!endedTransmissions.isEmpty()
+        && endedTransmissions.peekFirst().endTime < previousTime - 2 * longestAirtime) {
+      endedTransmissions.removeFirst();
+    }
+    endedTransmissions.addLast(transmission);
+    for (Radio radio : nodes) {
+      radio.transmissionEnded(transmission);
+    }
+    for (TransmissionListener listener : transmissionListeners) {
+      listener.transmissionEnded(transmission);
+    }
+  }
+
+  /**
+   * Collate the current transmission of every node, keeping node order.
+   */
+  private void updateTransmissions() {
+    List<Transmission> active = new ArrayList<>();
     for (Radio radio : nodes) {
       if (radio.getCurrentTransmission() != null) {
-        transmissions.add(radio.getCurrentTransmission());
+        active.add(radio.getCurrentTransmission());
       }
     }
-    return transmissions;
+    transmissions = Collections.unmodifiableList(active);
+    version++;
+  }
+
+  /**
+   * Alert the environment that a node's position or configuration has changed, so that any held
+   * values derived from its links are recalculated and node listeners are alerted. Radios call this
+   * themselves from their setters; it must also be called after mutating a configuration object a
+   * radio is already using.
+   * 
+   * @param radio The node that has changed
+   */
+  public void nodeChanged(Radio radio) {
+    links.invalidate(radio);
+    // A transmitting node changes what every receiver counts, otherwise only its own view changes
+    if (radio.getCurrentTransmission() != null) {
+      invalidateInterference();
+    } else {
+      InterferenceAccumulator accumulator = interference.get(radio);
+      if (accumulator != null) {
+        accumulator.valid = false;
+      }
+    }
+    nodeVersion++;
+    version++;
+    for (NodeListener listener : nodeListeners) {
+      listener.nodeChanged(radio);
+    }
+  }
+
+  /**
+   * Get the version of the channel, which changes whenever a transmission starts or ends, a node is
+   * added, removed or changed, or environment objects change. Anything derived from the signals in
+   * the environment is still valid whilst it is unchanged.
+   * 
+   * @return The channel version
+   */
+  public long getChannelVersion() {
+    return version;
+  }
+
+  /**
+   * Get the version of node positions and configurations, which changes whenever a node is added,
+   * removed or changed. Radios can use this to tell whether anything they derived from other
+   * nodes' configurations is still valid.
+   * 
+   * @return The node version
+   */
+  public long getNodeVersion() {
+    return nodeVersion;
+  }
+
+  /**
+   * Alert the environment that a node may need ticking sooner than it last reported, such as when a
+   * tick listener is added or it starts an activity outside of its own tick. Radios call this
+   * themselves.
+   * 
+   * @param radio The node that may need waking
+   */
+  public void nodeWoken(Radio radio) {
+    wakeVersion++;
+  }
+
+  /**
+   * Get the version of the nodes' need to be ticked, which changes whenever a node is added,
+   * removed or woken. A runner that has ticked every node since it last saw this version knows the
+   * idle state and wake time each node last reported is still current.
+   * 
+   * @return The wake version
+   */
+  public long getWakeVersion() {
+    return wakeVersion;
+  }
+
+  /**
+   * Alert the environment that objects have been added or removed, changing path loss.
+   */
+  void objectsChanged() {
+    objectIndex = null;
+    links.clear();
+    invalidateInterference();
+    version++;
+  }
+
+  /**
+   * @param listener Listener to alert whenever a transmission starts or ends
+   */
+  public void addTransmissionListener(TransmissionListener listener) {
+    transmissionListeners.add(listener);
+  }
+
+  /**
+   * @param listener Listener to remove
+   */
+  public void removeTransmissionListener(TransmissionListener listener) {
+    transmissionListeners.remove(listener);
+  }
+
+  /**
+   * @param listener Listener to alert whenever a node's position or configuration changes
+   */
+  public void addNodeListener(NodeListener listener) {
+    nodeListeners.add(listener);
+  }
+
+  /**
+   * @param listener Listener to remove
+   */
+  public void removeNodeListener(NodeListener listener) {
+    nodeListeners.remove(listener);
   }
 
   /**
@@ -250,6 +803,7 @@ public class Environment {
    * @param time The new time (ms) for the environment
    */
   public void setTime(long time) {
+    this.previousTime = this.time;
     this.time = time;
   }
 
@@ -257,6 +811,7 @@ public class Environment {
    * @param time Value of time (ms) to add to the current time
    */
   public void addTime(long time) {
+    this.previousTime = this.time;
     this.time += time;
   }
 
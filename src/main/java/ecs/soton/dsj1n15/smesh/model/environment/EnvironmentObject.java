@@ -5,6 +5,7 @@ import java.awt.Shape;
 import java.util.ArrayList;
 import java.util.List;
 import ecs.soton.dsj1n15.smesh.radio.Radio;
+import math.geom2d.Box2D;
 import math.geom2d.Point2D;
 import math.geom2d.conic.Circle2D;
 import math.geom2d.line.Line2D;
@@ -54,6 +55,17 @@ public abstract class EnvironmentObject {
     return borderColor;
   }
 
+  /**
+   * Get the bounding box of the object. The environment uses this to only query objects whose box
+   * a line of sight crosses, so {@link #getLOSPathLoss(Radio, Radio)} must be exactly zero for any
+   * line that does not cross it.
+   * 
+   * @return The bounding box of the object
+   */
+  public Box2D getBoundingBox() {
+    return new Box2D(getAwtShape().getBounds2D());
+  }
+
   /**
    * Find the length of the line passing through the object.
    * 
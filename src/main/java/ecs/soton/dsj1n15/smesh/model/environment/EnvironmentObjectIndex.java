@@ -0,0 +1,246 @@
+package ecs.soton.dsj1n15.smesh.model.environment;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import math.geom2d.Box2D;
+
+/**
+ * Uniform grid over the bounding boxes of environment objects, so that a line of sight only needs
+ * to query objects whose boxes it crosses. Boxes are expanded by a small margin so that lines
+ * grazing an object are still queried. Objects covering a very large number of cells are held
+ * separately and box tested on every query. The index is immutable so can be queried from multiple
+ * threads, it is rebuilt whenever the objects change.
+ *
+ * @author David Jones (dsj1n15)
+ */
+class EnvironmentObjectIndex {
+  /** Distance boxes are expanded by in every direction */
+  private static final double MARGIN = 1e-3;
+  /** Number of cells above which an object is not held in the grid */
+  private static final int MAX_OBJECT_CELLS = 1024;
+
+  /** Indexed objects in environment order */
+  private final EnvironmentObject[] objects;
+  /** Expanded bounding box of each object as min x, min y, max x, max y */
+  private final double[] boxes;
+
+  /** Width and height of each cell */
+  private final double cellSize;
+  /** Cell bounds of the grid, inclusive */
+  private int minCellX;
+  private int minCellY;
+  private int maxCellX;
+  private int maxCellY;
+  /** Objects overlapping each non-empty cell, in environment order */
+  private final Map<Long, int[]> cells = new HashMap<>();
+  /** Objects not held in the grid due to their size */
+  private final int[] large;
+
+  /**
+   * Create an index of objects.
+   *
+   * @param objects Objects to index, in environment order
+   */
+  EnvironmentObjectIndex(Collection<EnvironmentObject> objects) {
+    this.objects = objects.toArray(new EnvironmentObject[objects.size()]);
+    this.boxes = new double[this.objects.length * 4];
+    // Find the extent of all objects and their average size
+    double minX = Double.POSITIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    double size = 0;
+    for (int i = 0; i < this.objects.length; i++) {
+      Box2D box = this.objects[i].getBoundingBox();
+      boxes[i * 4] = box.getMinX() - MARGIN;
+      boxes[i * 4 + 1] = box.getMinY() - MARGIN;
+      boxes[i * 4 + 2] = box.getMaxX() + MARGIN;
+      boxes[i * 4 + 3] = box.getMaxY() + MARGIN;
+      minX = Math.min(minX, boxes[i * 4]);
+      minY = Math.min(minY, boxes[i * 4 + 1]);
+      maxX = Math.max(maxX, boxes[i * 4 + 2]);
+      maxY = Math.max(maxY, boxes[i * 4 + 3]);
+      size += Math.max(box.getWidth(), box.getHeight());
+    }
+    // Aim for cells around the size of an object, with roughly as many cells as objects
+    double cellSize = 1;
+    if (this.objects.length > 0) {
+      double spread = Math.sqrt((maxX - minX) * (maxY - minY) / this.objects.length);
+      cellSize = Math.max(size / this.objects.length, spread);
+      if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+        cellSize = 1;
+      }
+    }
+    this.cellSize = cellSize;
+    // Place each object in every cell its box overlaps
+    Map<Long, List<Integer>> building = new HashMap<>();
+    List<Integer> largeObjects = new ArrayList<>();
+    minCellX = Integer.MAX_VALUE;
+    minCellY = Integer.MAX_VALUE;
+    maxCellX = Integer.MIN_VALUE;
+    maxCellY = Integer.MIN_VALUE;
+    for (int i = 0; i < this.objects.length; i++) {
+      int x1 = toCell(boxes[i * 4]);
+      int y1 = toCell(boxes[i * 4 + 1]);
+      int x2 = toCell(boxes[i * 4 + 2]);
+      int y2 = toCell(boxes[i * 4 + 3]);
+      if ((long) (x2 - x1 + 1) * (y2 - y1 + 1) > MAX_OBJECT_CELLS) {
+        largeObjects.add(i);
+        continue;
+      }
+      minCellX = Math.min(minCellX, x1);
+      minCellY = Math.min(minCellY, y1);
+      maxCellX = Math.max(maxCellX, x2);
+      maxCellY = Math.max(maxCellY, y2);
+      for (int x = x1; x <= x2; x++) {
+        for (int y = y1; y <= y2; y++) {
+          List<Integer> cell = building.get(getKey(x, y));
+          if (cell == null) {
+            cell = new ArrayList<>();
+            building.put(getKey(x, y), cell);
+          }
+          cell.add(i);
+        }
+      }
+    }
+    for (Map.Entry<Long, List<Integer>> entry : building.entrySet()) {
+      cells.put(entry.getKey(), toArray(entry.getValue()));
+    }
+    this.large = toArray(largeObjects);
+  }
+
+  /**
+   * Find all objects whose bounding box the line segment crosses.
+   *
+   * @param x1 X coordinate of the segment start
+   * @param y1 Y coordinate of the segment start
+   * @param x2 X coordinate of the segment end
+   * @param y2 Y coordinate of the segment end
+   * @return Objects the segment may pass through, in environment order
+   */
+  List<EnvironmentObject> query(double x1, double y1, double x2, double y2) {
+    BitSet candidates = new BitSet(objects.length);
+    for (int i : large) {
+      candidates.set(i);
+    }
+    // Walk each column of cells the segment spans, taking the rows it covers in that column
+    if (!cells.isEmpty()) {
+      double minX = Math.min(x1, x2);
+      double maxX = Math.max(x1, x2);
+      int firstColumn = Math.max(toCell(minX), minCellX);
+      int lastColumn = Math.min(toCell(maxX), maxCellX);
+      for (int column = firstColumn; column <= lastColumn; column++) {
+        double columnMinX = Math.max(minX, column * cellSize);
+        double columnMaxX = Math.min(maxX, (column + 1) * cellSize);
+        double ya = x1 == x2 ? y1 : getY(x1, y1, x2, y2, columnMinX);
+        double yb = x1 == x2 ? y2 : getY(x1, y1, x2, y2, columnMaxX);
+        int firstRow = Math.max(toCell(Math.min(ya, yb)), minCellY);
+        int lastRow = Math.min(toCell(Math.max(ya, yb)), maxCellY);
+        for (int row = firstRow; row <= lastRow; row++) {
+          int[] cell = cells.get(getKey(column, row));
+          if (cell != null) {
+            for (int i : cell) {
+              candidates.set(i);
+            }
+          }
+        }
+      }
+    }
+    // Keep only objects whose box the segment actually crosses
+    List<EnvironmentObject> crossed = new ArrayList<>();
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      if (crossesBox(i, x1, y1, x2, y2)) {
+        crossed.add(objects[i]);
+      }
+    }
+    return crossed;
+  }
+
+  /**
+   * Get the y coordinate of a non-vertical segment at an x coordinate within its span.
+   *
+   * @param x1 X coordinate of the segment start
+   * @param y1 Y coordinate of the segment start
+   * @param x2 X coordinate of the segment end
+   * @param y2 Y coordinate of the segment end
+   * @param x X coordinate to evaluate at
+   * @return The y coordinate
+   */
+  private static double getY(double x1, double y1, double x2, double y2, double x) {
+    double t = Math.min(Math.max((x - x1) / (x2 - x1), 0), 1);
+    return y1 + t * (y2 - y1);
+  }
+
+  /**
+   * Clip a segment against an object's box (Liang-Barsky) to find whether it crosses it.
+   *
+   * @param i Index of the object
+   * @param x1 X coordinate of the segment start
+   * @param y1 Y coordinate of the segment start
+   * @param x2 X coordinate of the segment end
+   * @param y2 Y coordinate of the segment end
+   * @return Whether any part of the segment is in the box
+   */
+  private boolean crossesBox(int i, double x1, double y1, double x2, double y2) {
+    double dx = x2 - x1;
+    double dy = y2 - y1;
+    double[] p = {-dx, dx, -dy, dy};
+    double[] q = {x1 - boxes[i * 4], boxes[i * 4 + 2] - x1, y1 - boxes[i * 4 + 1],
+        boxes[i * 4 + 3] - y1};
+    double t0 = 0;
+    double t1 = 1;
+    for (int k = 0; k < 4; k++) {
+      if (p[k] == 0) {
+        if (q[k] < 0) {
+          return false;
+        }
+      } else {
+        double t = q[k] / p[k];
+        if (p[k] < 0) {
+          t0 = Math.max(t0, t);
+        } else {
+          t1 = Math.min(t1, t);
+        }
+        if (t0 > t1) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param coordinate A coordinate
+   * @return The cell containing the coordinate
+   */
+  private int toCell(double coordinate) {
+    double cell = Math.floor(coordinate / cellSize);
+    return (int) Math.max(Integer.MIN_VALUE + 1, Math.min(Integer.MAX_VALUE - 1, cell));
+  }
+
+  /**
+   * @param x Cell column
+   * @param y Cell row
+   * @return Key of the cell
+   */
+  private static long getKey(int x, int y) {
+    return ((long) x << 32) | (y & 0xffffffffL);
+  }
+
+  /**
+   * @param list List of indexes
+   * @return Array of the indexes
+   */
+  private static int[] toArray(List<Integer> list) {
+    int[] array = new int[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
+
+}
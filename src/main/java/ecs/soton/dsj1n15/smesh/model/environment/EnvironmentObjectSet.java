@@ -0,0 +1,103 @@
+package ecs.soton.dsj1n15.smesh.model.environment;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Insertion ordered set of environment objects that alerts its environment whenever objects are
+ * added or removed, so that anything derived from path loss can be invalidated.
+ *
+ * @author David Jones (dsj1n15)
+ */
+class EnvironmentObjectSet extends AbstractSet<EnvironmentObject> {
+  /** Environment to alert of changes */
+  private final Environment environment;
+  /** The held objects */
+  private final Set<EnvironmentObject> objects = new LinkedHashSet<>();
+
+  /**
+   * Create a new empty set.
+   *
+   * @param environment Environment to alert of changes
+   */
+  EnvironmentObjectSet(Environment environment) {
+    this.environment = environment;
+  }
+
+  @Override
+  public boolean add(EnvironmentObject object) {
+    boolean added = objects.add(object);
+    if (added) {
+      environment.objectsChanged();
+    }
+    return added;
+  }
+
+  @Override
+  public boolean remove(Object object) {
+    boolean removed = objects.remove(object);
+    if (removed) {
+      environment.objectsChanged();
+    }
+    return removed;
+  }
+
+  @Override
+  public void clear() {
+    if (!objects.isEmpty()) {
+      objects.clear();
+      environment.objectsChanged();
+    }
+  }
+
+  @Override
+  public boolean contains(Object object) {
+    return objects.contains(object);
+  }
+
+  @Override
+  public int size() {
+    return objects.size();
+  }
+
+  @Override
+  public Iterator<EnvironmentObject> iterator() {
+    return new ObjectIterator(objects.iterator());
+  }
+
+  /**
+   * Iterator that alerts the environment of any removals made through it.
+   *
+   * @author David Jones (dsj1n15)
+   */
+  private class ObjectIterator implements Iterator<EnvironmentObject> {
+    /** Iterator over the held objects */
+    private final Iterator<EnvironmentObject> iterator;
+
+    /**
+     * @param iterator Iterator over the held objects
+     */
+    private ObjectIterator(Iterator<EnvironmentObject> iterator) {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return iterator.hasNext();
+    }
+
+    @Override
+    public EnvironmentObject next() {
+      return iterator.next();
+    }
+
+    @Override
+    public void remove() {
+      iterator.remove();
+      environment.objectsChanged();
+    }
+  }
+
+}
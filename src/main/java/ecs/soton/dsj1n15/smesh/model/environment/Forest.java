@@ -6,6 +6,7 @@ import java.util.List;
 import ecs.soton.dsj1n15.smesh.model.propogation.ITURPropagationModel;
 import ecs.soton.dsj1n15.smesh.model.propogation.PropagationModel;
 import ecs.soton.dsj1n15.smesh.radio.Radio;
+import math.geom2d.Box2D;
 import math.geom2d.Point2D;
 import math.geom2d.line.Line2D;
 import math.geom2d.polygon.Polygon2D;
@@ -39,6 +40,11 @@ public class Forest extends EnvironmentObject {
     return shape.boundary().asAwtShape();
   }
 
+  @Override
+  public Box2D getBoundingBox() {
+    return shape.boundingBox();
+  }
+
   @Override
   public double getPassThroughDistance(Line2D line) {
     return getPassThroughDistance(shape, line);
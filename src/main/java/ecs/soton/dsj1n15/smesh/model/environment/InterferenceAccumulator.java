@@ -0,0 +1,90 @@
+package ecs.soton.dsj1n15.smesh.model.environment;
+
+import java.util.List;
+import ecs.soton.dsj1n15.smesh.radio.Transmission;
+
+/**
+ * Running total of the power a single receiver sees, the noise floor plus every active
+ * transmission that can interfere with it, in mW. The environment adds and removes each
+ * transmission as it starts and ends, so the noise excluding a target transmission is the total
+ * minus the power of the target.<br>
+ * Subtracting in mW loses precision when the value removed is much larger than what is left, so
+ * the total is summed in full again if a transmission that ends was far stronger than the rest,
+ * and is reset to the noise floor whenever nothing is left. It is also summed in full after the
+ * receiver or a transmitting node changes, or a link changes.<br>
+ * The transmissions the receiver can hear at all are held separately until the transmissions in
+ * the environment or any link in it change.
+ *
+ * @author David Jones (dsj1n15)
+ */
+class InterferenceAccumulator {
+  /** Largest ratio of a removed power to what is left before the total is summed in full */
+  static final double PRECISION_RATIO = 1 << 20;
+
+  /** Whether the total can be used, if not it must be summed in full */
+  boolean valid = false;
+  /** Power of the noise floor of the receiver in mW */
+  double floor;
+  /** Power of the noise floor and every counted transmission in mW */
+  double total;
+  /** Number of counted transmissions */
+  int count;
+
+  /** Environment version the audible transmissions were found for */
+  long audibleVersion = -1;
+  /** Transmissions the receiver can hear or be interfered by, null if not yet found */
+  List<Transmission> audible = null;
+
+  /**
+   * Start a new total from the noise floor.
+   *
+   * @param floor Power of the noise floor of the receiver in mW
+   */
+  void reset(double floor) {
+    this.floor = floor;
+    this.total = floor;
+    this.count = 0;
+    this.valid = true;
+  }
+
+  /**
+   * @param power Power of a transmission that has started in mW
+   */
+  void add(double power) {
+    total += power;
+    count++;
+  }
+
+  /**
+   * @param power Power of a counted transmission that has ended in mW
+   */
+  void remove(double power) {
+    count--;
+    if (count == 0) {
+      total = floor;
+      return;
+    }
+    total -= power;
+    if (power > total * PRECISION_RATIO) {
+      valid = false;
+    }
+  }
+
+  /**
+   * @param version The current environment version
+   * @return The audible transmissions, null if they were found for a different version
+   */
+  List<Transmission> getAudible(long version) {
+    return audibleVersion == version ? audible : null;
+  }
+
+  /**
+   * @param audible Audible transmissions of the receiver
+   * @param version Environment version they were found for
+   */
+  void setAudible(List<Transmission> audible, long version) {
+    this.audible = audible;
+    this.audibleVersion = version;
+  }
+
+}
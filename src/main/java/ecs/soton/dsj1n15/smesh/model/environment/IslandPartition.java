@@ -0,0 +1,198 @@
+package ecs.soton.dsj1n15.smesh.model.environment;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import ecs.soton.dsj1n15.smesh.radio.Radio;
+
+/**
+ * Partition of the nodes of an environment into interference islands, sets of nodes that cannot
+ * hear or interfere with any node outside of their own set. Two nodes are joined if a signal from
+ * either reaches the other no more than a margin below its noise floor, using the link budget of
+ * the environment. Optionally the nodes must also be able to interfere with or hear each other
+ * using their current configurations, which splits nodes on orthogonal channels but is only valid
+ * whilst configurations do not change.<br>
+ * Joining is cumulative, so linking the environment again after nodes have moved joins any islands
+ * the new positions bring together; the partition then holds for every position seen.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class IslandPartition {
+  /** Nodes in the partition, in environment order */
+  private final Radio[] nodes;
+  /** Maximum distance between nodes that can interact */
+  private final double range;
+  /** How far below a receiver's noise floor a signal must be to be ignored, in dB */
+  private final double margin;
+  /** Whether nodes must also have compatible configurations to interact */
+  private final boolean configurationAware;
+
+  /** Parent of each node in the disjoint set forest, a node is its own parent at the root */
+  private final int[] parent;
+  /** Number of nodes in the tree of each root */
+  private final int[] size;
+
+  /**
+   * Create a partition of the current nodes of an environment, linking them in their current
+   * positions.
+   *
+   * @param environment Environment to partition
+   * @param range Maximum distance between nodes that can interact, infinite if unknown
+   * @param margin How far below a receiver's noise floor a signal must be to be ignored, in dB
+   * @param configurationAware Whether nodes must also have compatible configurations to interact
+   */
+  public IslandPartition(Environment environment, double range, double margin,
+      boolean configurationAware) {
+    if (!(range >= 0)) {
+      throw new IllegalArgumentException("Range must not be negative");
+    }
+    this.nodes = environment.getNodes().toArray(new Radio[environment.getNodes().size()]);
+    this.range = range;
+    this.margin = margin;
+    this.configurationAware = configurationAware;
+    this.parent = new int[nodes.length];
+    this.size = new int[nodes.length];
+    for (int i = 0; i < nodes.length; i++) {
+      parent[i] = i;
+      size[i] = 1;
+    }
+    link(environment);
+  }
+
+  /**
+   * Join every pair of nodes that can interact in their current positions and configurations.
+   * The environment must hold the same nodes as when the partition was created.
+   *
+   * @param environment Environment holding the nodes of the partition
+   */
+  public void link(Environment environment) {
+    LinkMatrix matrix = environment.computeLinkMatrix(range);
+    if (matrix.size() != nodes.length) {
+      throw new IllegalArgumentException("Environment nodes have changed since partitioning");
+    }
+    for (int a = 0; a < nodes.length; a++) {
+      if (matrix.getNode(a) != nodes[a]) {
+        throw new IllegalArgumentException("Environment nodes have changed since partitioning");
+      }
+      for (int b : matrix.getNeighbours(a)) {
+        // Pairs are symmetric so only check each once
+        if (b > a && find(a) != find(b) && canInteract(environment, nodes[a], nodes[b])) {
+          union(a, b);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param environment Environment holding the nodes
+   * @param a A node
+   * @param b A node
+   * @return Whether either node can hear or be interfered by the other
+   */
+  private boolean canInteract(Environment environment, Radio a, Radio b) {
+    return canAffect(environment, a, b) || canAffect(environment, b, a);
+  }
+
+  /**
+   * @param environment Environment holding the nodes
+   * @param tx A transmitting node
+   * @param rx A receiving node
+   * @return Whether a transmission from tx can be heard by or interfere with rx
+   */
+  private boolean canAffect(Environment environment, Radio tx, Radio rx) {
+    if (configurationAware && !tx.canInterfere(rx) && !tx.canCommunicate(rx)) {
+      return false;
+    }
+    return environment.getReceivePower(tx, rx) >= rx.getNoiseFloor() - margin;
+  }
+
+  /**
+   * @param node Index of a node
+   * @return Index of the root of the node's tree
+   */
+  private int find(int node) {
+    while (parent[node] != node) {
+      // Halve the path on the way up
+      parent[node] = parent[parent[node]];
+      node = parent[node];
+    }
+    return node;
+  }
+
+  /**
+   * Join the trees of two nodes, keeping the larger tree's root.
+   *
+   * @param a Index of a node
+   * @param b Index of a node
+   */
+  private void union(int a, int b) {
+    int rootA = find(a);
+    int rootB = find(b);
+    if (rootA == rootB) {
+      return;
+    }
+    if (size[rootA] < size[rootB]) {
+      int swap = rootA;
+      rootA = rootB;
+      rootB = swap;
+    }
+    parent[rootB] = rootA;
+    size[rootA] += size[rootB];
+  }
+
+  /**
+   * @return Each island as a list of its nodes, islands in order of their first node and nodes in
+   *         environment order
+   */
+  public List<List<Radio>> getIslands() {
+    Map<Integer, List<Radio>> islands = new LinkedHashMap<>();
+    for (int i = 0; i < nodes.length; i++) {
+      int root = find(i);
+      List<Radio> island = islands.get(root);
+      if (island == null) {
+        island = new ArrayList<>();
+        islands.put(root, island);
+      }
+      island.add(nodes[i]);
+    }
+    return new ArrayList<>(islands.values());
+  }
+
+  /**
+   * @return Number of islands
+   */
+  public int getIslandCount() {
+    int count = 0;
+    for (int i = 0; i < nodes.length; i++) {
+      if (find(i) == i) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @param a A node in the partition
+   * @param b A node in the partition
+   * @return Whether the nodes are in the same island
+   */
+  public boolean isSameIsland(Radio a, Radio b) {
+    return find(indexOf(a)) == find(indexOf(b));
+  }
+
+  /**
+   * @param radio A node in the partition
+   * @return Index of the node
+   * @throws IllegalArgumentException If the node is not in the partition
+   */
+  private int indexOf(Radio radio) {
+    for (int i = 0; i < nodes.length; i++) {
+      if (nodes[i] == radio) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Node is not in the partition");
+  }
+
+}
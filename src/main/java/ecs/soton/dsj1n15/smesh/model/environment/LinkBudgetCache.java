@@ -0,0 +1,159 @@
+package ecs.soton.dsj1n15.smesh.model.environment;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import ecs.soton.dsj1n15.smesh.radio.Radio;
+
+/**
+ * Symmetric matrix of averaged path loss between every pair of nodes in an environment. Each node
+ * is given a dense index when added, rows and columns are invalidated individually when a node
+ * moves or is reconfigured, and the whole matrix is invalidated when environment objects change.
+ * Uncalculated entries are held as NaN. Rows are only allocated once a value is held in them so
+ * memory grows with the links actually used.
+ *
+ * @author David Jones (dsj1n15)
+ */
+class LinkBudgetCache {
+  /** Capacity of the matrix when the first node is added */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** Index of each node in the matrix */
+  private final Map<Radio, Integer> indices = new IdentityHashMap<>();
+  /** Indexes of removed nodes that can be reused */
+  private final Deque<Integer> freeIndices = new ArrayDeque<>();
+  /** Next index to use if none are free */
+  private int nextIndex = 0;
+  /** Averaged path loss between nodes in dBm, indexed [a][b] and [b][a], null if unallocated */
+  private double[][] pathLoss = new double[0][];
+
+  /**
+   * Get the index of a node in the matrix.
+   *
+   * @param radio A node
+   * @return The index of the node, -1 if it has not been added
+   */
+  int indexOf(Radio radio) {
+    Integer index = indices.get(radio);
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * Give a node an index in the matrix, with all of its links invalid.
+   *
+   * @param radio Node to add
+   */
+  void add(Radio radio) {
+    if (indices.containsKey(radio)) {
+      return;
+    }
+    int index = freeIndices.isEmpty() ? nextIndex++ : freeIndices.pop();
+    if (index >= pathLoss.length) {
+      pathLoss = Arrays.copyOf(pathLoss, Math.max(INITIAL_CAPACITY, pathLoss.length * 2));
+    }
+    indices.put(radio, index);
+    invalidate(index);
+  }
+
+  /**
+   * Remove a node from the matrix, its index may be reused by a later node.
+   *
+   * @param radio Node to remove
+   */
+  void remove(Radio radio) {
+    Integer index = indices.remove(radio);
+    if (index != null) {
+      invalidate(index);
+      freeIndices.push(index);
+    }
+  }
+
+  /**
+   * Invalidate every link to or from a node.
+   *
+   * @param radio Node whose links have changed
+   */
+  void invalidate(Radio radio) {
+    int index = indexOf(radio);
+    if (index >= 0) {
+      invalidate(index);
+    }
+  }
+
+  /**
+   * Invalidate the row and column of an index.
+   *
+   * @param index Index whose links have changed
+   */
+  private void invalidate(int index) {
+    if (pathLoss[index] != null) {
+      Arrays.fill(pathLoss[index], Double.NaN);
+    }
+    for (double[] row : pathLoss) {
+      if (row != null && index < row.length) {
+        row[index] = Double.NaN;
+      }
+    }
+  }
+
+  /**
+   * Invalidate every link.
+   */
+  void clear() {
+    for (double[] row : pathLoss) {
+      if (row != null) {
+        Arrays.fill(row, Double.NaN);
+      }
+    }
+  }
+
+  /**
+   * @param a Index of a node
+   * @param b Index of a node
+   * @return The held averaged path loss between the nodes, NaN if not held
+   */
+  double getPathLoss(int a, int b) {
+    double[] row = pathLoss[a];
+    return row == null || b >= row.length ? Double.NaN : row[b];
+  }
+
+  /**
+   * @param a Index of a node
+   * @param b Index of a node
+   * @param loss The averaged path loss between the nodes to hold in both directions
+   */
+  void setPathLoss(int a, int b, double loss) {
+    row(a)[b] = loss;
+    row(b)[a] = loss;
+  }
+
+  /**
+   * Allocate the full row of every node so that values can then be held concurrently from multiple
+   * threads, provided no two threads hold the same pair.
+   */
+  void allocateRows() {
+    for (int index : indices.values()) {
+      row(index);
+    }
+  }
+
+  /**
+   * Get the row of an index, allocating or growing it to the full matrix width if required.
+   *
+   * @param index Index of a node
+   * @return The row of the node
+   */
+  private double[] row(int index) {
+    double[] row = pathLoss[index];
+    if (row == null || row.length < pathLoss.length) {
+      int from = row == null ? 0 : row.length;
+      row = row == null ? new double[pathLoss.length] : Arrays.copyOf(row, pathLoss.length);
+      Arrays.fill(row, from, row.length, Double.NaN);
+      pathLoss[index] = row;
+    }
+    return row;
+  }
+
+}
@@ -0,0 +1,201 @@
+package ecs.soton.dsj1n15.smesh.model.environment;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import ecs.soton.dsj1n15.smesh.radio.Radio;
+
+/**
+ * Immutable snapshot of the averaged path loss between every pair of nodes in an environment, see
+ * {@link Environment#computeLinkMatrix(double)}. Values are held as floats to keep large topologies
+ * compact. Without a range cutoff the matrix is dense, holding only the upper triangle. With a
+ * cutoff only pairs within range are held, in compressed sparse rows with columns in ascending
+ * order. Pairs that are not held have infinite path loss.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class LinkMatrix {
+  /** Nodes in the matrix, in environment order */
+  private final Radio[] nodes;
+  /** Index of each node in the matrix */
+  private final Map<Radio, Integer> indices = new IdentityHashMap<>();
+  /** Maximum distance between held pairs */
+  private final double range;
+
+  /** Packed upper triangle of path loss if dense, otherwise null */
+  private final float[] dense;
+  /** Start of each row in the sparse arrays, with a final entry for the end, null if dense */
+  private final int[] rowStart;
+  /** Column of each held sparse value, null if dense */
+  private final int[] columns;
+  /** Held sparse path loss values, null if dense */
+  private final float[] values;
+
+  /**
+   * Create a dense matrix.
+   *
+   * @param nodes Nodes in the matrix
+   * @param dense Packed upper triangle of path loss
+   */
+  LinkMatrix(Radio[] nodes, float[] dense) {
+    this(nodes, Double.POSITIVE_INFINITY, dense, null, null, null);
+  }
+
+  /**
+   * Create a sparse matrix.
+   *
+   * @param nodes Nodes in the matrix
+   * @param range Maximum distance between held pairs
+   * @param rowStart Start of each row in the sparse arrays, with a final entry for the end
+   * @param columns Column of each held value
+   * @param values Held path loss values
+   */
+  LinkMatrix(Radio[] nodes, double range, int[] rowStart, int[] columns, float[] values) {
+    this(nodes, range, null, rowStart, columns, values);
+  }
+
+  /**
+   * Create a matrix.
+   *
+   * @param nodes Nodes in the matrix
+   * @param range Maximum distance between held pairs
+   * @param dense Packed upper triangle of path loss if dense
+   * @param rowStart Start of each sparse row, with a final entry for the end
+   * @param columns Column of each held sparse value
+   * @param values Held sparse path loss values
+   */
+  private LinkMatrix(Radio[] nodes, double range, float[] dense, int[] rowStart, int[] columns,
+      float[] values) {
+    this.nodes = nodes;
+    this.range = range;
+    this.dense = dense;
+    this.rowStart = rowStart;
+    this.columns = columns;
+    this.values = values;
+    for (int i = 0; i < nodes.length; i++) {
+      indices.put(nodes[i], i);
+    }
+  }
+
+  /**
+   * Get the length of the packed upper triangle of a dense matrix.
+   *
+   * @param size Number of nodes
+   * @return Number of pairs
+   */
+  static long getPairCount(int size) {
+    return (long) size * (size - 1) / 2;
+  }
+
+  /**
+   * Get the position of a pair in the packed upper triangle of a dense matrix.
+   *
+   * @param size Number of nodes
+   * @param a Index of a node
+   * @param b Index of a node greater than a
+   * @return Position of the pair
+   */
+  static int getPackedIndex(int size, int a, int b) {
+    return (int) ((long) a * size - (long) a * (a + 1) / 2 + (b - a - 1));
+  }
+
+  /**
+   * @return Number of nodes in the matrix
+   */
+  public int size() {
+    return nodes.length;
+  }
+
+  /**
+   * @param index Index of a node
+   * @return The node at the index
+   */
+  public Radio getNode(int index) {
+    return nodes[index];
+  }
+
+  /**
+   * @param radio A node
+   * @return The index of the node, -1 if not in the matrix
+   */
+  public int indexOf(Radio radio) {
+    Integer index = indices.get(radio);
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * @return Maximum distance between held pairs, infinite if dense
+   */
+  public double getRange() {
+    return range;
+  }
+
+  /**
+   * @return Whether only pairs within range are held
+   */
+  public boolean isSparse() {
+    return dense == null;
+  }
+
+  /**
+   * @return Number of pairs held
+   */
+  public long getLinkCount() {
+    return isSparse() ? columns.length / 2 : dense.length;
+  }
+
+  /**
+   * Get the averaged path loss between two nodes.
+   *
+   * @param a Index of a node
+   * @param b Index of a node
+   * @return The path loss in dBm, infinite if the pair is not held or the nodes are the same
+   */
+  public float getPathLoss(int a, int b) {
+    if (a == b) {
+      return Float.POSITIVE_INFINITY;
+    }
+    if (!isSparse()) {
+      return dense[getPackedIndex(nodes.length, Math.min(a, b), Math.max(a, b))];
+    }
+    int found = Arrays.binarySearch(columns, rowStart[a], rowStart[a + 1], b);
+    return found < 0 ? Float.POSITIVE_INFINITY : values[found];
+  }
+
+  /**
+   * Get the averaged path loss between two nodes.
+   *
+   * @param a A node
+   * @param b A node
+   * @return The path loss in dBm, infinite if the pair is not held
+   * @throws IllegalArgumentException If either node is not in the matrix
+   */
+  public float getPathLoss(Radio a, Radio b) {
+    int ai = indexOf(a);
+    int bi = indexOf(b);
+    if (ai < 0 || bi < 0) {
+      throw new IllegalArgumentException("Node is not in the link matrix");
+    }
+    return getPathLoss(ai, bi);
+  }
+
+  /**
+   * Get the indexes of all nodes a node has a held pair with.
+   *
+   * @param index Index of a node
+   * @return Indexes of linked nodes in ascending order
+   */
+  public int[] getNeighbours(int index) {
+    if (isSparse()) {
+      return Arrays.copyOfRange(columns, rowStart[index], rowStart[index + 1]);
+    }
+    int[] neighbours = new int[nodes.length - 1];
+    for (int i = 0, n = 0; i < nodes.length; i++) {
+      if (i != index) {
+        neighbours[n++] = i;
+      }
+    }
+    return neighbours;
+  }
+
+}
@@ -0,0 +1,198 @@
+package ecs.soton.dsj1n15.smesh.model.environment;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import ecs.soton.dsj1n15.smesh.radio.Radio;
+
+/**
+ * Builds a {@link LinkMatrix} by evaluating every pair of nodes in parallel. Pairs are grouped into
+ * square tiles of the upper triangle so that each task works on a small set of nodes, and tiles
+ * are split recursively across a fork/join pool. Every calculated value is also held by the
+ * environment's link-budget cache.
+ *
+ * @author David Jones (dsj1n15)
+ */
+class LinkMatrixBuilder {
+  /** Number of nodes along each side of a tile */
+  private static final int TILE_SIZE = 64;
+
+  /** Environment the nodes are in */
+  private final Environment environment;
+  /** Nodes to build the matrix for, in environment order */
+  private final Radio[] nodes;
+  /** Maximum distance between held pairs */
+  private final double range;
+  /** Whether only pairs within range are held */
+  private final boolean sparse;
+
+  /** Tile row of each tile, in row major order */
+  private final int[] tileRows;
+  /** Tile column of each tile, in row major order */
+  private final int[] tileColumns;
+
+  /** Packed upper triangle of the matrix if dense */
+  private float[] dense;
+  /** Pairs held by each tile if sparse, three ints (row, column, float bits) per pair */
+  private int[][] tilePairs;
+
+  /**
+   * Create a new builder.
+   *
+   * @param environment Environment the nodes are in
+   * @param nodes Nodes to build the matrix for, in environment order
+   * @param range Maximum distance between held pairs, infinite for a dense matrix
+   */
+  LinkMatrixBuilder(Environment environment, Radio[] nodes, double range) {
+    this.environment = environment;
+    this.nodes = nodes;
+    this.range = range;
+    this.sparse = !Double.isInfinite(range);
+    // Enumerate tiles of the upper triangle
+    int tiles = (nodes.length + TILE_SIZE - 1) / TILE_SIZE;
+    int count = tiles * (tiles + 1) / 2;
+    tileRows = new int[count];
+    tileColumns = new int[count];
+    for (int row = 0, t = 0; row < tiles; row++) {
+      for (int column = row; column < tiles; column++, t++) {
+        tileRows[t] = row;
+        tileColumns[t] = column;
+      }
+    }
+  }
+
+  /**
+   * Evaluate every pair and collate the matrix.
+   *
+   * @param pool Pool to evaluate tiles on
+   * @return The built matrix
+   */
+  LinkMatrix build(ForkJoinPool pool) {
+    if (sparse) {
+      tilePairs = new int[tileRows.length][];
+    } else {
+      long pairs = LinkMatrix.getPairCount(nodes.length);
+      if (pairs > Integer.MAX_VALUE - 8) {
+        throw new IllegalArgumentException("Too many nodes for a dense link matrix, use a range");
+      }
+      dense = new float[(int) pairs];
+    }
+    pool.invoke(new TileTask(0, tileRows.length));
+    return sparse ? collateSparse() : new LinkMatrix(nodes, dense);
+  }
+
+  /**
+   * Evaluate every pair in a tile.
+   *
+   * @param tile Index of the tile
+   */
+  private void evaluateTile(int tile) {
+    int rowStart = tileRows[tile] * TILE_SIZE;
+    int rowEnd = Math.min(rowStart + TILE_SIZE, nodes.length);
+    int columnStart = tileColumns[tile] * TILE_SIZE;
+    int columnEnd = Math.min(columnStart + TILE_SIZE, nodes.length);
+    int[] pairs = new int[0];
+    int held = 0;
+    for (int a = rowStart; a < rowEnd; a++) {
+      for (int b = Math.max(a + 1, columnStart); b < columnEnd; b++) {
+        if (!sparse) {
+          float loss = (float) environment.holdAveragedPathLoss(nodes[a], nodes[b]);
+          dense[LinkMatrix.getPackedIndex(nodes.length, a, b)] = loss;
+          continue;
+        }
+        // Range is measured in the same plane as path loss
+        double dx = nodes[a].getX() - nodes[b].getX();
+        double dy = nodes[a].getY() - nodes[b].getY();
+        if (Math.sqrt(dx * dx + dy * dy) > range) {
+          continue;
+        }
+        float loss = (float) environment.holdAveragedPathLoss(nodes[a], nodes[b]);
+        if (held + 3 > pairs.length) {
+          pairs = Arrays.copyOf(pairs, Math.max(48, pairs.length * 2));
+        }
+        pairs[held++] = a;
+        pairs[held++] = b;
+        pairs[held++] = Float.floatToRawIntBits(loss);
+      }
+    }
+    if (sparse) {
+      tilePairs[tile] = Arrays.copyOf(pairs, held);
+    }
+  }
+
+  /**
+   * Collate the pairs held by every tile into compressed sparse rows. Tiles are visited in row
+   * major order and pairs within a tile are in row major order, so placing every mirrored pair
+   * before every direct pair leaves each row's columns in ascending order without sorting.
+   *
+   * @return The sparse matrix
+   */
+  private LinkMatrix collateSparse() {
+    int[] rowStart = new int[nodes.length + 1];
+    for (int[] pairs : tilePairs) {
+      for (int p = 0; p < pairs.length; p += 3) {
+        rowStart[pairs[p] + 1]++;
+        rowStart[pairs[p + 1] + 1]++;
+      }
+    }
+    for (int i = 0; i < nodes.length; i++) {
+      rowStart[i + 1] += rowStart[i];
+    }
+    int[] cursor = Arrays.copyOf(rowStart, nodes.length);
+    int[] columns = new int[rowStart[nodes.length]];
+    float[] values = new float[columns.length];
+    // Columns below the diagonal
+    for (int[] pairs : tilePairs) {
+      for (int p = 0; p < pairs.length; p += 3) {
+        int position = cursor[pairs[p + 1]]++;
+        columns[position] = pairs[p];
+        values[position] = Float.intBitsToFloat(pairs[p + 2]);
+      }
+    }
+    // Columns above the diagonal
+    for (int[] pairs : tilePairs) {
+      for (int p = 0; p < pairs.length; p += 3) {
+        int position = cursor[pairs[p]]++;
+        columns[position] = pairs[p + 1];
+        values[position] = Float.intBitsToFloat(pairs[p + 2]);
+      }
+    }
+    return new LinkMatrix(nodes, range, rowStart, columns, values);
+  }
+
+  /**
+   * Task evaluating a range of tiles, splitting in half until a single tile remains.
+   *
+   * @author David Jones (dsj1n15)
+   */
+  private class TileTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    /** First tile to evaluate */
+    private final int from;
+    /** Tile after the last to evaluate */
+    private final int to;
+
+    /**
+     * @param from First tile to evaluate
+     * @param to Tile after the last to evaluate
+     */
+    private TileTask(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= 1) {
+        for (int tile = from; tile < to; tile++) {
+          evaluateTile(tile);
+        }
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(new TileTask(from, middle), new TileTask(middle, to));
+    }
+  }
+
+}
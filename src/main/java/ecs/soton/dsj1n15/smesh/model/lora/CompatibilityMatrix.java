@@ -0,0 +1,97 @@
+package ecs.soton.dsj1n15.smesh.model.lora;
+
+import java.util.Arrays;
+
+/**
+ * Whether LoRa configurations can communicate with or interfere with each other, held between the
+ * fingerprints of frozen configurations so that each pair is only calculated once. Radios only hold
+ * frozen configurations, so the checks made for every pair of radios whilst listening become a
+ * table look up. Configurations that are not frozen are always calculated.<br>
+ * Each frozen configuration holds a row of results against every other fingerprint. Rows are
+ * grown by copying and results are only ever set to the same value, so concurrent simulations can
+ * share them; a result lost to a concurrent copy is calculated again.
+ *
+ * @author David Jones (dsj1n15)
+ */
+final class CompatibilityMatrix {
+  /** Flag set for every held result */
+  private static final byte KNOWN = 1;
+  /** Flag set if the first configuration can communicate with the second */
+  private static final byte COMMUNICATE = 2;
+  /** Flag set if a signal using the first configuration can interfere with the second */
+  private static final byte INTERFERE = 4;
+
+  /**
+   * Utility class, cannot be instantiated.
+   */
+  private CompatibilityMatrix() {}
+
+  /**
+   * See {@link LoRaRadio#calculateCanCommunicate(LoRaCfg, LoRaCfg)}.
+   *
+   * @param cfg Configuration of the listening radio
+   * @param rxCfg Configuration of the other radio
+   * @return Whether the configurations are compatible
+   */
+  static boolean canCommunicate(LoRaCfg cfg, LoRaCfg rxCfg) {
+    if (cfg == rxCfg) {
+      return true;
+    }
+    return (get(cfg, rxCfg) & COMMUNICATE) != 0;
+  }
+
+  /**
+   * See {@link LoRaRadio#calculateCanInterfere(LoRaCfg, double, int, double)}.
+   *
+   * @param cfg Configuration of the interfering signal
+   * @param rxCfg Configuration of the receiver
+   * @return Whether the signal interferes
+   */
+  static boolean canInterfere(LoRaCfg cfg, LoRaCfg rxCfg) {
+    if (cfg == rxCfg) {
+      return true;
+    }
+    return (get(cfg, rxCfg) & INTERFERE) != 0;
+  }
+
+  /**
+   * @param cfg First configuration
+   * @param other Second configuration
+   * @return The result flags for the pair, held if both are frozen
+   */
+  private static byte get(LoRaCfg cfg, LoRaCfg other) {
+    int index = other.getFingerprint();
+    if (!cfg.isFrozen() || index < 0) {
+      return calculate(cfg, other);
+    }
+    byte[] row = cfg.compatibility;
+    if (index < row.length && row[index] != 0) {
+      return row[index];
+    }
+    byte flags = calculate(cfg, other);
+    if (index >= row.length) {
+      row = Arrays.copyOf(row, Math.max(index + 1, row.length * 2));
+    }
+    row[index] = flags;
+    cfg.compatibility = row;
+    return flags;
+  }
+
+  /**
+   * @param cfg First configuration
+   * @param other Second configuration
+   * @return The result flags for the pair
+   */
+  private static byte calculate(LoRaCfg cfg, LoRaCfg other) {
+    int flags = KNOWN;
+    if (LoRaRadio.calculateCanCommunicate(cfg, other)) {
+      flags |= COMMUNICATE;
+    }
+    if (LoRaRadio.calculateCanInterfere(cfg, other.getFreq(), other.getBW(),
+        other.getChirpRate())) {
+      flags |= INTERFERE;
+    }
+    return (byte) flags;
+  }
+
+}
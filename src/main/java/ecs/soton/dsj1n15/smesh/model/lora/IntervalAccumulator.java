@@ -0,0 +1,215 @@
+package ecs.soton.dsj1n15.smesh.model.lora;
+
+import java.util.Arrays;
+import java.util.List;
+import ecs.soton.dsj1n15.smesh.lib.PowerConversion;
+import ecs.soton.dsj1n15.smesh.model.environment.Environment;
+import ecs.soton.dsj1n15.smesh.radio.Transmission;
+
+/**
+ * Time weighted totals of what a receiver hears of a transmission over a window, worked out from
+ * where transmissions start and end rather than from samples. The channel can only change when a
+ * transmission starts or ends, so the window is split at these points and the channel is evaluated
+ * once per piece, weighting each by its length. Used by {@link ReceiveMode#INTERVAL}.<br>
+ * As results are not compared to sampled receives exactly, power is converted using the fast
+ * conversions of {@link PowerConversion}.
+ *
+ * @author David Jones (dsj1n15)
+ */
+class IntervalAccumulator {
+  /** The transmission being accumulated */
+  private final Transmission target;
+
+  private double signalTime = 0;
+  private double signalSNR = 0;
+  private double signalRSSI = 0;
+  private double noSignalTime = 0;
+  private double wrongSignalTime = 0;
+  private double wrongSignalSNR = 0;
+
+  /** Transmission heard by the last evaluation of the channel, null if none */
+  private Transmission heard;
+  /** SNR of the transmission heard by the last evaluation of the channel */
+  private double heardSNR;
+  /** RSSI seen by the last evaluation of the channel */
+  private double heardRSSI;
+
+  /**
+   * @param target The transmission being accumulated
+   */
+  IntervalAccumulator(Transmission target) {
+    this.target = target;
+  }
+
+  /**
+   * Evaluate the channel at a single point in time, recording the strongest transmission the
+   * receiver can hear in the same way as {@link LoRaRadio#listen()}, but without random noise.
+   *
+   * @param receiver The receiving radio
+   * @param channel Transmissions that may be active at the time
+   * @param time Time to evaluate the channel at
+   * @param synced Transmission the receiver is synchronised with, given a bias, null if none
+   */
+  void listen(LoRaRadio receiver, List<Transmission> channel, double time, Transmission synced) {
+    Environment environment = receiver.getEnvironment();
+    heard = null;
+    heardSNR = 0;
+    heardRSSI = PowerConversion.fastMw2dbm(sumPower(receiver, channel, time, null));
+    int syncbonus = 3;
+    for (Transmission transmission : channel) {
+      // Ignore radios we can't listen to, this won't ignore noise of those that can interfere
+      if (!isActive(transmission, time) || transmission.sender == receiver
+          || !receiver.canCommunicate(transmission)) {
+        continue;
+      }
+      double power = environment.getReceivePower(transmission.sender, receiver);
+      double noise = PowerConversion.fastMw2dbm(sumPower(receiver, channel, time, transmission));
+      double snr = receiver.validateSNR(power - noise);
+      // Capture if the signal is more likely to be received than the last
+      boolean better;
+      if (heard == null) {
+        better = true;
+      } else if (heard == synced) {
+        better = snr > (heardSNR + syncbonus);
+      } else if (transmission == synced) {
+        better = (snr + syncbonus) > heardSNR;
+      } else {
+        better = snr > heardSNR;
+      }
+      if (better) {
+        heard = transmission;
+        heardSNR = snr;
+      }
+    }
+  }
+
+  /**
+   * Accumulate what the receiver hears over a window. The window is split wherever a transmission
+   * in the channel starts or ends and each piece is evaluated using {@link #listen}.
+   *
+   * @param receiver The receiving radio
+   * @param channel Transmissions that may overlap the window
+   * @param from Start of the window
+   * @param to End of the window
+   * @param synced Transmission the receiver is synchronised with, given a bias, null if none
+   */
+  void add(LoRaRadio receiver, List<Transmission> channel, double from, double to,
+      Transmission synced) {
+    // Find every point the channel changes within the window
+    double[] cuts = new double[channel.size() * 2 + 2];
+    int count = 0;
+    cuts[count++] = from;
+    cuts[count++] = to;
+    for (Transmission transmission : channel) {
+      if (transmission.startTime > from && transmission.startTime < to) {
+        cuts[count++] = transmission.startTime;
+      }
+      if (transmission.endTime > from && transmission.endTime < to) {
+        cuts[count++] = transmission.endTime;
+      }
+    }
+    Arrays.sort(cuts, 0, count);
+    // Accumulate each piece weighted by its length
+    for (int i = 1; i < count; i++) {
+      double length = cuts[i] - cuts[i - 1];
+      if (length <= 0) {
+        continue;
+      }
+      listen(receiver, channel, cuts[i - 1], synced);
+      if (heard == null) {
+        noSignalTime += length;
+      } else if (heard == target) {
+        signalTime += length;
+        signalSNR += PowerConversion.fastDbm2mw(heardSNR) * length;
+        signalRSSI += PowerConversion.fastDbm2mw(heardRSSI) * length;
+      } else {
+        wrongSignalTime += length;
+        wrongSignalSNR += PowerConversion.fastDbm2mw(heardSNR) * length;
+      }
+    }
+  }
+
+  /**
+   * Sum the power the receiver sees at a point in time; the noise floor and every transmission that
+   * can interfere with it.
+   *
+   * @param receiver The receiving radio
+   * @param channel Transmissions that may be active at the time
+   * @param time Time to sum power at
+   * @param exclude Transmission not to count, null if none
+   * @return The power in mW
+   */
+  private static double sumPower(LoRaRadio receiver, List<Transmission> channel, double time,
+      Transmission exclude) {
+    Environment environment = receiver.getEnvironment();
+    double power = PowerConversion.fastDbm2mw(receiver.getNoiseFloor());
+    for (Transmission transmission : channel) {
+      // Can't transmit and receive at the same time
+      if (transmission == exclude || transmission.sender == receiver
+          || !isActive(transmission, time) || !receiver.isInterferedBy(transmission)) {
+        continue;
+      }
+      power += PowerConversion.fastDbm2mw(environment.getReceivePower(transmission.sender, receiver));
+    }
+    return power;
+  }
+
+  /**
+   * @param transmission Transmission to check
+   * @param time Time to check at
+   * @return Whether the transmission is on air at the time
+   */
+  private static boolean isActive(Transmission transmission, double time) {
+    return transmission.startTime <= time && time < transmission.endTime;
+  }
+
+  /**
+   * @return Transmission heard by the last evaluation of the channel, null if none
+   */
+  Transmission getHeard() {
+    return heard;
+  }
+
+  /**
+   * @return SNR of the transmission heard by the last evaluation of the channel
+   */
+  double getHeardSNR() {
+    return heardSNR;
+  }
+
+  /**
+   * @return Fraction of the accumulated time the target was the strongest signal heard
+   */
+  double getSignalFraction() {
+    return signalTime / (signalTime + wrongSignalTime + noSignalTime);
+  }
+
+  /**
+   * @return Whether another signal was heard for at least as long as nothing was heard
+   */
+  boolean isWrongSignalDominant() {
+    return wrongSignalTime >= noSignalTime;
+  }
+
+  /**
+   * @return Average SNR of the target whilst it was heard
+   */
+  double getSignalAvgSNR() {
+    return PowerConversion.fastMw2dbm(signalSNR / signalTime);
+  }
+
+  /**
+   * @return Average RSSI whilst the target was heard
+   */
+  double getSignalAvgRSSI() {
+    return PowerConversion.fastMw2dbm(signalRSSI / signalTime);
+  }
+
+  /**
+   * @return Average SNR of other signals whilst they were heard
+   */
+  double getWrongSignalAvgSNR() {
+    return PowerConversion.fastMw2dbm(wrongSignalSNR / wrongSignalTime);
+  }
+
+}
@@ -1,8 +1,15 @@
 package ecs.soton.dsj1n15.smesh.model.lora;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * A full configuration for a LoRa radio with methods available for determining airtime using LoRa
- * modulation consistent across all LoRa radios.
+ * modulation consistent across all LoRa radios.<br>
+ * A configuration can be frozen using {@link #freeze()}, giving a shared immutable instance that
+ * holds its timings and an airtime for every packet length, so that repeated timing calculations
+ * are look ups. Radios only hold frozen configurations.
  * 
  * @author David Jones (dsj1n15)
  */
@@ -39,6 +46,18 @@ public class LoRaCfg {
    */
   public static final double BAND_G3_MID_MHZ = 869.525;
 
+  /** Largest packet length held in the airtime table of a frozen configuration */
+  public static final int MAX_PACKET_LENGTH = 255;
+
+  /** Frozen configurations, each shared by all configurations equal to it */
+  private static final Map<LoRaCfg, LoRaCfg> FROZEN = new ConcurrentHashMap<>();
+
+  /** Interference groups of frozen configurations, each shared by all groups equal to it */
+  private static final Map<InterferenceGroup, InterferenceGroup> GROUPS = new ConcurrentHashMap<>();
+
+  /** Next fingerprint to give a frozen configuration */
+  private static final AtomicInteger NEXT_FINGERPRINT = new AtomicInteger();
+
   private double freq;
   private int sf;
   private double txPow;
@@ -48,6 +67,121 @@ public class LoRaCfg {
   private boolean crc;
   private boolean explicitHeader;
 
+  /** Whether the configuration is immutable and holds its derived values */
+  private boolean frozen = false;
+  /** Small integer unique to a frozen configuration, -1 if not frozen */
+  private int fingerprint = -1;
+  /** Interference group held by a frozen configuration */
+  private Object interferenceGroup;
+  /** Compatibility with other frozen configurations by fingerprint, see CompatibilityMatrix */
+  volatile byte[] compatibility = new byte[0];
+  /** Symbol time held by a frozen configuration */
+  private double symbolTime;
+  /** Preamble time held by a frozen configuration */
+  private int preambleTime;
+  /** Required preamble time held by a frozen configuration */
+  private int requiredPreambleTime;
+  /** Chirp rate held by a frozen configuration */
+  private double chirpRate;
+  /** Airtime of every packet length held by a frozen configuration */
+  private int[] airtimes;
+
+  /**
+   * Create a configuration with every value unset, see {@link #getDefault()}.
+   */
+  public LoRaCfg() {}
+
+  /**
+   * Create a mutable copy of a configuration.
+   * 
+   * @param cfg Configuration to copy
+   */
+  public LoRaCfg(LoRaCfg cfg) {
+    this.freq = cfg.freq;
+    this.sf = cfg.sf;
+    this.txPow = cfg.txPow;
+    this.bw = cfg.bw;
+    this.cr = cfg.cr;
+    this.preambleSymbols = cfg.preambleSymbols;
+    this.crc = cfg.crc;
+    this.explicitHeader = cfg.explicitHeader;
+  }
+
+  /**
+   * Get the shared frozen instance equal to this configuration, creating it if this is the first.
+   * The frozen instance cannot be changed, copy it with {@link #LoRaCfg(LoRaCfg)} to make a
+   * different configuration.
+   * 
+   * @return Frozen configuration with the same values
+   */
+  public LoRaCfg freeze() {
+    if (frozen) {
+      return this;
+    }
+    LoRaCfg shared = FROZEN.get(this);
+    if (shared == null) {
+      LoRaCfg created = new LoRaCfg(this);
+      created.symbolTime = getSymbolTime(created);
+      created.preambleTime = calculatePreambleTime(created);
+      created.requiredPreambleTime = requiredPreambleTime(created);
+      created.chirpRate = created.getChirpRate();
+      created.airtimes = new int[MAX_PACKET_LENGTH + 1];
+      for (int length = 0; length <= MAX_PACKET_LENGTH; length++) {
+        created.airtimes[length] = calculatePacketAirtime(created, length);
+      }
+      created.interferenceGroup = created.getInterferenceGroup();
+      created.fingerprint = NEXT_FINGERPRINT.getAndIncrement();
+      created.frozen = true;
+      shared = FROZEN.putIfAbsent(created, created);
+      if (shared == null) {
+        shared = created;
+      }
+    }
+    return shared;
+  }
+
+  /**
+   * @return Whether the configuration is frozen and cannot be changed
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Get the fingerprint of a frozen configuration, a small integer unique to it that can be used to
+   * index tables of results between configurations.
+   * 
+   * @return The fingerprint, -1 if the configuration is not frozen
+   */
+  public int getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * Get the interference group of the configuration, shared by every configuration with the same
+   * frequency, bandwidth and chirp rate. Whether a LoRa signal interferes with or can be heard by a
+   * receiver only depends on these, see {@link LoRaRadio#canInterfere}.
+   * 
+   * @return The interference group, the same instance for all frozen configurations in the group
+   */
+  public Object getInterferenceGroup() {
+    if (frozen) {
+      return interferenceGroup;
+    }
+    InterferenceGroup group = new InterferenceGroup(freq, bw, getChirpRate());
+    InterferenceGroup shared = GROUPS.putIfAbsent(group, group);
+    return shared == null ? group : shared;
+  }
+
+  /**
+   * Check that the configuration can be changed.
+   */
+  private void checkMutable() {
+    if (frozen) {
+      throw new IllegalStateException("Cannot change a frozen LoRa configuration");
+    }
+  }
+
   /**
    * @return The current centre frequency in MHz
    */
@@ -59,6 +193,7 @@ public class LoRaCfg {
    * @param freq The new centre frequency in MHz
    */
   public void setFreq(double freq) {
+    checkMutable();
     this.freq = freq;
   }
 
@@ -73,6 +208,7 @@ public class LoRaCfg {
    * @param sf The new LoRa spreading factor (chips = 2 ^ sf)
    */
   public void setSF(int sf) {
+    checkMutable();
     this.sf = sf;
   }
 
@@ -87,6 +223,7 @@ public class LoRaCfg {
    * @param txPow The new transmission power in dBm
    */
   public void setTxPow(double txPow) {
+    checkMutable();
     this.txPow = txPow;
   }
 
@@ -101,6 +238,7 @@ public class LoRaCfg {
    * @param bw The new bandwidth in Hz
    */
   public void setBW(int bw) {
+    checkMutable();
     this.bw = bw;
   }
 
@@ -115,6 +253,7 @@ public class LoRaCfg {
    * @param cr The new denominator for the coding rate. Actual CR = 4 / cr.
    */
   public void setCR(int cr) {
+    checkMutable();
     this.cr = cr;
   }
 
@@ -130,6 +269,7 @@ public class LoRaCfg {
    *        -4.25)
    */
   public void setPreambleSymbols(int preambleSymbols) {
+    checkMutable();
     this.preambleSymbols = preambleSymbols;
   }
 
@@ -144,6 +284,7 @@ public class LoRaCfg {
    * @param crc Whether the CRC should be enabled
    */
   public void setCrc(boolean crc) {
+    checkMutable();
     this.crc = crc;
   }
 
@@ -158,6 +299,7 @@ public class LoRaCfg {
    * @param explicitHeader Whether the explicit header should be enabled
    */
   public void setExplicitHeader(boolean explicitHeader) {
+    checkMutable();
     this.explicitHeader = explicitHeader;
   }
 
@@ -193,6 +335,9 @@ public class LoRaCfg {
    * @return Total send time for packet in ms
    */
   public static int calculatePacketAirtime(LoRaCfg cfg, int packetLen) {
+    if (cfg.frozen && packetLen >= 0 && packetLen <= MAX_PACKET_LENGTH) {
+      return cfg.airtimes[packetLen];
+    }
     double symbolTime = getSymbolTime(cfg); // ms
     double preambleTime = (cfg.preambleSymbols + 4.25) * symbolTime;
     boolean ldr = isLDRRequired(cfg);
@@ -214,6 +359,9 @@ public class LoRaCfg {
    * @return Send time for preamble in ms
    */
   public static int calculatePreambleTime(LoRaCfg cfg) {
+    if (cfg.frozen) {
+      return cfg.preambleTime;
+    }
     return (int) Math.ceil((cfg.preambleSymbols + 4.25) * getSymbolTime(cfg));
   }
 
@@ -225,6 +373,9 @@ public class LoRaCfg {
    * @return Preamble time in ms
    */
   public static int requiredPreambleTime(LoRaCfg cfg) {
+    if (cfg.frozen) {
+      return cfg.requiredPreambleTime;
+    }
     return (int) Math.ceil((5 + 4.25) * getSymbolTime(cfg));
   }
 
@@ -235,6 +386,9 @@ public class LoRaCfg {
    * @return Send time for symbol in ms
    */
   public static double getSymbolTime(LoRaCfg cfg) {
+    if (cfg.frozen) {
+      return cfg.symbolTime;
+    }
     return 1000.0 * Math.pow(2, cfg.sf) / cfg.bw; // ms
   }
 
@@ -375,8 +529,97 @@ public class LoRaCfg {
    * @return Get the LoRa chirp rate
    */
   public double getChirpRate() {
+    if (frozen) {
+      return chirpRate;
+    }
     double bw = this.bw / 1e6;
     return (bw * bw) / Math.pow(2, sf);
   }
 
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + Double.hashCode(freq);
+    result = prime * result + sf;
+    result = prime * result + Double.hashCode(txPow);
+    result = prime * result + bw;
+    result = prime * result + cr;
+    result = prime * result + preambleSymbols;
+    result = prime * result + (crc ? 1231 : 1237);
+    result = prime * result + (explicitHeader ? 1231 : 1237);
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (!(obj instanceof LoRaCfg))
+      return false;
+    LoRaCfg other = (LoRaCfg) obj;
+    if (Double.doubleToLongBits(freq) != Double.doubleToLongBits(other.freq))
+      return false;
+    if (sf != other.sf || bw != other.bw || cr != other.cr)
+      return false;
+    if (Double.doubleToLongBits(txPow) != Double.doubleToLongBits(other.txPow))
+      return false;
+    if (preambleSymbols != other.preambleSymbols || crc != other.crc
+        || explicitHeader != other.explicitHeader)
+      return false;
+    return true;
+  }
+
+  /**
+   * Key of the signals that interfere with the same receivers.
+   * 
+   * @author David Jones (dsj1n15)
+   */
+  private static class InterferenceGroup {
+    private final double freq;
+    private final int bw;
+    private final double chirpRate;
+
+    /**
+     * @param freq Centre frequency in MHz
+     * @param bw Bandwidth in Hz
+     * @param chirpRate LoRa chirp rate
+     */
+    private InterferenceGroup(double freq, int bw, double chirpRate) {
+      this.freq = freq;
+      this.bw = bw;
+      this.chirpRate = chirpRate;
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+      result = prime * result + Double.hashCode(freq);
+      result = prime * result + bw;
+      result = prime * result + Double.hashCode(chirpRate);
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof InterferenceGroup))
+        return false;
+      InterferenceGroup other = (InterferenceGroup) obj;
+      return Double.doubleToLongBits(freq) == Double.doubleToLongBits(other.freq)
+          && bw == other.bw
+          && Double.doubleToLongBits(chirpRate) == Double.doubleToLongBits(other.chirpRate);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("InterferenceGroup [freq=%.3f, bw=%d, chirpRate=%f]", freq, bw,
+          chirpRate);
+    }
+  }
+
 }
@@ -1,16 +1,19 @@
 package ecs.soton.dsj1n15.smesh.model.lora;
 
-import java.util.Iterator;
-import java.util.Map.Entry;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import ecs.soton.dsj1n15.smesh.lib.Utilities;
+import ecs.soton.dsj1n15.smesh.model.RandomStream.Purpose;
 import ecs.soton.dsj1n15.smesh.radio.Packet;
-import ecs.soton.dsj1n15.smesh.radio.PartialReceive;
 import ecs.soton.dsj1n15.smesh.radio.Radio;
 import ecs.soton.dsj1n15.smesh.radio.ReceiveResult;
 import ecs.soton.dsj1n15.smesh.radio.ReceiveResult.MetadataStatus;
 import ecs.soton.dsj1n15.smesh.radio.ReceiveResult.Status;
+import ecs.soton.dsj1n15.smesh.radio.SampleBuffer;
 import ecs.soton.dsj1n15.smesh.radio.Transmission;
 
 /**
@@ -24,6 +27,17 @@ public class LoRaRadio extends Radio {
   public static final double DEFAULT_ANTENNA_GAIN = 0;
   public static final double DEFAULT_CABLE_LOSS = 0;
 
+  /** Receive probability for each spreading factor from the minimum */
+  private static final ReceiveProbabilityTable[] PROBABILITY_TABLES =
+      new ReceiveProbabilityTable[LoRaCfg.MAX_SF - LoRaCfg.MIN_SF + 1];
+  static {
+    for (int sf = LoRaCfg.MIN_SF; sf <= LoRaCfg.MAX_SF; sf++) {
+      final int tableSF = sf;
+      PROBABILITY_TABLES[sf - LoRaCfg.MIN_SF] =
+          new ReceiveProbabilityTable(snr -> calculateReceiveProbability(tableSF, snr));
+    }
+  }
+
   /** Radio configuration */
   protected LoRaCfg cfg;
 
@@ -54,6 +68,65 @@ public class LoRaRadio extends Radio {
   /** If enabled, when CAD capture and processing is finished */
   protected long cadCompleteTime = 0;
 
+  /** How the channel is evaluated whilst listening */
+  protected ReceiveMode receiveMode = ReceiveMode.SLOT;
+
+  /** Transmission heard in the current listen segment, null if none */
+  private Transmission segmentReceive;
+  /** SNR of the transmission heard in the current listen segment */
+  private double segmentSNR;
+  /** RSSI in the current listen segment */
+  private double segmentRSSI;
+  /** Last time the current listen segment is valid for */
+  private long segmentEnd;
+  /** Environment channel version the current listen segment is valid for, -1 if none */
+  private long segmentVersion = -1;
+  /** Synchronised signal when the current listen segment was evaluated */
+  private Transmission segmentSynced;
+  /** Last capture stream check time when the current listen segment was evaluated */
+  private long segmentLastTime;
+
+  /** Preambles found by the sync search that were not yet complete, in sample order */
+  private final List<SampleAccumulator> syncCandidates = new ArrayList<>();
+  /** Number of samples the sync search has looked at */
+  private int syncSearched = 0;
+  /** Time of the last sample the sync search looked at */
+  private long syncCheckTime;
+  /** Time the sync search started checking from */
+  private long syncCheckStart;
+  /** Sample buffer version the sync search is valid for, -1 if invalid */
+  private long syncVersion = -1;
+  /** Environment node version the sync search is valid for */
+  private long syncNodeVersion;
+
+  /** Order that transmissions started in */
+  private static final Comparator<Transmission> START_ORDER =
+      Comparator.comparingLong((Transmission t) -> t.startTime)
+          .thenComparingInt(t -> t.sender.getID());
+  /** Order that preambles are evaluated in when receiving by interval */
+  private static final Comparator<Transmission> PREAMBLE_ORDER =
+      Comparator.comparingLong(LoRaRadio::getPreambleFinish).thenComparing(START_ORDER);
+  /** Number of random draws that can be made for each transmission when receiving by interval */
+  private static final int INTERVAL_DRAWS = 5;
+  /** Random draw for the first preamble symbol when receiving by interval */
+  private static final int DRAW_PREAMBLE_SYMBOL = 0;
+  /** Random draw for the preamble when receiving by interval */
+  private static final int DRAW_PREAMBLE = 1;
+  /** Random draw for a preamble collision when receiving by interval */
+  private static final int DRAW_PREAMBLE_COLLISION = 2;
+  /** Random draw for the payload when receiving by interval */
+  private static final int DRAW_PAYLOAD = 3;
+  /** Random draw for a payload collision when receiving by interval */
+  private static final int DRAW_PAYLOAD_COLLISION = 4;
+
+  /** Receivable transmissions whose preambles are still to be evaluated by interval, in order */
+  private final PriorityQueue<Transmission> intervalPreambles = new PriorityQueue<>(PREAMBLE_ORDER);
+
+  /** Payload accumulated so far for the synchronised signal, null if not started */
+  private SampleAccumulator payload;
+  /** Sample buffer version the payload accumulator is valid for */
+  private long payloadVersion;
+
   /**
    * Instantiate a LoRa Radio using the default configuration.
    * 
@@ -68,24 +141,32 @@ public class LoRaRadio extends Radio {
    * Instantiate a LoRa Radio.
    * 
    * @param id ID of the radio
-   * @param cfg LoRa configuration to initialise with
+   * @param cfg LoRa configuration to initialise with, the radio uses the frozen equivalent
    */
   public LoRaRadio(int id, LoRaCfg cfg) {
     super(id);
-    this.cfg = cfg;
+    this.cfg = cfg.freeze();
     this.antennaGain = DEFAULT_ANTENNA_GAIN;
     this.cableLoss = DEFAULT_CABLE_LOSS;
   }
 
   /**
+   * Set the LoRa configuration of the radio. The radio uses the frozen equivalent of the
+   * configuration, so later changes to the given configuration have no effect on the radio.
+   * 
    * @param cfg New LoRa configuration to use
    */
   public void setLoRaCfg(LoRaCfg cfg) {
-    this.cfg = cfg;
+    LoRaCfg frozen = cfg.freeze();
+    if (frozen == this.cfg) {
+      return;
+    }
+    this.cfg = frozen;
+    nodeChanged();
   }
 
   /**
-   * @return Current LoRa configuration
+   * @return Current LoRa configuration, this is frozen
    */
   public LoRaCfg getLoRaCfg() {
     return cfg;
@@ -124,6 +205,7 @@ public class LoRaRadio extends Radio {
 
   public void setAntennaGain(double antennaGain) {
     this.antennaGain = antennaGain;
+    nodeChanged();
   }
 
   @Override
@@ -133,6 +215,7 @@ public class LoRaRadio extends Radio {
 
   public void setCableLoss(double cableLoss) {
     this.cableLoss = cableLoss;
+    nodeChanged();
   }
 
   @Override
@@ -167,8 +250,15 @@ public class LoRaRadio extends Radio {
     if (cadEnabled) {
       throw new IllegalStateException("Cannot transmit whilst doing CAD");
     }
+    // Without samples to continue from a partly received signal is lost, once anything decided by
+    // now has been received
+    if (receiveMode == ReceiveMode.INTERVAL) {
+      receiveIntervals();
+      synced = null;
+    }
     long airtime = cfg.calculatePacketAirtime(packet.length);
-    tx = new Transmission(this, packet, environment.getTime(), airtime);
+    tx = new LoRaTransmission(this, packet, environment.getTime(), airtime);
+    environment.transmissionStarted(tx);
     return tx;
   }
 
@@ -177,6 +267,11 @@ public class LoRaRadio extends Radio {
     if (tx != null) {
       throw new IllegalStateException("Node cannot receive whilst transmitting");
     }
+    // Samples are only needed for CAD when receiving by interval
+    if (receiveMode == ReceiveMode.INTERVAL && !cadEnabled) {
+      receiveIntervals();
+      return;
+    }
     // Capture data in receive stream
     listen();
 
@@ -202,15 +297,20 @@ public class LoRaRadio extends Radio {
    * whether the signal was strong enough.
    */
   public void listen() {
-    Long globalTime = environment.getTime();
-    if (timeMap.containsKey(environment.getTime())) {
+    long globalTime = environment.getTime();
+    if (samples.contains(globalTime)) {
       throw new IllegalStateException("Already listened at this point");
     }
-    timeMap.put(globalTime, null);
+    // Repeat the current segment whilst the channel is unchanged
+    if (receiveMode == ReceiveMode.SEGMENT && isSegmentValid(globalTime)) {
+      samples.add(globalTime, segmentReceive, segmentSNR, segmentRSSI);
+      return;
+    }
     // Find the receive to capture in this slot
-    PartialReceive receive = null;
+    Transmission receive = null;
+    double receiveSNR = 0;
     double rssi = environment.getRSSI(this);
-    for (Transmission transmission : environment.getTransmissions()) {
+    for (Transmission transmission : environment.getAudibleTransmissions(this)) {
       // Ignore transmission messages that have finished
       if (transmission.endTime < lastTime && transmission.endTime < globalTime) {
         continue;
@@ -221,157 +321,242 @@ public class LoRaRadio extends Radio {
       }
       // Determine SNR of signal
       double snr = environment.getReceiveSNR(transmission.sender, this);
-      // Mix a bit of random noise in
-      snr = snr + Utilities.RANDOM.nextDouble() - 0.5;
+      // Mix a bit of random noise in, independent of the order transmissions are listened to
+      snr = snr + getRandom(Purpose.LISTEN_NOISE).doubleAt(globalTime, transmission.sender.getID())
+          - 0.5;
       // Capture if the signal is more likely to be received than the last
       boolean better;
       int syncbonus = 3;
       if (receive == null) {
         better = true;
       } else {
-        if (receive.transmission == synced) {
-          better = snr > (receive.snr + syncbonus);
+        if (receive == synced) {
+          better = snr > (receiveSNR + syncbonus);
         } else if (transmission == synced) {
-          better = (snr + syncbonus) > receive.snr;
+          better = (snr + syncbonus) > receiveSNR;
         } else {
-          better = snr > receive.snr;
+          better = snr > receiveSNR;
         }
       }
       if (better) {
-        receive = new PartialReceive(transmission, globalTime, snr, rssi);
+        receive = transmission;
+        receiveSNR = snr;
+      }
+    }
+    // Record any partial receives no matter the strength, or that nothing was heard
+    samples.add(globalTime, receive, receiveSNR, rssi);
+    // Start a new segment that lasts until the channel changes
+    if (receiveMode == ReceiveMode.SEGMENT) {
+      // Whether a transmission is ignored changes once it has ended
+      long nextEnd = Long.MAX_VALUE;
+      for (Transmission transmission : environment.getTransmissions()) {
+        if (transmission.endTime >= globalTime) {
+          nextEnd = Math.min(nextEnd, transmission.endTime);
+        }
       }
+      segmentReceive = receive;
+      segmentSNR = receiveSNR;
+      segmentRSSI = rssi;
+      segmentEnd = nextEnd;
+      segmentVersion = environment.getChannelVersion();
+      segmentSynced = synced;
+      segmentLastTime = lastTime;
     }
-    // Record any partial receives no matter the strength
-    if (receive != null) {
-      timeMap.put(globalTime, receive);
+  }
+
+  /**
+   * Determine whether the current segment still describes the channel, i.e. no transmission has
+   * started or ended, no link has changed, no transmission has passed its end and the sync state
+   * is the same as when it was evaluated.
+   * 
+   * @param time The current time
+   * @return Whether the segment can be repeated
+   */
+  private boolean isSegmentValid(long time) {
+    return segmentVersion == environment.getChannelVersion() && time <= segmentEnd
+        && synced == segmentSynced && lastTime == segmentLastTime;
+  }
+
+  /**
+   * @return How the radio evaluates the channel whilst listening
+   */
+  public ReceiveMode getReceiveMode() {
+    return receiveMode;
+  }
+
+  /**
+   * @param receiveMode How the radio should evaluate the channel whilst listening
+   */
+  public void setReceiveMode(ReceiveMode receiveMode) {
+    this.receiveMode = receiveMode;
+    this.segmentVersion = -1;
+    this.intervalPreambles.clear();
+  }
+
+  /**
+   * {@inheritDoc} <br>
+   * When receiving by interval the transmission is queued to have its preamble evaluated once it
+   * finishes, if it can be received.
+   */
+  @Override
+  public void transmissionStarted(Transmission transmission) {
+    if (receiveMode == ReceiveMode.INTERVAL && transmission.sender != this
+        && canCommunicate(transmission)) {
+      intervalPreambles.add(transmission);
     }
   }
 
   /**
    * Find a preamble in the input stream to synchronise with. Start by finding the first 'important'
    * preamble symbol and then search ahead to see if the preamble sync is successful. If successful
-   * will set the class sync variable to the transmission, otherwise it will be set to null.
+   * will set the class sync variable to the transmission, otherwise it will be set to null.<br>
+   * Each call continues the search of the previous call: preambles that were not yet complete are
+   * revisited in order, including the check of their first symbol, and then only new samples are
+   * searched. The search starts again from the first sample if samples have been dropped, the last
+   * check time has moved or a node has been reconfigured, as any of these change what it finds.
    * 
    * @return Whether a preamble was found and synchronised with
    */
   private boolean findSync() {
-    Transmission detected = null;
-    boolean gotSync = false;
-    long lastPreambleCheck = this.lastTime;
-    Iterator<Entry<Long, PartialReceive>> itrTimeMap = timeMap.entrySet().iterator();
-    while (itrTimeMap.hasNext()) {
-      detected = null;
-      // Determine if the preamble starts in this time slot
-      Entry<Long, PartialReceive> first = itrTimeMap.next();
-      if (first.getValue() != null) {
-        LoRaCfg senderCfg = ((LoRaRadio) first.getValue().transmission.sender).getLoRaCfg();
-        double preambleFinish =
-            first.getValue().transmission.startTime + senderCfg.calculatePreambleTime();
-        double preambleReqStart = preambleFinish - LoRaCfg.requiredPreambleTime(senderCfg);
-        if (preambleReqStart >= lastPreambleCheck && preambleReqStart <= first.getKey()) {
-          detected = first.getValue().transmission;
+    if (syncVersion != samples.getVersion() || syncCheckStart != lastTime
+        || syncNodeVersion != environment.getNodeVersion()) {
+      restartSyncSearch(lastTime);
+    }
+    int candidate = 0;
+    while (true) {
+      // Revisit preambles that were incomplete before searching new samples
+      SampleAccumulator preamble;
+      if (candidate < syncCandidates.size()) {
+        preamble = syncCandidates.get(candidate);
+      } else if (syncSearched < samples.size()) {
+        preamble = detectPreamble(syncSearched);
+        if (preamble == null) {
+          // No preamble keep searching
+          continue;
         }
-      }
-      lastPreambleCheck = first.getKey();
-      if (detected == null) {
-        // No preamble keep searching
-        continue;
+        syncCandidates.add(preamble);
+      } else {
+        break;
       }
       // Check if the first preamble symbol is receivable
-      if (!getReceiveSuccess(first.getValue().snr)) {
-        clearReceiveMap(first.getKey());
-        itrTimeMap = timeMap.entrySet().iterator();
+      if (!getReceiveSuccess(preamble.firstSNR)) {
+        samples.clearTo(preamble.firstTime);
+        restartSyncSearch(preamble.firstTime);
+        candidate = 0;
         // Failed to get preamble but no strong opposing signal so not a collision, just a missed
         // preamble, record it as a failed receive for simulation analysis
         this.lastReceive = new ReceiveResult(Status.UNAWARE_FAIL, MetadataStatus.FAIL_NO_PREAMBLE,
-            detected, first.getKey());
+            preamble.target, preamble.firstTime);
         alertReceiveListeners();
         continue;
       }
       // Look ahead to see if full preamble detected
-      Pair<PreambleResult, Long> pr;
-      pr = syncLookahead(detected, first.getKey());
-      if (pr.getLeft() != PreambleResult.NOT_COMPLETE) {
-        this.lastTime = pr.getRight();
-        lastPreambleCheck = pr.getRight();
+      Pair<PreambleResult, Long> pr = syncLookahead(preamble);
+      if (pr.getLeft() == PreambleResult.NOT_COMPLETE) {
+        candidate++;
+        continue;
       }
+      this.lastTime = pr.getRight();
       // Got the end of the preamble successfully, can synchronise
       if (pr.getLeft() == PreambleResult.SUCCESS) {
-        gotSync = true;
-        break;
+        syncVersion = -1;
+        synced = preamble.target;
+        return true;
       }
-      // On a failure can clear up some of the old receive data
-      if (pr.getLeft() == PreambleResult.FAIL) {
-        // Can forget about information up to this point as it is of no use
-        clearReceiveMap(pr.getRight());
-        itrTimeMap = timeMap.entrySet().iterator();
+      // On a failure can forget about information up to this point as it is of no use
+      samples.clearTo(pr.getRight());
+      restartSyncSearch(pr.getRight());
+      candidate = 0;
+    }
+    synced = null;
+    return false;
+  }
+
+  /**
+   * Start the preamble search again from the first sample.
+   * 
+   * @param checkTime Time before the first sample, a preamble must start after this to be detected
+   *        in the first sample
+   */
+  private void restartSyncSearch(long checkTime) {
+    syncCandidates.clear();
+    syncSearched = 0;
+    syncCheckTime = checkTime;
+    syncCheckStart = checkTime;
+    syncVersion = samples.getVersion();
+    syncNodeVersion = environment.getNodeVersion();
+  }
+
+  /**
+   * Determine whether a preamble starts in the next sample to search, moving the search on.
+   * 
+   * @param index Index of the next sample to search
+   * @return Accumulator for the detected preamble, null if none starts in the sample
+   */
+  private SampleAccumulator detectPreamble(int index) {
+    SampleAccumulator detected = null;
+    long time = samples.getTime(index);
+    Transmission transmission = samples.getTransmission(index);
+    if (transmission != null) {
+      LoRaCfg senderCfg = ((LoRaRadio) transmission.sender).getLoRaCfg();
+      double preambleFinish = transmission.startTime + senderCfg.calculatePreambleTime();
+      double preambleReqStart = preambleFinish - LoRaCfg.requiredPreambleTime(senderCfg);
+      if (preambleReqStart >= syncCheckTime && preambleReqStart <= time) {
+        detected = new SampleAccumulator(transmission, index, time, samples.getSNR(index));
       }
     }
-    // Update the sync status
-    synced = gotSync ? detected : null;
-    return gotSync;
+    syncCheckTime = time;
+    syncSearched = index + 1;
+    return detected;
   }
 
   /**
-   * From the start time, look ahead to find the rest of the preamble in the partial receive buffer.
+   * From the start of a preamble, look ahead to find the rest of it in the partial receive buffer.
    * If enough is found use typical radio receive behaviour to determine whether it was strong
    * enough to be found successfully. If there is conflicting receive data trigger a collision,
-   * otherwise fail as not found.
+   * otherwise fail as not found. Samples are accumulated into the preamble as they are looked at,
+   * so a search that is not complete continues from where it stopped.
    * 
-   * @param target The transmission whose preamble was found
-   * @param startTime Time when start of preamble was found
+   * @param preamble Accumulator of the preamble that was found
    * @return The search result, with a time of collision or end as appropriate
    */
-  private Pair<PreambleResult, Long> syncLookahead(Transmission target, long startTime) {
+  private Pair<PreambleResult, Long> syncLookahead(SampleAccumulator preamble) {
+    Transmission target = preamble.target;
     LoRaCfg senderCfg = ((LoRaRadio) target.sender).getLoRaCfg();
     double preambleFinish = target.startTime + senderCfg.calculatePreambleTime();
-    int noSignalCount = 0;
-    int signalCount = 0;
-    double signalSNR = 0;
-    int wrongSignalCount = 0;
-    double wrongSignalSNR = 0;
 
     // Search ahead in the stream
-    for (Entry<Long, PartialReceive> next : timeMap.entrySet()) {
-      if (next.getKey() < startTime) {
-        continue;
-      }
-      if (next.getValue() == null) {
-        noSignalCount++;
-      } else if (next.getValue().transmission == target) {
-        signalCount++;
-        signalSNR += Utilities.dbm2mw(next.getValue().snr);
-      } else {
-        wrongSignalCount++;
-        wrongSignalSNR += Utilities.dbm2mw(next.getValue().snr);
-      }
+    for (int i = preamble.next; i < samples.size(); i++) {
+      long time = samples.getTime(i);
+      preamble.add(samples, i);
 
       // Passed end of preamble, check if preamble was found
-      if (next.getKey() >= preambleFinish) {
-        int totalParts = (signalCount + wrongSignalCount + noSignalCount);
-        double signalPercentage = signalCount / (double) totalParts;
+      if (time >= preambleFinish) {
+        int totalParts =
+            (preamble.signalCount + preamble.wrongSignalCount + preamble.noSignalCount);
+        double signalPercentage = preamble.signalCount / (double) totalParts;
         if (signalPercentage > 0.8) {
-          double signalAvgSNR = Utilities.mw2dbm(signalSNR / signalCount);
-          // System.out.println(signalAvgSNR);
+          double signalAvgSNR = Utilities.mw2dbm(preamble.signalSNR / preamble.signalCount);
           if (getReceiveSuccess(signalAvgSNR)) {
-            return new ImmutablePair<>(PreambleResult.SUCCESS, next.getKey());
+            return new ImmutablePair<>(PreambleResult.SUCCESS, time);
           }
-        } else if (wrongSignalCount >= noSignalCount) {
+        } else if (preamble.wrongSignalCount >= preamble.noSignalCount) {
           // Check for preamble collision
-          double wrongSignalAvgSNR = Utilities.mw2dbm(wrongSignalSNR / wrongSignalCount);
+          double wrongSignalAvgSNR =
+              Utilities.mw2dbm(preamble.wrongSignalSNR / preamble.wrongSignalCount);
           if (getReceiveSuccess(wrongSignalAvgSNR)) {
             this.lastReceive = new ReceiveResult(Status.FAIL_COLLISION,
-                MetadataStatus.FAIL_PREAMBLE_COLLISION, target, next.getKey());
+                MetadataStatus.FAIL_PREAMBLE_COLLISION, target, time);
             alertReceiveListeners();
-            return new ImmutablePair<>(PreambleResult.FAIL, next.getKey());
+            return new ImmutablePair<>(PreambleResult.FAIL, time);
           }
         }
         // Failed to get preamble but no strong opposing signal so not a collision, just a missed
         // preamble, record it as a failed receive for simulation analysis
         this.lastReceive = new ReceiveResult(Status.UNAWARE_FAIL, MetadataStatus.FAIL_NO_PREAMBLE,
-            target, next.getKey());
+            target, time);
         alertReceiveListeners();
-        return new ImmutablePair<>(PreambleResult.FAIL, next.getKey());
+        return new ImmutablePair<>(PreambleResult.FAIL, time);
       }
     }
     // Reached end of search but not found end of preamble
@@ -383,7 +568,8 @@ public class LoRaRadio extends Radio {
    * number of incorrect partial receives are less than the coding rate can accept and the
    * getReceiveSuccess check passes. Coding rate performance is assumed to be perfect where CR of
    * 4/5 can correct 20% of the signal etc... Will clear the input stream if the end of the
-   * synchronised transmission is detected.
+   * synchronised transmission is detected. Payload samples are accumulated as they arrive so each
+   * is only looked at once.
    */
   private void decodePacket() {
     if (synced == null) {
@@ -391,46 +577,34 @@ public class LoRaRadio extends Radio {
     }
     LoRaCfg senderCfg = ((LoRaRadio) synced.sender).getLoRaCfg();
     long startTime = synced.startTime + senderCfg.calculatePreambleTime();
-    int signalCount = 0;
-    double signalSNR = 0;
-    double signalRSSI = 0;
-    int noSignalCount = 0;
-    int wrongSignalCount = 0;
-    double wrongSignalSNR = 0;
-
-    Long clearTo = null;
-    for (Entry<Long, PartialReceive> entry : timeMap.entrySet()) {
-      long time = entry.getKey();
-      if (time < startTime) {
-        continue;
-      }
+    // Accumulate from the start of the payload again if anything it depends on has changed
+    if (payload == null || payload.target != synced || payload.firstTime != startTime
+        || payloadVersion != samples.getVersion()) {
+      payload = new SampleAccumulator(synced, samples.indexFrom(startTime), startTime, 0);
+      payloadVersion = samples.getVersion();
+    }
+
+    for (int i = payload.next; i < samples.size(); i++) {
+      long time = samples.getTime(i);
       // Accumulate time slices
-      if (entry.getValue() == null) {
-        noSignalCount++;
-      } else if (entry.getValue().transmission == synced) {
-        signalCount++;
-        signalSNR += Utilities.dbm2mw(entry.getValue().snr);
-        signalRSSI += Utilities.dbm2mw(entry.getValue().rssi);
-      } else {
-        wrongSignalCount++;
-        wrongSignalSNR += Utilities.dbm2mw(entry.getValue().snr);
-      }
+      payload.add(samples, i);
 
       if (time > synced.endTime) {
         ReceiveResult receive = null;
-        int totalParts = (signalCount + wrongSignalCount + noSignalCount);
-        double signalPercentage = signalCount / (double) totalParts;
-        double signalAvgSNR = Utilities.mw2dbm(signalSNR / signalCount);
-        double signalAvgRSSI = Utilities.mw2dbm(signalRSSI / signalCount);
+        int totalParts = (payload.signalCount + payload.wrongSignalCount + payload.noSignalCount);
+        double signalPercentage = payload.signalCount / (double) totalParts;
+        double signalAvgSNR = Utilities.mw2dbm(payload.signalSNR / payload.signalCount);
+        double signalAvgRSSI = Utilities.mw2dbm(payload.signalRSSI / payload.signalCount);
         // Determine if the number of receive errors can be fixed by coding rate
         if (signalPercentage > (1 - (4 / (double) senderCfg.getCR()))) {
           if (getReceiveSuccess(signalAvgSNR)) {
             receive = new ReceiveResult(Status.SUCCESS, MetadataStatus.SUCCESS, synced, time,
                 signalAvgSNR, signalAvgRSSI);
           }
-        } else if (wrongSignalCount >= noSignalCount) {
+        } else if (payload.wrongSignalCount >= payload.noSignalCount) {
           // Check for collision
-          double wrongSignalAvgSNR = Utilities.mw2dbm(wrongSignalSNR / wrongSignalCount);
+          double wrongSignalAvgSNR =
+              Utilities.mw2dbm(payload.wrongSignalSNR / payload.wrongSignalCount);
           if (getReceiveSuccess(wrongSignalAvgSNR)) {
             receive = new ReceiveResult(Status.FAIL_CRC, MetadataStatus.FAIL_PAYLOAD_COLLISION,
                 synced, startTime, signalAvgSNR, signalAvgRSSI);
@@ -442,28 +616,195 @@ public class LoRaRadio extends Radio {
               startTime, signalAvgSNR, signalAvgRSSI);
         }
         synced = null;
+        payload = null;
         this.lastReceive = receive;
         alertReceiveListeners();
-        clearTo = entry.getKey();
-        break;
+        // Can clear all of receive from input stream as it has been processed
+        samples.clearTo(time);
+        this.lastTime = time;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Receive by working out what was heard from where transmissions overlap rather than from
+   * samples, see {@link ReceiveMode#INTERVAL}. Preambles are queued as their transmissions start
+   * and are evaluated in the order they finish, and a synchronised signal is decoded once it has
+   * ended, so nothing is looked at in a time slice where neither happens. Results are alerted in
+   * the first time slice after they are decided whatever the time unit.
+   */
+  private void receiveIntervals() {
+    long now = environment.getTime();
+    while (!intervalPreambles.isEmpty() && getPreambleFinish(intervalPreambles.peek()) <= now) {
+      Transmission transmission = intervalPreambles.poll();
+      // Finish receiving a synchronised signal that ended before the preamble did
+      if (synced != null && synced.endTime <= getPreambleFinish(transmission)) {
+        decodeInterval();
+      }
+      // Preambles are missed whilst receiving another signal
+      if (synced == null && canCommunicate(transmission)) {
+        syncInterval(transmission);
+      }
+    }
+    if (synced != null && synced.endTime <= now) {
+      decodeInterval();
+    }
+  }
+
+  /**
+   * @param transmission A LoRa transmission
+   * @return The time the preamble of the transmission finishes
+   */
+  private static long getPreambleFinish(Transmission transmission) {
+    LoRaCfg senderCfg = getSentCfg(transmission);
+    return transmission.startTime + senderCfg.calculatePreambleTime();
+  }
+
+  /**
+   * Attempt to synchronise with a preamble that has finished, using the same criteria as
+   * {@link #findSync()} and {@link #syncLookahead} but with time in place of sample counts. The
+   * preamble is only detected if it was the strongest signal heard when its required part started,
+   * and not whilst the radio was unable to listen.
+   * 
+   * @param target Transmission whose preamble has finished
+   */
+  private void syncInterval(Transmission target) {
+    LoRaCfg senderCfg = getSentCfg(target);
+    long preambleFinish = getPreambleFinish(target);
+    double preambleReqStart = preambleFinish - LoRaCfg.requiredPreambleTime(senderCfg);
+    if (preambleReqStart < lastTime) {
+      return;
+    }
+    List<Transmission> channel = getChannel(preambleReqStart, preambleFinish);
+    IntervalAccumulator preamble = new IntervalAccumulator(target);
+    preamble.listen(this, channel, preambleReqStart, null);
+    if (preamble.getHeard() != target) {
+      return;
+    }
+    // Check if the first preamble symbol is receivable
+    if (!getIntervalReceiveSuccess(preamble.getHeardSNR(), target, DRAW_PREAMBLE_SYMBOL)) {
+      receiveResult(new ReceiveResult(Status.UNAWARE_FAIL, MetadataStatus.FAIL_NO_PREAMBLE, target,
+          (long) preambleReqStart));
+      return;
+    }
+    // Check the rest of the preamble
+    preamble.add(this, channel, preambleReqStart, preambleFinish, null);
+    this.lastTime = preambleFinish;
+    if (preamble.getSignalFraction() > 0.8) {
+      if (getIntervalReceiveSuccess(preamble.getSignalAvgSNR(), target, DRAW_PREAMBLE)) {
+        synced = target;
+        return;
+      }
+    } else if (preamble.isWrongSignalDominant()) {
+      // Check for preamble collision
+      if (getIntervalReceiveSuccess(preamble.getWrongSignalAvgSNR(), target,
+          DRAW_PREAMBLE_COLLISION)) {
+        receiveResult(new ReceiveResult(Status.FAIL_COLLISION,
+            MetadataStatus.FAIL_PREAMBLE_COLLISION, target, preambleFinish));
+        return;
+      }
+    }
+    // Failed to get preamble but no strong opposing signal so not a collision
+    receiveResult(new ReceiveResult(Status.UNAWARE_FAIL, MetadataStatus.FAIL_NO_PREAMBLE, target,
+        preambleFinish));
+  }
+
+  /**
+   * Attempt to receive the payload of a synchronised signal that has ended, using the same criteria
+   * as {@link #decodePacket()} but with time in place of sample counts.
+   */
+  private void decodeInterval() {
+    Transmission target = synced;
+    LoRaCfg senderCfg = getSentCfg(target);
+    long startTime = getPreambleFinish(target);
+    IntervalAccumulator payload = new IntervalAccumulator(target);
+    payload.add(this, getChannel(startTime, target.endTime), startTime, target.endTime, target);
+    ReceiveResult receive = null;
+    double signalAvgSNR = payload.getSignalAvgSNR();
+    double signalAvgRSSI = payload.getSignalAvgRSSI();
+    // Determine if the amount of receive errors can be fixed by coding rate
+    if (payload.getSignalFraction() > (1 - (4 / (double) senderCfg.getCR()))) {
+      if (getIntervalReceiveSuccess(signalAvgSNR, target, DRAW_PAYLOAD)) {
+        receive = new ReceiveResult(Status.SUCCESS, MetadataStatus.SUCCESS, target,
+            target.endTime, signalAvgSNR, signalAvgRSSI);
       }
+    } else if (payload.isWrongSignalDominant()) {
+      // Check for collision
+      if (getIntervalReceiveSuccess(payload.getWrongSignalAvgSNR(), target,
+          DRAW_PAYLOAD_COLLISION)) {
+        receive = new ReceiveResult(Status.FAIL_CRC, MetadataStatus.FAIL_PAYLOAD_COLLISION, target,
+            startTime, signalAvgSNR, signalAvgRSSI);
+      }
+    }
+    // Failed to get signal but no strong opposing signal so not a collision
+    if (receive == null) {
+      receive = new ReceiveResult(Status.FAIL_CRC, MetadataStatus.FAIL_PAYLOAD_WEAK, target,
+          startTime, signalAvgSNR, signalAvgRSSI);
+    }
+    synced = null;
+    this.lastTime = target.endTime;
+    receiveResult(receive);
+  }
 
+  /**
+   * @param transmission A LoRa transmission
+   * @return The configuration the transmission was sent with
+   */
+  private static LoRaCfg getSentCfg(Transmission transmission) {
+    if (transmission instanceof LoRaTransmission) {
+      return ((LoRaTransmission) transmission).cfg;
     }
-    // Can clear all of receive from input stream if it has been processed
-    if (clearTo != null) {
-      final long clearCondition = clearTo;
-      timeMap.keySet().removeIf(x -> x <= clearCondition);
-      this.lastTime = clearTo;
+    return ((LoRaRadio) transmission.sender).getLoRaCfg();
+  }
+
+  /**
+   * @param from Start of a window
+   * @param to End of a window
+   * @return Recently ended and active transmissions of other radios that overlap the window, in
+   *         the order they started so equally strong signals are heard the same way whenever the
+   *         window is looked at
+   */
+  private List<Transmission> getChannel(double from, double to) {
+    List<Transmission> channel = new ArrayList<>();
+    for (Transmission transmission : environment.getEndedTransmissions()) {
+      if (transmission.sender != this && transmission.startTime < to
+          && transmission.endTime > from) {
+        channel.add(transmission);
+      }
     }
+    for (Transmission transmission : environment.getTransmissions()) {
+      if (transmission.sender != this && transmission.startTime < to
+          && transmission.endTime > from) {
+        channel.add(transmission);
+      }
+    }
+    channel.sort(START_ORDER);
+    return channel;
+  }
+
+  /**
+   * @param receive Result to record as the last receive and alert listeners of
+   */
+  private void receiveResult(ReceiveResult receive) {
+    this.lastReceive = receive;
+    alertReceiveListeners();
   }
 
   @Override
   public void tick() {
     // Clear any finished transmissions
     if (tx != null && tx.endTime <= environment.getTime()) {
+      Transmission finished = tx;
       tx = null;
+      environment.transmissionEnded(finished);
       this.lastTime = environment.getTime();
-      timeMap.keySet().removeIf(x -> x <= this.lastTime);
+      samples.clearTo(this.lastTime);
+      if (receiveMode == ReceiveMode.INTERVAL) {
+        // Listening starts again when the transmission ended rather than the slice it was cleared
+        this.lastTime = finished.endTime;
+        receiveIntervals();
+      }
     }
     if (cadEnabled) {
       // Check CAD success once complete
@@ -473,8 +814,9 @@ public class LoRaRadio extends Radio {
       }
     } else {
       // Use simulation metadata to clear any samples that definitely aren't needed
-      if (environment.getTransmissions().isEmpty() && synced == null) {
-        timeMap.clear();
+      if (environment.getTransmissions().isEmpty() && synced == null
+          && intervalPreambles.isEmpty()) {
+        samples.clear();
         this.lastTime = environment.getTime();
       }
     }
@@ -483,6 +825,34 @@ public class LoRaRadio extends Radio {
     alertTickListeners();
   }
 
+  @Override
+  protected long findReceiveHorizon() {
+    // Preamble results are found from samples so could still be produced
+    long horizon = samples.getEarliestEnd();
+    if (synced != null) {
+      horizon = Math.min(horizon, synced.endTime);
+    }
+    // Preambles still to be evaluated by interval could also give results
+    if (!intervalPreambles.isEmpty()) {
+      horizon = Math.min(horizon, getPreambleFinish(intervalPreambles.peek()));
+    }
+    return horizon;
+  }
+
+  @Override
+  public boolean isIdle() {
+    return tx == null && !cadEnabled && synced == null && samples.isEmpty()
+        && intervalPreambles.isEmpty();
+  }
+
+  @Override
+  public void fastForward() {
+    if (!isIdle()) {
+      throw new IllegalStateException("Cannot fast forward a radio that is not idle");
+    }
+    this.lastTime = environment.getTime();
+  }
+
   /**
    * Determine whether a receive was successful using the probability of a successful receive for
    * the given snr.
@@ -491,24 +861,57 @@ public class LoRaRadio extends Radio {
    * @return Whether the receive was successful
    */
   public boolean getReceiveSuccess(double snr) {
-    return Utilities.RANDOM.nextDouble() <= getReceiveProbability(snr);
+    return getRandom(Purpose.RECEIVE).nextDouble() <= getReceiveProbability(snr);
+  }
+
+  /**
+   * Determine whether a step of receiving a transmission by interval was successful. The random
+   * draw is keyed by the transmission and step rather than taken in turn, so it is the same
+   * whenever the receiver gets round to it.
+   * 
+   * @param snr SNR to use as input
+   * @param target Transmission being received
+   * @param draw Which draw of the transmission to use
+   * @return Whether the receive was successful
+   */
+  private boolean getIntervalReceiveSuccess(double snr, Transmission target, int draw) {
+    double random = getRandom(Purpose.RECEIVE).doubleAt(target.startTime,
+        (long) target.sender.getID() * INTERVAL_DRAWS + draw);
+    return random <= getReceiveProbability(snr);
   }
 
   /**
    * Calculate the probability of a receive being successful using a generalised logistic function.
-   * For the theoretical LoRa Radio this sticks to theoretical values.
+   * For the theoretical LoRa Radio this sticks to theoretical values. Values are read from tables
+   * built when the class is loaded, see {@link ReceiveProbabilityTable} for their accuracy.
    * 
    * @param snr SNR to use as input
    * @return The probability that the SNR will result in a successful receive
    */
   public double getReceiveProbability(double snr) {
+    int sf = cfg.getSF();
+    if (sf < LoRaCfg.MIN_SF || sf > LoRaCfg.MAX_SF) {
+      return calculateReceiveProbability(sf, snr);
+    }
+    return PROBABILITY_TABLES[sf - LoRaCfg.MIN_SF].get(snr);
+  }
+
+  /**
+   * Calculate the probability of a receive being successful using a generalised logistic function,
+   * without using the held tables.
+   * 
+   * @param sf LoRa spreading factor
+   * @param snr SNR to use as input
+   * @return The probability that the SNR will result in a successful receive
+   */
+  private static double calculateReceiveProbability(int sf, double snr) {
     // https://en.wikipedia.org/wiki/Generalised_logistic_function
     double k = 0.95;
     double a = 0;
     double b = 2;
     double v = 0.3;
     double c = 1;
-    double m = getRequiredSNR() - .1;
+    double m = getRequiredSNR(sf) - .1;
     double q = 0.1;
     double prob = a + (k - a) / Math.pow(c + q * Math.exp(-b * (snr - m)), 1 / v);
     return prob;
@@ -520,12 +923,13 @@ public class LoRaRadio extends Radio {
    */
   public void startCAD() {
     // Can't use previous receive input stream
-    timeMap.keySet().removeIf(x -> x <= environment.getTime());
+    samples.clearTo(environment.getTime());
     synced = null;
     // Schedule CAD
     cadEnabled = true;
     cadCaptureFinishTime = environment.getTime() + (int) LoRaCfg.getSymbolTime(cfg);
     cadCompleteTime = environment.getTime() + (int) (LoRaCfg.getSymbolTime(cfg) * 1.85);
+    environment.nodeWoken(this);
   }
 
   /**
@@ -533,8 +937,12 @@ public class LoRaRadio extends Radio {
    */
   public void stopCAD() {
     // Can't use CAD stream for receive
-    timeMap.keySet().removeIf(x -> x <= environment.getTime());
+    samples.clearTo(environment.getTime());
     this.cadEnabled = false;
+    // Nothing is received by interval whilst doing CAD
+    if (receiveMode == ReceiveMode.INTERVAL) {
+      this.lastTime = environment.getTime();
+    }
   }
 
   /**
@@ -554,6 +962,7 @@ public class LoRaRadio extends Radio {
   /**
    * @return Whether the radio is currently in CAD mode.
    */
+  @Override
   public boolean isCADMode() {
     return this.cadEnabled;
   }
@@ -569,21 +978,21 @@ public class LoRaRadio extends Radio {
     double totalSNR = 0;
 
     // Find a symbol in the input stream
-    for (Entry<Long, PartialReceive> entry : timeMap.entrySet()) {
-      if (entry.getKey() > cadCaptureFinishTime) {
+    for (int i = 0; i < samples.size(); i++) {
+      long time = samples.getTime(i);
+      if (time > cadCaptureFinishTime) {
         double avgSNR = Utilities.mw2dbm(totalSNR / got);
         gotActivity = got >= not && getReceiveSuccess(avgSNR);
         break;
       }
-      PartialReceive data = entry.getValue();
-      if (data != null) {
+      Transmission transmission = samples.getTransmission(i);
+      if (transmission != null) {
         // Check if the sample is preamble
-        LoRaCfg senderCfg = ((LoRaRadio) data.transmission.sender).getLoRaCfg();
-        Transmission transmission = data.transmission;
+        LoRaCfg senderCfg = ((LoRaRadio) transmission.sender).getLoRaCfg();
         long preambleEnd = transmission.startTime + senderCfg.calculatePreambleTime();
-        if (entry.getKey() >= transmission.startTime && entry.getKey() <= preambleEnd) {
+        if (time >= transmission.startTime && time <= preambleEnd) {
           got++;
-          totalSNR += Utilities.dbm2mw(entry.getValue().snr);
+          totalSNR += Utilities.dbm2mw(samples.getSNR(i));
         } else {
           not++;
         }
@@ -602,6 +1011,7 @@ public class LoRaRadio extends Radio {
   /**
    * @return The transmission that the receiver is synchronised with due to preamble detection.
    */
+  @Override
   public Transmission getSyncedSignal() {
     return synced;
   }
@@ -609,42 +1019,105 @@ public class LoRaRadio extends Radio {
   @Override
   public boolean canCommunicate(Radio rx) {
     if (rx instanceof LoRaRadio) {
-      boolean receivable = true;
-      // Check generic parameters
-      receivable &= (getFrequency() == rx.getFrequency());
-      receivable &= (getBandwidth() == rx.getBandwidth());
-      // Check LoRa specific parameters
-      LoRaCfg rxCfg = ((LoRaRadio) rx).getLoRaCfg();
-      receivable &= (cfg.getSF() == rxCfg.getSF());
-      receivable &= (cfg.getPreambleSymbols() >= rxCfg.getPreambleSymbols());
-      receivable &= (cfg.isExplicitHeader() == rxCfg.isExplicitHeader());
-      // Some parameters may be different if explicit header is enabled
-      if (!cfg.isExplicitHeader() && !rxCfg.isExplicitHeader()) {
-        receivable &= (cfg.getCR() == rxCfg.getCR());
-        // TODO: Add packet length check
-      }
-      return receivable;
+      return CompatibilityMatrix.canCommunicate(cfg, ((LoRaRadio) rx).getLoRaCfg());
     }
     return false;
   }
 
+  /**
+   * Determine whether a transmission can be listened to using the configuration it was sent with.
+   * 
+   * @param transmission Transmission to check
+   * @return Whether the transmission is receivable
+   */
+  public boolean canCommunicate(Transmission transmission) {
+    if (transmission instanceof LoRaTransmission) {
+      return CompatibilityMatrix.canCommunicate(cfg, ((LoRaTransmission) transmission).cfg);
+    }
+    return canCommunicate(transmission.sender);
+  }
+
+  /**
+   * Determine whether two LoRa configurations can communicate, without using held results. See
+   * {@link CompatibilityMatrix#canCommunicate(LoRaCfg, LoRaCfg)}.
+   * 
+   * @param cfg Configuration of this radio
+   * @param rxCfg Configuration of the other radio
+   * @return Whether the configurations are compatible
+   */
+  static boolean calculateCanCommunicate(LoRaCfg cfg, LoRaCfg rxCfg) {
+    boolean receivable = true;
+    // Check generic parameters
+    receivable &= (cfg.getFreq() == rxCfg.getFreq());
+    receivable &= (cfg.getBW() == rxCfg.getBW());
+    // Check LoRa specific parameters
+    receivable &= (cfg.getSF() == rxCfg.getSF());
+    receivable &= (cfg.getPreambleSymbols() >= rxCfg.getPreambleSymbols());
+    receivable &= (cfg.isExplicitHeader() == rxCfg.isExplicitHeader());
+    // Some parameters may be different if explicit header is enabled
+    if (!cfg.isExplicitHeader() && !rxCfg.isExplicitHeader()) {
+      receivable &= (cfg.getCR() == rxCfg.getCR());
+      // TODO: Add packet length check
+    }
+    return receivable;
+  }
+
   @Override
   public boolean canInterfere(Radio rx) {
+    return canInterfere(cfg, rx);
+  }
+
+  /**
+   * Determine whether a transmission can interfere with this radio using the configuration it was
+   * sent with.
+   * 
+   * @param transmission Transmission to check
+   * @return Whether the transmission interferes
+   */
+  public boolean isInterferedBy(Transmission transmission) {
+    if (transmission instanceof LoRaTransmission) {
+      return canInterfere(((LoRaTransmission) transmission).cfg, this);
+    }
+    return transmission.sender.canInterfere(this);
+  }
+
+  /**
+   * Determine whether a LoRa signal can interfere with a receiver.
+   * 
+   * @param cfg Configuration of the interfering signal
+   * @param rx The receiver
+   * @return Whether the signal interferes
+   */
+  private static boolean canInterfere(LoRaCfg cfg, Radio rx) {
+    if (rx instanceof LoRaRadio) {
+      return CompatibilityMatrix.canInterfere(cfg, ((LoRaRadio) rx).cfg);
+    }
+    return calculateCanInterfere(cfg, rx.getFrequency(), rx.getBandwidth(), Double.NaN);
+  }
+
+  /**
+   * Determine whether a LoRa signal can interfere with a receiver, without using held results. See
+   * {@link CompatibilityMatrix#canInterfere(LoRaCfg, LoRaCfg)}.
+   * 
+   * @param cfg Configuration of the interfering signal
+   * @param rxFreq Frequency of the receiver in MHz
+   * @param rxBW Bandwidth of the receiver in Hz
+   * @param rxChirpRate Chirp rate of the receiver, NaN if it is not a LoRa radio
+   * @return Whether the signal interferes
+   */
+  static boolean calculateCanInterfere(LoRaCfg cfg, double rxFreq, int rxBW, double rxChirpRate) {
     // Calculate receiver frequency range
-    double rxMin = rx.getFrequency() - rx.getBandwidth() / 2e6;
-    double rxMax = rx.getFrequency() + rx.getBandwidth() / 2e6;
+    double rxMin = rxFreq - rxBW / 2e6;
+    double rxMax = rxFreq + rxBW / 2e6;
     // Calculate interferer frequency range
-    double txMin = getFrequency() - getBandwidth() / 2e6;
-    double txMax = getFrequency() + getBandwidth() / 2e6;
+    double txMin = cfg.getFreq() - cfg.getBW() / 2e6;
+    double txMax = cfg.getFreq() + cfg.getBW() / 2e6;
     // If the frequencies cross at all assume interference is possible
     if (txMin <= rxMax && txMax >= rxMin) {
       // Special behaviour with other LoRa signals allows those with a different chirp rate to be
       // ignored (they are orthogonal)
-      if (rx instanceof LoRaRadio) {
-        double chirpRate = ((LoRaRadio) rx).cfg.getChirpRate();
-        if (chirpRate != cfg.getChirpRate()) {
-          return false;
-        }
+      if (!Double.isNaN(rxChirpRate) && rxChirpRate != cfg.getChirpRate()) {
+        return false;
       }
       // For other signals just expect the interference
       return true;
@@ -653,21 +1126,9 @@ public class LoRaRadio extends Radio {
     }
   }
 
-  /**
-   * Clear the receive map up to a certain point in time.
-   * 
-   * @param toTime Time to clear to (inclusive)
-   */
-  private void clearReceiveMap(long toTime) {
-    Iterator<Entry<Long, PartialReceive>> itrTimeMap = timeMap.entrySet().iterator();
-    boolean cleared = false;
-    while (!cleared && itrTimeMap.hasNext()) {
-      Long nextTime = itrTimeMap.next().getKey();
-      itrTimeMap.remove();
-      if (nextTime == toTime) {
-        cleared = true;
-      }
-    }
+  @Override
+  public Object getInterferenceGroup() {
+    return cfg.getInterferenceGroup();
   }
 
   @Override
@@ -697,6 +1158,65 @@ public class LoRaRadio extends Radio {
     return true;
   }
 
+  /**
+   * Running totals of the samples of a transmission from a start sample, so that each sample is
+   * only accumulated once however many times a search over it is continued. Totals are summed in
+   * sample order so they are identical to summing from the start each time.
+   * 
+   * @author David Jones (dsj1n15)
+   */
+  private static class SampleAccumulator {
+    /** The transmission being accumulated */
+    private final Transmission target;
+    /** Time of the start sample */
+    private final long firstTime;
+    /** SNR of the start sample */
+    private final double firstSNR;
+    /** Index of the next sample to accumulate */
+    private int next;
+
+    private int signalCount = 0;
+    private double signalSNR = 0;
+    private double signalRSSI = 0;
+    private int noSignalCount = 0;
+    private int wrongSignalCount = 0;
+    private double wrongSignalSNR = 0;
+
+    /**
+     * @param target The transmission being accumulated
+     * @param next Index of the start sample
+     * @param firstTime Time of the start sample
+     * @param firstSNR SNR of the start sample
+     */
+    private SampleAccumulator(Transmission target, int next, long firstTime, double firstSNR) {
+      this.target = target;
+      this.next = next;
+      this.firstTime = firstTime;
+      this.firstSNR = firstSNR;
+    }
+
+    /**
+     * Accumulate the next sample.
+     * 
+     * @param samples Buffer holding the sample
+     * @param index Index of the sample, must be the next to accumulate
+     */
+    private void add(SampleBuffer samples, int index) {
+      Transmission transmission = samples.getTransmission(index);
+      if (transmission == null) {
+        noSignalCount++;
+      } else if (transmission == target) {
+        signalCount++;
+        signalSNR += Utilities.dbm2mw(samples.getSNR(index));
+        signalRSSI += Utilities.dbm2mw(samples.getRSSI(index));
+      } else {
+        wrongSignalCount++;
+        wrongSignalSNR += Utilities.dbm2mw(samples.getSNR(index));
+      }
+      next = index + 1;
+    }
+  }
+
   /**
    * Possible preamble search results.
    * 
@@ -0,0 +1,30 @@
+package ecs.soton.dsj1n15.smesh.model.lora;
+
+import ecs.soton.dsj1n15.smesh.radio.Packet;
+import ecs.soton.dsj1n15.smesh.radio.Transmission;
+
+/**
+ * A transmission from a LoRa radio that remembers the configuration it was sent with, so it can
+ * still be evaluated after the sender has been reconfigured.
+ * 
+ * @author David Jones (dsj1n15)
+ */
+public class LoRaTransmission extends Transmission {
+
+  /** The configuration of the sender when the transmission started */
+  public final LoRaCfg cfg;
+
+  /**
+   * Create a new LoRa transmission.
+   * 
+   * @param sender The sending radio
+   * @param packet The packet being sent
+   * @param startTime The initial time of being sent.
+   * @param airtime The full airtime of the packet.
+   */
+  public LoRaTransmission(LoRaRadio sender, Packet packet, long startTime, long airtime) {
+    super(sender, packet, startTime, airtime);
+    this.cfg = sender.getLoRaCfg();
+  }
+
+}
@@ -1,6 +1,6 @@
 package ecs.soton.dsj1n15.smesh.model.lora;
 
-import ecs.soton.dsj1n15.smesh.lib.Utilities;
+import ecs.soton.dsj1n15.smesh.model.RandomStream.Purpose;
 
 /**
  * A LoRa Radio that uses the test model for the RFM95. All LoRa radio behaviour is valid with
@@ -9,6 +9,19 @@ import ecs.soton.dsj1n15.smesh.lib.Utilities;
  * @author David Jones (dsj1n15)
  */
 public class RFM95W extends LoRaRadio {
+  /** Lowest spreading factor there is an empirical sigmoid for */
+  private static final int MIN_TABLE_SF = LoRaCfg.MIN_SF + 1;
+
+  /** Receive probability for each spreading factor from the lowest with a sigmoid */
+  private static final ReceiveProbabilityTable[] PROBABILITY_TABLES =
+      new ReceiveProbabilityTable[LoRaCfg.MAX_SF - MIN_TABLE_SF + 1];
+  static {
+    for (int sf = MIN_TABLE_SF; sf <= LoRaCfg.MAX_SF; sf++) {
+      final int tableSF = sf;
+      PROBABILITY_TABLES[sf - MIN_TABLE_SF] =
+          new ReceiveProbabilityTable(snr -> calculateReceiveProbability(tableSF, snr));
+    }
+  }
 
   /**
    * Instantiate a RFM95W using the default configuration.
@@ -48,20 +61,21 @@ public class RFM95W extends LoRaRadio {
     return Math.min(snr, 15);
   }
 
+  /**
+   * {@inheritDoc} <br>
+   * Uses empirical sigmoids read from tables built when the class is loaded, see
+   * {@link ReceiveProbabilityTable} for their accuracy, with some random variance close to the
+   * required SNR.
+   */
   @Override
   public double getReceiveProbability(double snr) {
-    // Use emperical sigmoid to determine whether it is receivable
-    double[][] params = {//
-        {0, 0.9789, -7.3760, 0.5901}, // SF7
-        {0, 0.9887, -9.3538, 0.3246}, // SF8
-        {0, 0.9887, -12.4933, 0.4004}, // SF9
-        {0, 0.9500, -15.7076, 0.4979}, // SF10
-        {0, 0.9938, -15.9790, 0.6656}, // SF11
-        {0, 0.9922, -16.6661, 0.6838}}; // SF12
-    double[] param = params[cfg.getSF() - (LoRaCfg.MIN_SF + 1)];
-    param[2] -= 1; // Slight shift due to unexpected simulation bias
-    double prob =
-        param[0] + (param[1] - param[0]) / (1 + Math.pow(10, ((param[2] - snr) * param[3])));
+    int sf = cfg.getSF();
+    double prob;
+    if (sf < MIN_TABLE_SF || sf > LoRaCfg.MAX_SF) {
+      prob = calculateReceiveProbability(sf, snr);
+    } else {
+      prob = PROBABILITY_TABLES[sf - MIN_TABLE_SF].get(snr);
+    }
 
     // Add some variance based on the SNR
     double snrMaxLimitDist = 2.5;
@@ -69,11 +83,33 @@ public class RFM95W extends LoRaRadio {
     if (snrDist < snrMaxLimitDist) {
       double mult = (snrMaxLimitDist - snrDist) / snrMaxLimitDist;
       mult = Math.min(prob, Math.min(1 - prob, mult));
-      prob += (mult * (Utilities.RANDOM.nextDouble() * 2 - 1));
+      prob += (mult * (getRandom(Purpose.RECEIVE).nextDouble() * 2 - 1));
     }
     return Math.min(Math.max(0, prob), 1);
   }
 
+  /**
+   * Calculate the probability of a receive being successful using the empirical sigmoid, without
+   * using the held tables or adding variance.
+   * 
+   * @param sf LoRa spreading factor (7-12)
+   * @param snr SNR to use as input
+   * @return The probability that the SNR will result in a successful receive
+   */
+  private static double calculateReceiveProbability(int sf, double snr) {
+    // Use emperical sigmoid to determine whether it is receivable
+    double[][] params = {//
+        {0, 0.9789, -7.3760, 0.5901}, // SF7
+        {0, 0.9887, -9.3538, 0.3246}, // SF8
+        {0, 0.9887, -12.4933, 0.4004}, // SF9
+        {0, 0.9500, -15.7076, 0.4979}, // SF10
+        {0, 0.9938, -15.9790, 0.6656}, // SF11
+        {0, 0.9922, -16.6661, 0.6838}}; // SF12
+    double[] param = params[sf - MIN_TABLE_SF];
+    param[2] -= 1; // Slight shift due to unexpected simulation bias
+    return param[0] + (param[1] - param[0]) / (1 + Math.pow(10, ((param[2] - snr) * param[3])));
+  }
+
   @Override
   public String toString() {
     return String.format("RFM95W [id=%d, pos=(%d, %d)]", id, (int) x, (int) y);
@@ -0,0 +1,32 @@
+package ecs.soton.dsj1n15.smesh.model.lora;
+
+/**
+ * How a LoRa radio evaluates the channel whilst listening.
+ * 
+ * @author David Jones (dsj1n15)
+ */
+public enum ReceiveMode {
+  /**
+   * Every transmission is evaluated in every time slice with its own random noise. This is the
+   * reference behaviour.
+   */
+  SLOT,
+  /**
+   * Transmissions are only evaluated when the channel changes, i.e. a transmission starts or ends,
+   * a link changes or the radio's sync state changes. The result, including its random noise, is
+   * then repeated for every time slice until the next change. Sync and decode behaviour is
+   * unchanged as it still sees one sample per time slice.
+   */
+  SEGMENT,
+  /**
+   * No samples are taken outside of CAD. Transmissions are queued as they start, then once a
+   * preamble finishes, and once a synchronised transmission ends, what was heard is worked out from
+   * where transmissions overlap, weighting the channel between each start and end by its length.
+   * Receive work is proportional to the number of transmissions rather than time slices. The
+   * outcomes of the same transmissions do not depend on the time unit, as they are decided in the
+   * order preambles finish and transmissions end with random draws keyed by the transmission, but
+   * when protocols send and do CAD still does. Without per slice noise outcomes are statistically
+   * similar to {@link #SLOT} rather than identical.
+   */
+  INTERVAL
+}
@@ -1,17 +1,17 @@
 package ecs.soton.dsj1n15.smesh.model.lora.protocol;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import ecs.soton.dsj1n15.smesh.lib.Utilities;
+import ecs.soton.dsj1n15.smesh.model.RandomStream;
+import ecs.soton.dsj1n15.smesh.model.RandomStream.Purpose;
 import ecs.soton.dsj1n15.smesh.model.environment.Environment;
-import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
-import ecs.soton.dsj1n15.smesh.model.lora.LoRaRadio;
 import ecs.soton.dsj1n15.smesh.radio.Radio;
-import ecs.soton.dsj1n15.smesh.radio.ReceiveResult;
-import ecs.soton.dsj1n15.smesh.radio.ReceiveResult.Status;
-import ecs.soton.dsj1n15.smesh.radio.Transmission;
 
 /**
  * Protocol container for configuring and managing a protocol for a set of nodes.
@@ -20,14 +20,17 @@ import ecs.soton.dsj1n15.smesh.radio.Transmission;
  */
 public abstract class Protocol<T extends ProtocolTickListener> {
 
-  /** Random object to use for all randomness */
-  protected final Random r = Utilities.RANDOM;
+  /** Random stream to use for all protocol level randomness */
+  protected final Random r;
 
   /** Listeners used by the protocol */
   protected final Map<Radio, T> listeners = new HashMap<>();
 
   protected final Environment environment;
 
+  /** Aggregator of the results of every transmission, shared by all listeners */
+  protected final ResultAggregator aggregator;
+
   /**
    * Create a new protocol.
    * 
@@ -35,6 +38,10 @@ public abstract class Protocol<T extends ProtocolTickListener> {
    */
   public Protocol(Environment environment) {
     this.environment = environment;
+    this.r = environment.getRandom(RandomStream.ENVIRONMENT_ID, Purpose.PROTOCOL);
+    // Aggregate the results of every transmission in the environment
+    this.aggregator = new ResultAggregator(environment);
+    environment.addTransmissionListener(aggregator);
   }
 
   /**
@@ -42,6 +49,30 @@ public abstract class Protocol<T extends ProtocolTickListener> {
    */
   public abstract void init();
 
+  /**
+   * Add a listener controlling a radio to the protocol.
+   * 
+   * @param radio Radio being controlled
+   * @param listener Listener controlling the radio
+   */
+  protected void addListener(Radio radio, T listener) {
+    listener.setAggregator(aggregator, aggregator.register(listener));
+    listeners.put(radio, listener);
+  }
+
+  /**
+   * Get the receive results of all nodes being managed by the protocol.
+   * 
+   * @param filterWanted Filter by only those transmissions that were defined as wanted
+   * @return Mapping of node ID to its receive results
+   */
+  public Map<Integer, ReceiveCounts> getNodeResults(boolean filterWanted) {
+    Map<Integer, ReceiveCounts> results = new LinkedHashMap<>();
+    for (ProtocolTickListener listener : listeners.values()) {
+      results.put(listener.radio.getID(), listener.getReceiveCounts(filterWanted));
+    }
+    return results;
+  }
 
   /**
    * Print the results of all nodes being managed by the protocol.
@@ -59,13 +90,51 @@ public abstract class Protocol<T extends ProtocolTickListener> {
    * @param filterWanted Filter by only those transmissions that were defined as wanted
    */
   public void printNodeResults(PrintWriter pw, boolean filterWanted) {
-    Utilities.printAndWrite(pw, "id,wantedCount,receivedWanted,receivedUnwanted,failedMissed,"
-        + "failedNoPreamble,failedPreambleCollision,failedPayloadCollision,failedWeakPayload\n");
+    Utilities.printAndWrite(pw, "id," + ReceiveCounts.CSV_HEADER + "\n");
     for (ProtocolTickListener listener : listeners.values()) {
       listener.printReceiveResults(pw, filterWanted);
     }
   }
 
+  /**
+   * Set whether the result of every transmission is kept for
+   * {@link #getTransmissionResults(boolean)}, which is the default. Long runs that only need
+   * results as they are found can turn this off and use a result listener instead.
+   * 
+   * @param keepResults Whether to keep the result of every transmission
+   */
+  public void setKeepTransmissionResults(boolean keepResults) {
+    aggregator.setKeepResults(keepResults);
+  }
+
+  /**
+   * @param listener Listener to alert as the result of each transmission becomes final
+   */
+  public void addTransmissionResultListener(TransmissionResultListener listener) {
+    aggregator.addResultListener(listener);
+  }
+
+  /**
+   * @param listener Listener to remove
+   */
+  public void removeTransmissionResultListener(TransmissionResultListener listener) {
+    aggregator.removeResultListener(listener);
+  }
+
+  /**
+   * Get the results of all transmissions that have finished, if results are being kept.
+   * 
+   * @param filterWanted Filter by only those transmissions that were defined as wanted
+   * @return Results of each transmission, in send order per node
+   */
+  public List<TransmissionResult> getTransmissionResults(boolean filterWanted) {
+    List<TransmissionResult> results = new ArrayList<>();
+    for (ProtocolTickListener transmitter : listeners.values()) {
+      results.addAll(aggregator.getResults(transmitter.radio, filterWanted));
+    }
+    return results;
+  }
+
   /**
    * Print the results of all transmissions that have been sent.
    * 
@@ -82,82 +151,9 @@ public abstract class Protocol<T extends ProtocolTickListener> {
    * @param filterWanted Filter by only those transmissions that were defined as wanted
    */
   public void printTransmissionResults(PrintWriter pw, boolean filterWanted) {
-    Utilities.printAndWrite(pw,
-        "sender,start,airtime,pl,cf,sf,wantedCount,receivedWanted,"
-            + "receivedUnwanted,failedMissed,failedNoPreamble,failedPreambleCollision,"
-            + "failedPayloadCollision,failedWeakPayload,testData\n");
-    for (ProtocolTickListener transmitter : listeners.values()) {
-      for (Transmission transmission : transmitter.sentTransmissions) {
-        // Ignore if transmission isn't finished
-        if (transmission.endTime > environment.getTime()) {
-          continue;
-        }
-        // Accumulate who has received it
-        boolean isTestData = transmission.packet instanceof TestData;
-        int wantedCount = 0;
-        int receivedWanted = 0;
-        int receivedUnwanted = 0;
-        int failedMissed = 0;
-        int failedNoPreamble = 0;
-        int failedPreambleCollision = 0;
-        int failedPayloadCollision = 0;
-        int failedWeakPayload = 0;
-        for (ProtocolTickListener receiver : listeners.values()) {
-          if (receiver == transmitter) {
-            continue;
-          }
-          boolean wanted = receiver.wantedTransmissions.get(transmission);
-          ReceiveResult receive = receiver.receivedData.get(transmission);
-          // Accumulate received unwanted messages
-          if (!wanted) {
-            if (receive != null && receive.status == Status.SUCCESS) {
-              receivedUnwanted++;
-            }
-            // Ignore unwanted messages if they are being filtered
-            if (filterWanted) {
-              continue;
-            }
-          } else {
-            // Accumulate count of how many nodes wanted the message
-            wantedCount++;
-          }
-
-          // Accumulate whether message was received or not
-          if (receive == null) {
-            failedMissed++;
-          } else {
-            switch (receive.metadataStatus) {
-              case SUCCESS:
-                if (wanted) {
-                  receivedWanted++;
-                }
-                break;
-              case FAIL_NO_PREAMBLE:
-                failedNoPreamble++;
-                break;
-              case FAIL_PAYLOAD_COLLISION:
-                failedPayloadCollision++;
-                break;
-              case FAIL_PAYLOAD_WEAK:
-                failedWeakPayload++;
-                break;
-              case FAIL_PREAMBLE_COLLISION:
-                failedPreambleCollision++;
-                break;
-              default:
-                break;
-            }
-          }
-        }
-        LoRaRadio sender = transmitter.radio;
-        LoRaCfg cfg = sender.getLoRaCfg();
-        String str = String.format("%d,%d,%d,%d,%f,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d\n", sender.getID(),
-            transmission.startTime, transmission.airtime, transmission.packet.length, cfg.getFreq(),
-            cfg.getSF(), wantedCount, receivedWanted, receivedUnwanted, failedMissed,
-            failedNoPreamble, failedPreambleCollision, failedPayloadCollision, failedWeakPayload,
-            isTestData ? 1 : 0);
-        Utilities.printAndWrite(pw, str);
-      }
+    Utilities.printAndWrite(pw, TransmissionResult.CSV_HEADER + "\n");
+    for (TransmissionResult result : getTransmissionResults(filterWanted)) {
+      Utilities.printAndWrite(pw, result + "\n");
     }
   }
 
@@ -2,18 +2,17 @@ package ecs.soton.dsj1n15.smesh.model.lora.protocol;
 
 import java.io.PrintWriter;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
-import java.util.Map.Entry;
 import ecs.soton.dsj1n15.smesh.lib.Debugger;
 import ecs.soton.dsj1n15.smesh.lib.Utilities;
-import ecs.soton.dsj1n15.smesh.model.dutycycle.DutyCycleManager;
+import ecs.soton.dsj1n15.smesh.model.RandomStream;
+import ecs.soton.dsj1n15.smesh.model.RandomStream.Purpose;
+import ecs.soton.dsj1n15.smesh.model.dutycycle.DutyCycleService;
 import ecs.soton.dsj1n15.smesh.model.environment.Environment;
 import ecs.soton.dsj1n15.smesh.model.lora.LoRaRadio;
 import ecs.soton.dsj1n15.smesh.radio.Packet;
-import ecs.soton.dsj1n15.smesh.radio.Radio;
+import ecs.soton.dsj1n15.smesh.radio.ReceiveListener;
 import ecs.soton.dsj1n15.smesh.radio.ReceiveResult;
 import ecs.soton.dsj1n15.smesh.radio.TickListener;
 import ecs.soton.dsj1n15.smesh.radio.Transmission;
@@ -25,12 +24,18 @@ import ecs.soton.dsj1n15.smesh.radio.ReceiveResult.Status;
  * 
  * @author David Jones (dsj1n15)
  */
-public abstract class ProtocolTickListener implements TickListener {
+public abstract class ProtocolTickListener implements TickListener, ReceiveListener {
   /** Distance at which the transmission is wanted for test criteria */
-  public final double TRANSMISSION_WANTED_DISTANCE = 500;
+  public static final double TRANSMISSION_WANTED_DISTANCE = 500;
 
-  /** Random object to use for all randomness */
-  protected final Random r = Utilities.RANDOM;
+  /** Random stream to use for all protocol randomness */
+  protected final Random r;
+
+  /** Random stream used for the test criteria of whether transmissions are wanted */
+  private final RandomStream wantedRandom;
+
+  /** Sink for debug output */
+  protected final Debugger debugger;
 
   /** Environment radio is in */
   protected final Environment environment;
@@ -38,25 +43,30 @@ public abstract class ProtocolTickListener implements TickListener {
   /** Radio providing the ticks */
   protected final LoRaRadio radio;
 
-  /**
-   * All transmissions that have been sent by the node.
-   */
-  public final Set<Transmission> sentTransmissions = new LinkedHashSet<>();
+  /** Duty cycle accounting for every sub-band the radio transmits in */
+  protected final DutyCycleService dutyCycle = new DutyCycleService();
 
-  /**
-   * All transmissions that have been in the environment over all time with a mapping to whether the
-   * data they contain would be wanted. Anything that is not wanted is either irrelevant or
-   * overhead.
-   */
-  public final Map<Transmission, Boolean> wantedTransmissions = new HashMap<>();
+  /** Time the last send blocked by duty cycle becomes allowed, Long.MIN_VALUE if not blocked */
+  private long dutyCycleRelease = Long.MIN_VALUE;
 
   /**
-   * All transmissions that have been in the environment over all time with a mapping to their
-   * corresponding receive result if it exists. If it does not exist then it can be assumed that the
-   * receiver was busy whilst the transmission was ongoing.
+   * All transmissions that have been in the environment and not yet resolved with a mapping to
+   * their corresponding receive result if it exists. If it does not exist then it can be assumed
+   * that the receiver was busy whilst the transmission was ongoing. Every result the radio gives is
+   * recorded, even when it gives more than one in a time slice.
    */
   public final Map<Transmission, ReceiveResult> receivedData = new HashMap<>();
 
+  /** Receive counts of resolved test data transmissions */
+  private final ReceiveCounts resolvedCounts = new ReceiveCounts();
+  /** Receive counts of resolved test data transmissions, filtered to wanted transmissions */
+  private final ReceiveCounts resolvedWantedCounts = new ReceiveCounts();
+
+  /** Aggregator of transmission results shared by the protocol's listeners */
+  private ResultAggregator aggregator = null;
+  /** Receiver index of the listener in the aggregator */
+  private int receiverIndex = -1;
+
   /* Previous state variables for checking change between ticks */
   protected Transmission currentTransmit = null;
   protected Transmission lastTransmit = null;
@@ -72,6 +82,33 @@ public abstract class ProtocolTickListener implements TickListener {
   public ProtocolTickListener(LoRaRadio radio) {
     this.radio = radio;
     this.environment = radio.getEnvironment();
+    this.r = environment.getRandom(radio.getID(), Purpose.PROTOCOL);
+    this.wantedRandom = environment.getRandom(radio.getID(), Purpose.WANTED);
+    this.debugger = environment.getContext().getDebugger();
+    radio.addReceiveListener(this);
+  }
+
+  /**
+   * {@inheritDoc} <br>
+   * Any outstanding radio state that the generic checks still have to report on requires the next
+   * tick, otherwise the listener has no scheduled behaviour of its own.
+   */
+  @Override
+  public long getNextWakeTime() {
+    if (currentTransmit != null || startedCAD || lastReceive != radio.getLastReceive()) {
+      return Long.MIN_VALUE;
+    }
+    return Long.MAX_VALUE;
+  }
+
+  /**
+   * Convert a time that a protocol waits to pass (time < now) into the time it first triggers.
+   * 
+   * @param time Time that must be passed
+   * @return The first time at which the time has been passed
+   */
+  protected static long after(long time) {
+    return time == Long.MAX_VALUE ? Long.MAX_VALUE : time + 1;
   }
 
   /**
@@ -84,43 +121,64 @@ public abstract class ProtocolTickListener implements TickListener {
    * @return Whether the transmission is wanted
    */
   protected boolean isTransmissionWanted(Point2D rxPos, Point2D txPos) {
-    double dist = rxPos.distance(txPos);
+    return r.nextDouble() <= getWantedProbability(rxPos, txPos);
+  }
+
+  /**
+   * Use the protocol wanting definition to determine whether the radio would 'want' a transmission
+   * (simulator metadata for testing purposes). The decision is keyed by the transmission so does not
+   * depend on the order transmissions are tracked in.
+   * 
+   * @param transmission The transmission to check for
+   * @param probability The probability that the transmission is wanted by the radio
+   * @return Whether the transmission is wanted
+   */
+  boolean isTransmissionWanted(Transmission transmission, double probability) {
+    return wantedRandom.doubleAt(transmission.startTime, transmission.sender.getID()) <= probability;
+  }
+
+  /**
+   * @param rxPos The location of the receiving radio
+   * @param txPos The location of the transmitting radio
+   * @return The probability that a transmission between the locations is wanted
+   */
+  private static double getWantedProbability(Point2D rxPos, Point2D txPos) {
+    return getWantedProbability(rxPos.distance(txPos));
+  }
+
+  /**
+   * @param dist Distance between the receiving and transmitting radio
+   * @return The probability that a transmission over the distance is wanted
+   */
+  public static double getWantedProbability(double dist) {
     double a = 1;
     double b = 0;
     double d = 0.05;
     double c = TRANSMISSION_WANTED_DISTANCE;
-    double prob = a + (b - a) / (1 + Math.pow(10, d * (c - dist)));
-    return r.nextDouble() <= prob;
+    return a + (b - a) / (1 + Math.pow(10, d * (c - dist)));
   }
 
   /**
-   * Use {@link #isTransmissionWanted(Point2D rxPos, Transmission transmission)} to determine
-   * whether the receiving radio would 'want' the transmission using the test's definition of
-   * wanting.
+   * Add the outcome of a transmission the radio can no longer receive to the running totals.
    * 
-   * @param rx The radio that is receiving the transmission
-   * @param transmission The transmission to check for
-   * @return Whether the transmission is wanted
+   * @param transmission The transmission
+   * @param wanted Whether the transmission was wanted
+   * @param receive The receive result of the transmission, null if not received
    */
-  protected boolean isTransmissionWanted(Radio rx, Transmission transmission) {
-    return isTransmissionWanted(rx.getXY(), transmission.sender.getXY());
+  void resolved(Transmission transmission, boolean wanted, ReceiveResult receive) {
+    if (transmission.packet instanceof TestData) {
+      resolvedCounts.record(wanted, receive, false);
+      resolvedWantedCounts.record(wanted, receive, true);
+    }
   }
 
   /**
-   * Track all transmissions in the environment.
+   * @param aggregator Aggregator of transmission results shared by the protocol's listeners
+   * @param receiverIndex Receiver index of the listener in the aggregator
    */
-  protected void trackTransmissions() {
-    // Track all transmissions and decide which ones are 'wanted' (simulator metadata for testing
-    // purposes)
-    for (Transmission transmission : environment.getTransmissions()) {
-      if (transmission.sender == this.radio) {
-        continue;
-      }
-      if (!wantedTransmissions.containsKey(transmission)) {
-        boolean wanted = isTransmissionWanted(radio, transmission);
-        wantedTransmissions.put(transmission, wanted);
-      }
-    }
+  void setAggregator(ResultAggregator aggregator, int receiverIndex) {
+    this.aggregator = aggregator;
+    this.receiverIndex = receiverIndex;
   }
 
   /**
@@ -128,8 +186,8 @@ public abstract class ProtocolTickListener implements TickListener {
    */
   protected void trackSend() {
     currentTransmit = radio.getCurrentTransmission();
-    if (currentTransmit != null) {
-      sentTransmissions.add(currentTransmit);
+    if (currentTransmit != null && aggregator != null) {
+      aggregator.sent(radio, currentTransmit);
     }
   }
 
@@ -141,7 +199,7 @@ public abstract class ProtocolTickListener implements TickListener {
   protected boolean checkForSendFinish() {
     // Alert on send finish
     if (currentTransmit != null && radio.getCurrentTransmission() == null) {
-      Debugger.println(String.format("[%8d] - Radio %-2d - Finished Sending Message!)",
+      debugger.println(String.format("[%8d] - Radio %-2d - Finished Sending Message!)",
           environment.getTime(), radio.getID()));
       lastTransmit = currentTransmit;
       currentTransmit = null;
@@ -157,7 +215,7 @@ public abstract class ProtocolTickListener implements TickListener {
    */
   protected boolean checkForSync() {
     if (radio.getSyncedSignal() != null && syncReceive != radio.getSyncedSignal()) {
-      Debugger.println(
+      debugger.println(
           String.format("[%8d] - Radio %-2d - Got Sync!!!", environment.getTime(), radio.getID()));
       syncReceive = radio.getSyncedSignal();
       return true;
@@ -172,7 +230,7 @@ public abstract class ProtocolTickListener implements TickListener {
    */
   protected boolean checkCAD() {
     if (startedCAD && !radio.isCADMode()) {
-      Debugger.println(String.format("[%8d] - Radio %-2d - CAD Result [%s]", environment.getTime(),
+      debugger.println(String.format("[%8d] - Radio %-2d - CAD Result [%s]", environment.getTime(),
           radio.getID(), radio.getCADStatus()));
       return radio.getCADStatus();
     }
@@ -185,16 +243,24 @@ public abstract class ProtocolTickListener implements TickListener {
   protected boolean checkForReceive() {
     if (lastReceive != radio.getLastReceive()) {
       lastReceive = radio.getLastReceive();
-      receivedData.put(lastReceive.transmission, lastReceive);
-      if (lastReceive.isReceiverAware()) {
-        boolean wanted = wantedTransmissions.get(lastReceive.transmission);
-        printReceive(wanted);
+      if (aggregator != null && lastReceive.isReceiverAware()) {
+        printReceive(aggregator.isWanted(lastReceive.transmission, receiverIndex));
       }
       return true;
     }
     return false;
   }
 
+  /**
+   * Record a receive result of the radio until the aggregator resolves its transmission.
+   */
+  @Override
+  public void receive(ReceiveResult result) {
+    if (aggregator != null) {
+      receivedData.put(result.transmission, result);
+    }
+  }
+
   /**
    * Prints the status of the last receive.
    * 
@@ -208,7 +274,7 @@ public abstract class ProtocolTickListener implements TickListener {
     if (lastReceive.status == Status.FAIL_CRC) {
       status = "CRC failure on ";
     }
-    Debugger.println(String.format("[%8d] - Radio %-2d - Got %s%s message from Radio %-2d!!!",
+    debugger.println(String.format("[%8d] - Radio %-2d - Got %s%s message from Radio %-2d!!!",
         environment.getTime(), radio.getID(), status, wanted ? "wanted" : "unwanted",
         lastReceive.transmission.sender.getID()));
   }
@@ -230,10 +296,10 @@ public abstract class ProtocolTickListener implements TickListener {
    * handling.
    * 
    * @param packet Packet to transmit
-   * @param dcm Duty cycle manager that must be obeyed
    * @return Status code corresponding to send success
    */
-  protected SendStatus attemptSend(Packet packet, DutyCycleManager dcm) {
+  protected SendStatus attemptSend(Packet packet) {
+    dutyCycleRelease = Long.MIN_VALUE;
     // Don't attempt if send not scheduled or currently transmitting
     if (radio.getCurrentTransmission() != null) {
       return SendStatus.RADIO_BUSY;
@@ -242,15 +308,17 @@ public abstract class ProtocolTickListener implements TickListener {
     if (radio.getSyncedSignal() != null) {
       return SendStatus.CHANNEL_BUSY;
     }
-    // Check if duty cycle manager allows packet to be sent
+    // Check if the duty cycle of the current sub-band allows packet to be sent
+    double freq = radio.getLoRaCfg().getFreq();
     int airtime = radio.getLoRaCfg().calculatePacketAirtime(packet.length);
-    if (!dcm.canTransmit(environment.getTime(), airtime)) {
+    if (!dutyCycle.canTransmit(freq, environment.getTime(), airtime)) {
+      dutyCycleRelease = dutyCycle.whenCanTransmit(freq, environment.getTime(), airtime);
       return SendStatus.DUTY_CYCLE_LIMIT;
     }
     // Send the message!
-    Debugger.println(String.format("[%8d] - Radio %-2d - Sending Message...)",
+    debugger.println(String.format("[%8d] - Radio %-2d - Sending Message...)",
         environment.getTime(), radio.getID()));
-    dcm.transmit(environment.getTime(), airtime);
+    dutyCycle.transmit(freq, environment.getTime(), airtime);
     radio.send(packet);
     trackSend();
     return SendStatus.SUCCESS;
@@ -263,10 +331,10 @@ public abstract class ProtocolTickListener implements TickListener {
    * handling.
    * 
    * @param packet Packet to transmit
-   * @param dcm Duty cycle manager that must be obeyed
    * @return Status code corresponding to send success
    */
-  protected SendStatus attemptSendWithCAD(Packet packet, DutyCycleManager dcm) {
+  protected SendStatus attemptSendWithCAD(Packet packet) {
+    dutyCycleRelease = Long.MIN_VALUE;
     // Don't attempt if send not scheduled, completing CAD or currently transmitting
     if (radio.isCADMode() || radio.getCurrentTransmission() != null) {
       return SendStatus.RADIO_BUSY;
@@ -278,14 +346,16 @@ public abstract class ProtocolTickListener implements TickListener {
       startedCAD = false;
       return SendStatus.CHANNEL_BUSY;
     }
-    // Check if duty cycle manager allows packet to be sent
+    // Check if the duty cycle of the current sub-band allows packet to be sent
+    double freq = radio.getLoRaCfg().getFreq();
     int airtime = radio.getLoRaCfg().calculatePacketAirtime(packet.length);
-    if (!dcm.canTransmit(environment.getTime(), airtime)) {
+    if (!dutyCycle.canTransmit(freq, environment.getTime(), airtime)) {
+      dutyCycleRelease = dutyCycle.whenCanTransmit(freq, environment.getTime(), airtime);
       return SendStatus.DUTY_CYCLE_LIMIT;
     }
     // Do CAD if it hasn't been attempted yet
     if (!startedCAD) {
-      Debugger.println(String.format("[%8d] - Radio %-2d - Starting CAD...", environment.getTime(),
+      debugger.println(String.format("[%8d] - Radio %-2d - Starting CAD...", environment.getTime(),
           radio.getID()));
       radio.startCAD();
       startedCAD = true;
@@ -295,14 +365,26 @@ public abstract class ProtocolTickListener implements TickListener {
     radio.clearCADStatus();
     startedCAD = false;
     // Send the message!
-    Debugger.println(String.format("[%8d] - Radio %-2d - Sending Message...)",
+    debugger.println(String.format("[%8d] - Radio %-2d - Sending Message...)",
         environment.getTime(), radio.getID()));
-    dcm.transmit(environment.getTime(), airtime);
+    dutyCycle.transmit(freq, environment.getTime(), airtime);
     radio.send(packet);
     trackSend();
     return SendStatus.SUCCESS;
   }
 
+  /**
+   * Get the time the packet of the last send attempt becomes allowed if it was blocked by the duty
+   * cycle. Nothing the attempt checks has side effects, so waking at this time rather than trying
+   * every tick does not change behaviour.
+   * 
+   * @return Time the last send attempt is allowed by duty cycle, Long.MIN_VALUE if it was not
+   *         blocked by duty cycle
+   */
+  protected long getDutyCycleRelease() {
+    return dutyCycleRelease;
+  }
+
   /**
    * Enumeration of status's for send attempts.
    * 
@@ -312,6 +394,22 @@ public abstract class ProtocolTickListener implements TickListener {
     SUCCESS, RADIO_BUSY, CHANNEL_BUSY, DUTY_CYCLE_LIMIT, CAD_NEEDED;
   }
 
+  /**
+   * Get the nodes receive results for all transmissions received. Only include those that are test
+   * data packets as they won't be able to be filtered out later.
+   * 
+   * @param filterWanted Whether to filter to only those wanted
+   * @return Accumulated receive results
+   */
+  public ReceiveCounts getReceiveCounts(boolean filterWanted) {
+    ReceiveCounts counts = new ReceiveCounts();
+    counts.add(filterWanted ? resolvedWantedCounts : resolvedCounts);
+    if (aggregator != null) {
+      aggregator.recordUnresolved(receiverIndex, counts, filterWanted);
+    }
+    return counts;
+  }
+
   /**
    * Print the nodes receive results for all transmissions received. Only include those that are
    * test data packets as they won't be able to be filtered out later.
@@ -320,71 +418,7 @@ public abstract class ProtocolTickListener implements TickListener {
    * @param filterWanted Whether to filter to only those wanted
    */
   public void printReceiveResults(PrintWriter pw, boolean filterWanted) {
-    int wantedCount = 0;
-    int receivedWanted = 0;
-    int receivedUnwanted = 0;
-    int failedMissed = 0;
-    int failedNoPreamble = 0;
-    int failedPreambleCollision = 0;
-    int failedPayloadCollision = 0;
-    int failedWeakPayload = 0;
-
-    for (Entry<Transmission, Boolean> seen : wantedTransmissions.entrySet()) {
-      Transmission transmission = seen.getKey();
-      boolean wanted = seen.getValue();
-      ReceiveResult receive = receivedData.get(seen.getKey());
-
-      // Ignore if transmission isn't finished
-      if (transmission.endTime > environment.getTime()) {
-        continue;
-      }
-      // Ignore if transmission is not data packet
-      if (!(transmission.packet instanceof TestData)) {
-        continue;
-      }
-      // Ignore if not wanted (and filtering)
-      if (!wanted) {
-        if (receive != null && receive.status == Status.SUCCESS) {
-          receivedUnwanted++;
-        }
-        // Ignore unwanted messages if they are being filtered
-        if (filterWanted) {
-          continue;
-        }
-      } else {
-        // Accumulate count of wanted messages were received
-        wantedCount++;
-      }
-      // Accumulate whether message was received or not
-      if (receive == null) {
-        failedMissed++;
-      } else {
-        switch (receive.metadataStatus) {
-          case SUCCESS:
-            if (wanted) {
-              receivedWanted++;
-            }
-            break;
-          case FAIL_NO_PREAMBLE:
-            failedNoPreamble++;
-            break;
-          case FAIL_PAYLOAD_COLLISION:
-            failedPayloadCollision++;
-            break;
-          case FAIL_PAYLOAD_WEAK:
-            failedWeakPayload++;
-            break;
-          case FAIL_PREAMBLE_COLLISION:
-            failedPreambleCollision++;
-            break;
-          default:
-            break;
-        }
-      }
-    }
-    String str = String.format("%d,%d,%d,%d,%d,%d,%d,%d,%d\n", radio.getID(), wantedCount,
-        receivedWanted, receivedUnwanted, failedMissed, failedNoPreamble, failedPreambleCollision,
-        failedPayloadCollision, failedWeakPayload);
+    String str = String.format("%d,%s\n", radio.getID(), getReceiveCounts(filterWanted));
     Utilities.printAndWrite(pw, str);
   }
 
@@ -0,0 +1,104 @@
+package ecs.soton.dsj1n15.smesh.model.lora.protocol;
+
+import ecs.soton.dsj1n15.smesh.radio.ReceiveResult;
+import ecs.soton.dsj1n15.smesh.radio.ReceiveResult.Status;
+
+/**
+ * Accumulated counts of receive outcomes, either for all transmissions seen by a single node or for
+ * all receivers of a single transmission. Counts can be summed to aggregate results over multiple
+ * simulations.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class ReceiveCounts {
+  /** CSV header matching {@link #toString()} */
+  public static final String CSV_HEADER = "wantedCount,receivedWanted,receivedUnwanted,"
+      + "failedMissed,failedNoPreamble,failedPreambleCollision,failedPayloadCollision,"
+      + "failedWeakPayload";
+
+  public int wantedCount = 0;
+  public int receivedWanted = 0;
+  public int receivedUnwanted = 0;
+  public int failedMissed = 0;
+  public int failedNoPreamble = 0;
+  public int failedPreambleCollision = 0;
+  public int failedPayloadCollision = 0;
+  public int failedWeakPayload = 0;
+
+  /**
+   * Record the outcome of a transmission at a receiver.
+   *
+   * @param wanted Whether the transmission was wanted by the receiver
+   * @param receive The receive result, null if the receiver missed the transmission
+   * @param filterWanted Whether outcomes of unwanted transmissions should be ignored, received
+   *        unwanted transmissions are always counted
+   */
+  public void record(boolean wanted, ReceiveResult receive, boolean filterWanted) {
+    // Accumulate received unwanted messages
+    if (!wanted) {
+      if (receive != null && receive.status == Status.SUCCESS) {
+        receivedUnwanted++;
+      }
+      // Ignore unwanted messages if they are being filtered
+      if (filterWanted) {
+        return;
+      }
+    } else {
+      // Accumulate count of how many wanted the message
+      wantedCount++;
+    }
+    // Accumulate whether message was received or not
+    if (receive == null) {
+      failedMissed++;
+    } else {
+      switch (receive.metadataStatus) {
+        case SUCCESS:
+          if (wanted) {
+            receivedWanted++;
+          }
+          break;
+        case FAIL_NO_PREAMBLE:
+          failedNoPreamble++;
+          break;
+        case FAIL_PAYLOAD_COLLISION:
+          failedPayloadCollision++;
+          break;
+        case FAIL_PAYLOAD_WEAK:
+          failedWeakPayload++;
+          break;
+        case FAIL_PREAMBLE_COLLISION:
+          failedPreambleCollision++;
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  /**
+   * Add all counts from another set of counts to this one.
+   *
+   * @param counts Counts to add
+   */
+  public void add(ReceiveCounts counts) {
+    wantedCount += counts.wantedCount;
+    receivedWanted += counts.receivedWanted;
+    receivedUnwanted += counts.receivedUnwanted;
+    failedMissed += counts.failedMissed;
+    failedNoPreamble += counts.failedNoPreamble;
+    failedPreambleCollision += counts.failedPreambleCollision;
+    failedPayloadCollision += counts.failedPayloadCollision;
+    failedWeakPayload += counts.failedWeakPayload;
+  }
+
+  /**
+   * @return Comma separated counts in the order of {@link #CSV_HEADER}
+   */
+  @Override
+  public String toString() {
+    return String.format("%d,%d,%d,%d,%d,%d,%d,%d", wantedCount, receivedWanted, receivedUnwanted,
+        failedMissed, failedNoPreamble, failedPreambleCollision, failedPayloadCollision,
+        failedWeakPayload);
+  }
+
+}
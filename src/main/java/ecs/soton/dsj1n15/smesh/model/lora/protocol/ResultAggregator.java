@@ -0,0 +1,363 @@
+package ecs.soton.dsj1n15.smesh.model.lora.protocol;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import ecs.soton.dsj1n15.smesh.model.environment.Environment;
+import ecs.soton.dsj1n15.smesh.model.lora.LoRaRadio;
+import ecs.soton.dsj1n15.smesh.radio.Radio;
+import ecs.soton.dsj1n15.smesh.radio.ReceiveHorizonListener;
+import ecs.soton.dsj1n15.smesh.radio.ReceiveResult;
+import ecs.soton.dsj1n15.smesh.radio.Transmission;
+import ecs.soton.dsj1n15.smesh.radio.TransmissionListener;
+
+/**
+ * Online aggregation of the results of every transmission in an environment across the listeners
+ * of a protocol, each listener being given a dense receiver index as it is registered.<br>
+ * When a transmission starts whether each receiver wants it is decided once and held in a bit set
+ * by receiver index, reading the wanted probability from a table by distance, see
+ * {@link WantedProbabilityTable}. Each receiver resolves the transmission once it
+ * has ended before the receive horizon of its radio, see {@link Radio#getReceiveHorizon()}, adding
+ * its outcome to the running totals of the receiver and, if it was sent by a listener, of the
+ * transmission. A transmission is checked against every receiver when it ends, after which a
+ * receiver that could still receive it queues it until its own receive horizon moves past it, so
+ * no receiver is checked for a transmission more than needed. Transmissions that are not yet final
+ * are counted from the receivers that have still to resolve them.<br>
+ * Once every receiver has resolved a transmission that was sent by a listener its result is final,
+ * so it is passed to any result listeners and only the result is kept, unless results are not being
+ * kept at all.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class ResultAggregator implements TransmissionListener, ReceiveHorizonListener {
+  /** Environment the transmissions are in */
+  private final Environment environment;
+
+  /** Registered listeners by receiver index */
+  private final List<ProtocolTickListener> receivers = new ArrayList<>();
+  /** Receiver index of each registered listener's radio */
+  private final Map<Radio, Integer> indexes = new HashMap<>();
+
+  /** Wanted probability by the distance between a sender and receiver */
+  private static final WantedProbabilityTable WANTED_PROBABILITIES = new WantedProbabilityTable();
+
+  /** Tally of every transmission that has not yet been resolved by all of its receivers */
+  private final Map<Transmission, TransmissionTally> pending = new HashMap<>();
+  /** Ended transmissions each receiver can still receive by index, in the order they ended */
+  private final List<Deque<TransmissionTally>> waiting = new ArrayList<>();
+  /** Results of the transmissions sent by each radio, in send order */
+  private final Map<Radio, List<SentTransmission>> sent = new HashMap<>();
+  /** Whether the results of sent transmissions are kept */
+  private boolean keepResults = true;
+  /** Listeners alerted as the results of sent transmissions become final */
+  private final List<TransmissionResultListener> resultListeners = new ArrayList<>();
+
+  /**
+   * Create a new aggregator. It must be added as a transmission listener of the environment before
+   * any of the registered listeners.
+   *
+   * @param environment Environment the transmissions are in
+   */
+  public ResultAggregator(Environment environment) {
+    this.environment = environment;
+  }
+
+  /**
+   * Register a listener as a receiver of all transmissions that start from now on.
+   *
+   * @param listener Listener to register
+   * @return Receiver index of the listener
+   */
+  public int register(ProtocolTickListener listener) {
+    if (indexes.containsKey(listener.radio)) {
+      throw new IllegalArgumentException("A listener for the radio is already registered");
+    }
+    int index = receivers.size();
+    receivers.add(listener);
+    indexes.put(listener.radio, index);
+    waiting.add(new ArrayDeque<>());
+    listener.radio.addReceiveHorizonListener(this);
+    return index;
+  }
+
+  /**
+   * Set whether the results of sent transmissions are kept for
+   * {@link #getResults(Radio, boolean)}. If they are not, results are only passed to result
+   * listeners as they become final so memory does not grow with the number of transmissions. Only
+   * transmissions sent after this is set are affected.
+   *
+   * @param keepResults Whether to keep the results of sent transmissions
+   */
+  public void setKeepResults(boolean keepResults) {
+    this.keepResults = keepResults;
+  }
+
+  /**
+   * @param listener Listener to alert as the results of sent transmissions become final
+   */
+  public void addResultListener(TransmissionResultListener listener) {
+    resultListeners.add(listener);
+  }
+
+  /**
+   * @param listener Listener to remove
+   */
+  public void removeResultListener(TransmissionResultListener listener) {
+    resultListeners.remove(listener);
+  }
+
+  /**
+   * Decide which receivers want the transmission and expect every receiver other than the sender to
+   * resolve it.
+   */
+  @Override
+  public void transmissionStarted(Transmission transmission) {
+    TransmissionTally tally = new TransmissionTally(transmission);
+    Radio sender = transmission.sender;
+    for (int i = 0; i < receivers.size(); i++) {
+      ProtocolTickListener receiver = receivers.get(i);
+      if (receiver.radio == sender) {
+        continue;
+      }
+      tally.unresolved.set(i);
+      double dist = Math.hypot(receiver.radio.getX() - sender.getX(),
+          receiver.radio.getY() - sender.getY());
+      if (receiver.isTransmissionWanted(transmission, WANTED_PROBABILITIES.get(dist))) {
+        tally.wanted.set(i);
+      }
+    }
+    pending.put(transmission, tally);
+  }
+
+  /**
+   * Resolve the transmission at every receiver that can no longer receive it, the others wait for
+   * their receive horizon to pass it.
+   */
+  @Override
+  public void transmissionEnded(Transmission transmission) {
+    TransmissionTally tally = pending.get(transmission);
+    if (tally == null) {
+      return;
+    }
+    BitSet unresolved = tally.unresolved;
+    for (int i = unresolved.nextSetBit(0); i >= 0; i = unresolved.nextSetBit(i + 1)) {
+      ProtocolTickListener receiver = receivers.get(i);
+      if (transmission.endTime < receiver.radio.getReceiveHorizon()) {
+        resolve(tally, i);
+      } else {
+        waiting.get(i).addLast(tally);
+      }
+    }
+    checkFinal(tally);
+  }
+
+  /**
+   * Resolve the ended transmissions a receiver was waiting on that it can no longer receive.
+   */
+  @Override
+  public void receiveHorizonChanged(Radio radio, long horizon) {
+    Integer index = indexes.get(radio);
+    if (index == null) {
+      return;
+    }
+    // Transmissions that ended out of order are resolved once those before them are
+    Deque<TransmissionTally> queue = waiting.get(index);
+    while (!queue.isEmpty() && queue.peekFirst().transmission.endTime < horizon) {
+      TransmissionTally tally = queue.removeFirst();
+      resolve(tally, index);
+      checkFinal(tally);
+    }
+  }
+
+  /**
+   * Add the outcome of a transmission at a receiver to the running totals, it is then no longer
+   * held by the receiver.
+   *
+   * @param tally Tally of the transmission
+   * @param index Receiver index of the receiver that has resolved the transmission
+   */
+  private void resolve(TransmissionTally tally, int index) {
+    ProtocolTickListener receiver = receivers.get(index);
+    boolean wanted = tally.wanted.get(index);
+    ReceiveResult receive = receiver.receivedData.remove(tally.transmission);
+    if (tally.sent != null) {
+      tally.sent.counts.record(wanted, receive, false);
+      tally.sent.wantedCounts.record(wanted, receive, true);
+    }
+    receiver.resolved(tally.transmission, wanted, receive);
+    tally.unresolved.clear(index);
+  }
+
+  /**
+   * Stop tracking a transmission once every receiver has resolved it, making its result final if
+   * it was sent by a listener.
+   *
+   * @param tally Tally of the transmission
+   */
+  private void checkFinal(TransmissionTally tally) {
+    if (!tally.unresolved.isEmpty()) {
+      return;
+    }
+    pending.remove(tally.transmission);
+    SentTransmission result = tally.sent;
+    if (result != null) {
+      result.tally = null;
+      for (TransmissionResultListener listener : resultListeners) {
+        listener.transmissionResolved(new TransmissionResult(result.summary, result.counts),
+            new TransmissionResult(result.summary, result.wantedCounts));
+      }
+    }
+  }
+
+  /**
+   * Record that a transmission was sent by a listener's radio so that its result is kept. The
+   * summary of the transmission uses the configuration of the sender at this point.
+   *
+   * @param sender The radio that sent the transmission
+   * @param transmission The transmission
+   */
+  public void sent(LoRaRadio sender, Transmission transmission) {
+    TransmissionTally tally = pending.get(transmission);
+    if (tally == null || tally.sent != null) {
+      return;
+    }
+    tally.sent = new SentTransmission(new TransmissionResult(sender, transmission, null), tally);
+    if (keepResults) {
+      List<SentTransmission> results = sent.get(sender);
+      if (results == null) {
+        results = new ArrayList<>();
+        sent.put(sender, results);
+      }
+      results.add(tally.sent);
+    }
+  }
+
+  /**
+   * @param transmission A transmission that has not been resolved by the receiver
+   * @param receiver Receiver index of a listener
+   * @return Whether the receiver wants the transmission, false if it is not being tracked for the
+   *         receiver such as when it started before the aggregator or receiver was added
+   */
+  public boolean isWanted(Transmission transmission, int receiver) {
+    TransmissionTally tally = pending.get(transmission);
+    return tally != null && tally.wanted.get(receiver);
+  }
+
+  /**
+   * @param transmission A transmission
+   * @param receiver Radio of a registered listener
+   * @return Whether the receiver has still to resolve the transmission
+   */
+  boolean isUnresolved(Transmission transmission, Radio receiver) {
+    TransmissionTally tally = pending.get(transmission);
+    Integer index = indexes.get(receiver);
+    return tally != null && index != null && tally.unresolved.get(index);
+  }
+
+  /**
+   * Record the outcomes of the finished test data transmissions a receiver has still to resolve.
+   *
+   * @param receiver Receiver index of a listener
+   * @param counts Counts to record the outcomes in
+   * @param filterWanted Whether to filter to only those wanted
+   */
+  public void recordUnresolved(int receiver, ReceiveCounts counts, boolean filterWanted) {
+    ProtocolTickListener listener = receivers.get(receiver);
+    for (TransmissionTally tally : pending.values()) {
+      Transmission transmission = tally.transmission;
+      if (!tally.unresolved.get(receiver) || transmission.endTime > environment.getTime()
+          || !(transmission.packet instanceof TestData)) {
+        continue;
+      }
+      counts.record(tally.wanted.get(receiver), listener.receivedData.get(transmission),
+          filterWanted);
+    }
+  }
+
+  /**
+   * Get the results of the finished transmissions sent by a radio, if results are being kept.
+   *
+   * @param sender The radio that sent the transmissions
+   * @param filterWanted Filter by only those transmissions that were defined as wanted
+   * @return Results of each transmission in send order
+   */
+  public List<TransmissionResult> getResults(Radio sender, boolean filterWanted) {
+    List<TransmissionResult> results = new ArrayList<>();
+    List<SentTransmission> sentResults = sent.get(sender);
+    if (sentResults == null) {
+      return results;
+    }
+    for (SentTransmission result : sentResults) {
+      TransmissionTally tally = result.tally;
+      // Ignore if transmission isn't finished
+      if (tally != null && tally.transmission.endTime > environment.getTime()) {
+        continue;
+      }
+      ReceiveCounts counts = new ReceiveCounts();
+      counts.add(filterWanted ? result.wantedCounts : result.counts);
+      // Add receivers that have not yet resolved the transmission
+      if (tally != null) {
+        BitSet unresolved = tally.unresolved;
+        for (int i = unresolved.nextSetBit(0); i >= 0; i = unresolved.nextSetBit(i + 1)) {
+          counts.record(tally.wanted.get(i),
+              receivers.get(i).receivedData.get(tally.transmission), filterWanted);
+        }
+      }
+      results.add(new TransmissionResult(result.summary, counts));
+    }
+    return results;
+  }
+
+  /**
+   * Which receivers want and have still to resolve a single transmission.
+   *
+   * @author David Jones (dsj1n15)
+   */
+  private static class TransmissionTally {
+    /** The transmission */
+    private final Transmission transmission;
+    /** Result of the transmission if it was sent by a listener */
+    private SentTransmission sent = null;
+    /** Receivers that want the transmission by index */
+    private final BitSet wanted = new BitSet();
+    /** Receivers still to resolve the transmission by index */
+    private final BitSet unresolved = new BitSet();
+
+    /**
+     * @param transmission The transmission
+     */
+    private TransmissionTally(Transmission transmission) {
+      this.transmission = transmission;
+    }
+  }
+
+  /**
+   * Running result of a transmission sent by a listener over the receivers that have resolved it.
+   *
+   * @author David Jones (dsj1n15)
+   */
+  private static class SentTransmission {
+    /** Summary of the transmission, without counts */
+    private final TransmissionResult summary;
+    /** Tally of the transmission, null once every receiver has resolved it */
+    private TransmissionTally tally;
+    /** Counts over all resolved receivers */
+    private final ReceiveCounts counts = new ReceiveCounts();
+    /** Counts over all resolved receivers, filtered to wanted transmissions */
+    private final ReceiveCounts wantedCounts = new ReceiveCounts();
+
+    /**
+     * @param summary Summary of the transmission, without counts
+     * @param tally Tally of the transmission
+     */
+    private SentTransmission(TransmissionResult summary, TransmissionTally tally) {
+      this.summary = summary;
+      this.tally = tally;
+    }
+  }
+
+}
@@ -0,0 +1,81 @@
+package ecs.soton.dsj1n15.smesh.model.lora.protocol;
+
+import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
+import ecs.soton.dsj1n15.smesh.model.lora.LoRaRadio;
+import ecs.soton.dsj1n15.smesh.radio.Transmission;
+
+/**
+ * Summary of a finished transmission and how it was received by every other node. Holds no
+ * reference to the simulation so can be kept after it has been discarded.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class TransmissionResult {
+  /** CSV header matching {@link #toString()} */
+  public static final String CSV_HEADER =
+      "sender,start,airtime,pl,cf,sf," + ReceiveCounts.CSV_HEADER + ",testData";
+
+  /** ID of the sending radio */
+  public final int sender;
+  /** Time the transmission started */
+  public final long startTime;
+  /** Airtime of the transmission */
+  public final long airtime;
+  /** Payload length */
+  public final int length;
+  /** Carrier frequency used */
+  public final double freq;
+  /** Spreading factor used */
+  public final int sf;
+  /** Whether the transmission contained test data */
+  public final boolean testData;
+  /** Accumulated receive results over all receivers */
+  public final ReceiveCounts counts;
+
+  /**
+   * Create a new transmission result. The configuration of the sender is read straight away so
+   * the result should be created whilst it is still the one the transmission was sent with.
+   *
+   * @param sender The radio that sent the transmission
+   * @param transmission The transmission
+   * @param counts Accumulated receive results over all receivers
+   */
+  public TransmissionResult(LoRaRadio sender, Transmission transmission, ReceiveCounts counts) {
+    LoRaCfg cfg = sender.getLoRaCfg();
+    this.sender = sender.getID();
+    this.startTime = transmission.startTime;
+    this.airtime = transmission.airtime;
+    this.length = transmission.packet.length;
+    this.freq = cfg.getFreq();
+    this.sf = cfg.getSF();
+    this.testData = transmission.packet instanceof TestData;
+    this.counts = counts;
+  }
+
+  /**
+   * Create a result for the same transmission with different receive results.
+   *
+   * @param result Result of the transmission
+   * @param counts Accumulated receive results over all receivers
+   */
+  public TransmissionResult(TransmissionResult result, ReceiveCounts counts) {
+    this.sender = result.sender;
+    this.startTime = result.startTime;
+    this.airtime = result.airtime;
+    this.length = result.length;
+    this.freq = result.freq;
+    this.sf = result.sf;
+    this.testData = result.testData;
+    this.counts = counts;
+  }
+
+  /**
+   * @return Comma separated result in the order of {@link #CSV_HEADER}
+   */
+  @Override
+  public String toString() {
+    return String.format("%d,%d,%d,%d,%f,%d,%s,%d", sender, startTime, airtime, length, freq, sf,
+        counts, testData ? 1 : 0);
+  }
+
+}
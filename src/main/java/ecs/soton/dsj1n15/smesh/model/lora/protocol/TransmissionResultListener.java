@@ -0,0 +1,20 @@
+package ecs.soton.dsj1n15.smesh.model.lora.protocol;
+
+/**
+ * Listener that gets called whenever the result of a transmission sent by a protocol becomes final,
+ * i.e. every other node has resolved it. Results are given in the order they become final rather
+ * than send order.
+ * 
+ * @author David Jones (dsj1n15)
+ */
+public interface TransmissionResultListener {
+
+  /**
+   * Method that gets called when the result of a transmission becomes final.
+   * 
+   * @param result Result of the transmission over all receivers
+   * @param wantedResult Result of the transmission filtered to the receivers that wanted it
+   */
+  public void transmissionResolved(TransmissionResult result, TransmissionResult wantedResult);
+
+}
@@ -36,7 +36,7 @@ public class AdaptiveBroadcastProtocol extends Protocol<AdaptiveTickListener> {
         LoRaRadio loraRadio = (LoRaRadio) radio;
         AdaptiveTickListener listener = new AdaptiveTickListener(loraRadio, lowRateDataRate);
         loraRadio.addTickListener(listener);
-        listeners.put(radio, listener);
+        addListener(radio, listener);
       }
     }
   }
@@ -6,8 +6,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import ecs.soton.dsj1n15.smesh.lib.Debugger;
-import ecs.soton.dsj1n15.smesh.lib.Utilities;
+import ecs.soton.dsj1n15.smesh.model.dutycycle.DutyCycleService;
 import ecs.soton.dsj1n15.smesh.model.dutycycle.FullPeriodDutyCycleManager;
 import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
 import ecs.soton.dsj1n15.smesh.model.lora.LoRaRadio;
@@ -41,17 +40,8 @@ public class AdaptiveTickListener extends ProtocolTickListener {
   /** The order in which to consider the datarates */
   private static final int[] DATARATE_USE_ORDER = {0, 1, 3, 4, 5};
 
-  /**
-   * The number of announcement packets to send before broadcast TODO: Initialise on instantiation
-   * as opposed to using public variable.
-   */
-  public static int ANNOUNCEMENT_PACKET_COUNT = 2;
-
-  /** Whether to enable heartbeat packet sending */
-  public static boolean HEARTBEAT_ENABLED = true;
-
-  /** Whether to find all the best targets using sim metadata */
-  public static boolean TARGET_CHEAT = false;
+  /** Protocol tuning taken from the simulation context */
+  private final AdaptiveTuning tuning;
 
   /** A duty cycle manager for managing the low data rate band */
   private final FullPeriodDutyCycleManager dcmLowRateBand;
@@ -68,6 +58,8 @@ public class AdaptiveTickListener extends ProtocolTickListener {
   private boolean usingLowDataRate;
   private int lowRateDataRate;
   private LoRaCfg lowRateBandCfg;
+  /** Configurations used for each data rate (0-6) and high data rate channel, made on first use */
+  private final LoRaCfg[][] highRateBandCfgs = new LoRaCfg[7][CHANNELS.length];
   private final int intervalHeartbeat;
   private long nextHeartbeat;
   private boolean lastHeartbeatComplete = true;
@@ -95,12 +87,15 @@ public class AdaptiveTickListener extends ProtocolTickListener {
    */
   public AdaptiveTickListener(LoRaRadio radio, int lowRateDataRate) {
     super(radio);
-    // Assign duty cycle managers for the bands
-    dcmLowRateBand = new FullPeriodDutyCycleManager(0.01, 1000 * 60 * 60);
-    dcmHighRateBand = new FullPeriodDutyCycleManager(0.01, 1000 * 60 * 60);
+    tuning = environment.getContext().getAdaptiveTuning();
     // Initialise to low rate band configuration
     this.lowRateDataRate = lowRateDataRate;
     setLowDataRate();
+    // Assign duty cycle managers for the sub-bands, every high rate channel is in the same one
+    dcmLowRateBand = new FullPeriodDutyCycleManager(0.01, DutyCycleService.DEFAULT_PERIOD);
+    dcmHighRateBand = new FullPeriodDutyCycleManager(0.01, DutyCycleService.DEFAULT_PERIOD);
+    dutyCycle.setManager(lowRateBandCfg.getFreq(), dcmLowRateBand);
+    dutyCycle.setManager(CHANNELS[0], dcmHighRateBand);
     // Set the heartbeat interval so that half the duty cycle time is taken up with heartbeats
     intervalHeartbeat =
         (int) (lowRateBandCfg.calculatePacketAirtime(HeartbeatPacket.getExpectedLength())
@@ -108,14 +103,11 @@ public class AdaptiveTickListener extends ProtocolTickListener {
     // Schedule an initial heartbeat
     scheduleHeartbeat();
     // Schedule the first dump
-    nextBroadcast = Utilities.RANDOM.nextInt(600) * 1000;
+    nextBroadcast = r.nextInt(600) * 1000;
   }
 
   @Override
   public void tick() {
-    // Simulation metadata gathering
-    trackTransmissions();
-
     // Run generic radio tasks
     checkForSendFinish();
     checkForSync();
@@ -130,14 +122,43 @@ public class AdaptiveTickListener extends ProtocolTickListener {
     }
   }
 
+  @Override
+  public long getNextWakeTime() {
+    long wakeTime = super.getNextWakeTime();
+    if (usingLowDataRate) {
+      // Retries every tick whilst an announcement is waiting to be sent, unless waiting for duty
+      // cycle
+      if (announcementScheduled && broadcastAnnouncement != null) {
+        return Math.min(wakeTime, getDutyCycleRelease());
+      }
+      if (!sendingAnnouncements && tuning.isHeartbeatEnabled()) {
+        wakeTime = Math.min(wakeTime, after(nextHeartbeat));
+      }
+      if (!announcementScheduled && lastHeartbeatComplete
+          && announcementsSent < tuning.getAnnouncementPacketCount() && announcementSent) {
+        wakeTime = Math.min(wakeTime, nextBroadcast);
+      }
+    } else {
+      // Sends back to back packets whilst transmitting, unless waiting for duty cycle
+      if (transmittingPackets) {
+        return Math.min(wakeTime, getDutyCycleRelease());
+      }
+      wakeTime = Math.min(wakeTime, after(timeoutPacketReceives));
+    }
+    return wakeTime;
+  }
+
   /**
    * Switch to the default low rate configuration.
    */
   public void setLowDataRate() {
     usingLowDataRate = true;
-    lowRateBandCfg = LoRaCfg.getDatarate(lowRateDataRate);
-    lowRateBandCfg.setFreq(868.3);
-    lowRateBandCfg.setPreambleSymbols(16);
+    if (lowRateBandCfg == null) {
+      LoRaCfg cfg = LoRaCfg.getDatarate(lowRateDataRate);
+      cfg.setFreq(868.3);
+      cfg.setPreambleSymbols(16);
+      lowRateBandCfg = cfg.freeze();
+    }
     radio.setLoRaCfg(lowRateBandCfg);
   }
 
@@ -147,8 +168,13 @@ public class AdaptiveTickListener extends ProtocolTickListener {
    * @param dap Data announcement packet to use for configuration
    */
   public void setHighDataRate(DataAnnouncePacket dap) {
-    LoRaCfg cfg = LoRaCfg.getDatarate(dap.dr);
-    cfg.setFreq(CHANNELS[dap.channel]);
+    LoRaCfg cfg = highRateBandCfgs[dap.dr][dap.channel];
+    if (cfg == null) {
+      cfg = LoRaCfg.getDatarate(dap.dr);
+      cfg.setFreq(CHANNELS[dap.channel]);
+      cfg = cfg.freeze();
+      highRateBandCfgs[dap.dr][dap.channel] = cfg;
+    }
     radio.setLoRaCfg(cfg);
     usingLowDataRate = false;
   }
@@ -160,14 +186,14 @@ public class AdaptiveTickListener extends ProtocolTickListener {
     long curTime = environment.getTime();
     // Send periodic heartbeats
     if (!sendingAnnouncements) {
-      if (nextHeartbeat < curTime && HEARTBEAT_ENABLED) {
+      if (nextHeartbeat < curTime && tuning.isHeartbeatEnabled()) {
         sendHeartbeat();
         return;
       }
     }
     // Determine whether a broadcast announcement packet should be sent
     if (!announcementScheduled && lastHeartbeatComplete && nextBroadcast <= curTime
-        && announcementsSent < ANNOUNCEMENT_PACKET_COUNT && announcementSent) {
+        && announcementsSent < tuning.getAnnouncementPacketCount() && announcementSent) {
       if (scheduleAnnouncement()) {
         sendingAnnouncements = true;
         announcementScheduled = true;
@@ -176,7 +202,7 @@ public class AdaptiveTickListener extends ProtocolTickListener {
     }
     // Handle broadcast announcement
     if (announcementScheduled && broadcastAnnouncement != null) {
-      if (attemptSend(broadcastAnnouncement, dcmLowRateBand) == SendStatus.SUCCESS) {
+      if (attemptSend(broadcastAnnouncement) == SendStatus.SUCCESS) {
         announcementScheduled = false;
       }
     }
@@ -193,7 +219,7 @@ public class AdaptiveTickListener extends ProtocolTickListener {
     if (transmittingPackets) {
       if (packets.size() > 0) {
         Packet packet = packets.get(0);
-        SendStatus send = attemptSend(packet, dcmHighRateBand);
+        SendStatus send = attemptSend(packet);
         if (send == SendStatus.SUCCESS) {
           packets.remove(0);
         }
@@ -209,7 +235,7 @@ public class AdaptiveTickListener extends ProtocolTickListener {
     } else {
       // Must be receiving, check if receive timeout has been reached
       if (timeoutPacketReceives < curTime) {
-        Debugger.println(String.format("[%8d] - Radio %-2d - Timed Out HDR", environment.getTime(),
+        debugger.println(String.format("[%8d] - Radio %-2d - Timed Out HDR", environment.getTime(),
             radio.getID()));
         setLowDataRate();
       }
@@ -224,7 +250,7 @@ public class AdaptiveTickListener extends ProtocolTickListener {
    */
   public boolean scheduleAnnouncement() {
     // Check if there is anyone to send to
-    if (TARGET_CHEAT) {
+    if (tuning.isTargetCheat()) {
       testFindLocalNeighbours();
     }
     Set<Radio> targets = findPotentialTargets();
@@ -267,7 +293,7 @@ public class AdaptiveTickListener extends ProtocolTickListener {
    */
   public double scheduleHeartbeat() {
     nextHeartbeat = environment.getTime();
-    nextHeartbeat += (long) (intervalHeartbeat * (1 + Utilities.RANDOM.nextDouble()));
+    nextHeartbeat += (long) (intervalHeartbeat * (1 + r.nextDouble()));
     return nextHeartbeat;
   }
 
@@ -280,7 +306,7 @@ public class AdaptiveTickListener extends ProtocolTickListener {
     HeartbeatPacket packet = new HeartbeatPacket(radio, radio.getXY());
     // Attempt to send heartbeat with CAD
     lastHeartbeatComplete = false;
-    SendStatus sendStatus = attemptSendWithCAD(packet, dcmLowRateBand);
+    SendStatus sendStatus = attemptSendWithCAD(packet);
 
     // Handle whether the message was sent
     switch (sendStatus) {
@@ -297,13 +323,12 @@ public class AdaptiveTickListener extends ProtocolTickListener {
         break;
       case DUTY_CYCLE_LIMIT:
         // Delay heartbeat till it is allowed
-        int airtime = radio.getLoRaCfg().calculatePacketAirtime(packet.length);
-        nextHeartbeat = dcmLowRateBand.whenCanTransmit(environment.getTime(), airtime);
+        nextHeartbeat = getDutyCycleRelease();
         break;
       case SUCCESS:
         // Message sent, schedule the next heartbeat
         nextHeartbeat = (long) (environment.getTime()
-            + (intervalHeartbeat * (1 + Utilities.RANDOM.nextDouble())));
+            + (intervalHeartbeat * (1 + r.nextDouble())));
         lastHeartbeatComplete = true;
         break;
       default:
@@ -382,9 +407,9 @@ public class AdaptiveTickListener extends ProtocolTickListener {
       }
     }
     // Select a random channel in the high rate band
-    int channel = Utilities.RANDOM.nextInt(CHANNELS.length);
+    int channel = r.nextInt(CHANNELS.length);
     // Just use a random block ID, redundant for testing as retransmissions are not a concern
-    int blockID = Utilities.RANDOM.nextInt(255);
+    int blockID = r.nextInt(255);
     // Determine packet information for receivers
     double totalLength = 0;
     for (Packet packet : packets) {
@@ -394,7 +419,7 @@ public class AdaptiveTickListener extends ProtocolTickListener {
     // Set the start delay until all announcements have been sent
     int packetAirtime =
         radio.getLoRaCfg().calculatePacketAirtime(DataAnnouncePacket.getExpectedLength());
-    int delay = (ANNOUNCEMENT_PACKET_COUNT - (announcementsSent + 1)) * packetAirtime;
+    int delay = (tuning.getAnnouncementPacketCount() - (announcementsSent + 1)) * packetAirtime;
     // Create the packet
     DataAnnouncePacket dap = new DataAnnouncePacket(radio, null, avgPacketLength, packets.size(),
         blockID, radio.getXY(), drBest, channel, delay);
@@ -411,7 +436,7 @@ public class AdaptiveTickListener extends ProtocolTickListener {
   private DataAnnouncePacket makeAnnouncementPacket(DataAnnouncePacket original) {
     int packetAirtime =
         radio.getLoRaCfg().calculatePacketAirtime(DataAnnouncePacket.getExpectedLength());
-    int delay = (ANNOUNCEMENT_PACKET_COUNT - (announcementsSent + 1)) * packetAirtime;
+    int delay = (tuning.getAnnouncementPacketCount() - (announcementsSent + 1)) * packetAirtime;
     DataAnnouncePacket dap = new DataAnnouncePacket(original.sender, original.target,
         original.avgPacketLength, original.packetCount, original.blockID, original.loc, original.dr,
         original.channel, delay);
@@ -457,7 +482,7 @@ public class AdaptiveTickListener extends ProtocolTickListener {
         announcementsSent++;
         announcementSent = true;
         // Switch to high rate once all announcements sent
-        if (announcementsSent == ANNOUNCEMENT_PACKET_COUNT) {
+        if (announcementsSent == tuning.getAnnouncementPacketCount()) {
           setHighDataRate((DataAnnouncePacket) lastTransmit.packet);
           nextBroadcast = environment.getTime() + nextBroadcastDelay;
           sendingAnnouncements = false;
@@ -0,0 +1,61 @@
+package ecs.soton.dsj1n15.smesh.model.lora.protocol.adaptive;
+
+/**
+ * Tuning parameters for the adaptive broadcast protocol. Held by a simulation context so that
+ * simulations running in the same process can be tuned independently.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class AdaptiveTuning {
+  /** The number of announcement packets to send before broadcast */
+  private volatile int announcementPacketCount = 2;
+
+  /** Whether to enable heartbeat packet sending */
+  private volatile boolean heartbeatEnabled = true;
+
+  /** Whether to find all the best targets using sim metadata */
+  private volatile boolean targetCheat = false;
+
+  /**
+   * @return The number of announcement packets to send before broadcast
+   */
+  public int getAnnouncementPacketCount() {
+    return announcementPacketCount;
+  }
+
+  /**
+   * @param announcementPacketCount The number of announcement packets to send before broadcast
+   */
+  public void setAnnouncementPacketCount(int announcementPacketCount) {
+    this.announcementPacketCount = announcementPacketCount;
+  }
+
+  /**
+   * @return Whether heartbeat packet sending is enabled
+   */
+  public boolean isHeartbeatEnabled() {
+    return heartbeatEnabled;
+  }
+
+  /**
+   * @param heartbeatEnabled Whether to enable heartbeat packet sending
+   */
+  public void setHeartbeatEnabled(boolean heartbeatEnabled) {
+    this.heartbeatEnabled = heartbeatEnabled;
+  }
+
+  /**
+   * @return Whether all the best targets are found using sim metadata
+   */
+  public boolean isTargetCheat() {
+    return targetCheat;
+  }
+
+  /**
+   * @param targetCheat Whether to find all the best targets using sim metadata
+   */
+  public void setTargetCheat(boolean targetCheat) {
+    this.targetCheat = targetCheat;
+  }
+
+}
@@ -33,7 +33,7 @@ public class EventProtocol extends Protocol<EventTickListener> {
         LoRaRadio loraRadio = (LoRaRadio) radio;
         EventTickListener listener = new EventTickListener(loraRadio);
         loraRadio.addTickListener(listener);
-        listeners.put(radio, listener);
+        addListener(radio, listener);
       }
     }
   }
@@ -22,9 +22,6 @@ class EventTickListener extends ProtocolTickListener {
 
   @Override
   public void tick() {
-    // Simulation metadata gathering
-    trackTransmissions();
-
     // Run radio tasks
     trackSend();
     checkForSendFinish();
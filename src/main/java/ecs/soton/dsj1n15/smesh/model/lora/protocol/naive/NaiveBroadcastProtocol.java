@@ -1,6 +1,7 @@
 package ecs.soton.dsj1n15.smesh.model.lora.protocol.naive;
 
 import ecs.soton.dsj1n15.smesh.model.environment.Environment;
+import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
 import ecs.soton.dsj1n15.smesh.model.lora.LoRaRadio;
 import ecs.soton.dsj1n15.smesh.model.lora.protocol.Protocol;
 import ecs.soton.dsj1n15.smesh.radio.Radio;
@@ -37,10 +38,12 @@ public class NaiveBroadcastProtocol extends Protocol<NaiveTickListener> {
         LoRaRadio loraRadio = (LoRaRadio) radio;
         NaiveTickListener listener = new NaiveTickListener(loraRadio, dutyCycle, enableCAD);
         loraRadio.addTickListener(listener);
-        listeners.put(radio, listener);
+        addListener(radio, listener);
         // Extend preamble when CAD is used to improve reliability
         if (enableCAD) {
-          loraRadio.getLoRaCfg().setPreambleSymbols(32);
+          LoRaCfg cfg = new LoRaCfg(loraRadio.getLoRaCfg());
+          cfg.setPreambleSymbols(32);
+          loraRadio.setLoRaCfg(cfg);
         }
       }
     }
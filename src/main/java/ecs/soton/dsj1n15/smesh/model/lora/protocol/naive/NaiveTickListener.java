@@ -1,6 +1,5 @@
 package ecs.soton.dsj1n15.smesh.model.lora.protocol.naive;
 
-import ecs.soton.dsj1n15.smesh.model.dutycycle.DutyCycleManager;
 import ecs.soton.dsj1n15.smesh.model.dutycycle.SingleTransmissionDutyCycleManager;
 import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
 import ecs.soton.dsj1n15.smesh.model.lora.LoRaRadio;
@@ -16,9 +15,6 @@ import ecs.soton.dsj1n15.smesh.radio.Packet;
  */
 public class NaiveTickListener extends ProtocolTickListener {
 
-  /** Single band so a single duty cycle manager */
-  private final DutyCycleManager dcm;
-
   /** Whether to enable CAD */
   boolean enableCAD;
 
@@ -29,21 +25,20 @@ public class NaiveTickListener extends ProtocolTickListener {
    * Create a tick listener for controlling the protocol behaviour on the radio.
    * 
    * @param radio Radio to control
-   * @param dutyCycle Duty cycle to use for single band duty cycle manager
+   * @param dutyCycle Duty cycle to use for the sub-band of the radio's channel
    * @param enableCAD Whether to enable CAD
    */
   public NaiveTickListener(LoRaRadio radio, double dutyCycle, boolean enableCAD) {
     super(radio);
-    this.dcm = new SingleTransmissionDutyCycleManager(environment.getTime(), dutyCycle);
+    // Single channel so only a single sub-band is used
+    this.dutyCycle.setManager(radio.getFrequency(),
+        new SingleTransmissionDutyCycleManager(environment.getTime(), dutyCycle));
     this.enableCAD = enableCAD;
     this.nextTransmit = (long) (radio.getID() * LoRaCfg.getSymbolTime(radio.getLoRaCfg()));
   }
 
   @Override
   public void tick() {
-    // Simulation metadata gathering
-    trackTransmissions();
-
     // Run generic radio tasks
     checkForSendFinish();
     checkForSync();
@@ -56,6 +51,11 @@ public class NaiveTickListener extends ProtocolTickListener {
     }
   }
 
+  @Override
+  public long getNextWakeTime() {
+    return Math.min(super.getNextWakeTime(), after(nextTransmit));
+  }
+
   /**
    * Handle sending of a random amount of test data either with or without CAD. Will backoff if
    * either the channel is busy or not enough duty cycle limit is available.
@@ -65,9 +65,9 @@ public class NaiveTickListener extends ProtocolTickListener {
     // Attempt to send either with or without CAD
     SendStatus sendStatus;
     if (enableCAD) {
-      sendStatus = attemptSendWithCAD(packet, dcm);
+      sendStatus = attemptSendWithCAD(packet);
     } else {
-      sendStatus = attemptSend(packet, dcm);
+      sendStatus = attemptSend(packet);
     }
     // Handle whether the message was sent
     switch (sendStatus) {
@@ -86,8 +86,7 @@ public class NaiveTickListener extends ProtocolTickListener {
         break;
       case DUTY_CYCLE_LIMIT:
         // Delay transmission till it is allowed
-        int airtime = radio.getLoRaCfg().calculatePacketAirtime(packet.length);
-        this.nextTransmit = dcm.whenCanTransmit(environment.getTime(), airtime);
+        this.nextTransmit = getDutyCycleRelease();
         break;
       case SUCCESS:
         // Message sent, nothing to worry about
@@ -15,6 +15,7 @@ import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
 import ecs.soton.dsj1n15.smesh.model.lora.LoRaRadio;
 import ecs.soton.dsj1n15.smesh.model.lora.protocol.TestDataPacket;
 import ecs.soton.dsj1n15.smesh.radio.Packet;
+import ecs.soton.dsj1n15.smesh.radio.Radio;
 import ecs.soton.dsj1n15.smesh.radio.ReceiveResult.MetadataStatus;
 import ecs.soton.dsj1n15.smesh.radio.ReceiveResult.Status;
 
@@ -51,7 +52,7 @@ public class CollisionVerificationPreset extends Preset {
 
     double z = DEFAULT_NODE_Z;
     // Empty environment
-    environment = new Environment(FreeSpaceModelType.EFSPL);
+    environment = new Environment(FreeSpaceModelType.EFSPL, context);
 
     // Node 1
     LoRaRadio nodeA = generateLoRaRadio(1, cloner.deepClone(cfg));
@@ -217,6 +218,11 @@ public class CollisionVerificationPreset extends Preset {
         setPassed(failed == 0);
         System.out.println(" ***");
       }
+
+      @Override
+      public Radio getRadio() {
+        return null;
+      }
     });
   }
 
@@ -25,7 +25,7 @@ public class DataBroadcastTest extends Preset {
     Cloner cloner = new Cloner();
     double z = DEFAULT_NODE_Z;
     // Empty environment
-    environment = new Environment(FreeSpaceModelType.EFSPL);
+    environment = new Environment(FreeSpaceModelType.EFSPL, context);
 
     // Node 1
     LoRaRadio node1 = generateLoRaRadio(1, cloner.deepClone(cfg));
@@ -2,7 +2,6 @@ package ecs.soton.dsj1n15.smesh.model.presets;
 
 import java.util.Set;
 import com.rits.cloning.Cloner;
-import ecs.soton.dsj1n15.smesh.lib.Utilities;
 import ecs.soton.dsj1n15.smesh.model.environment.Environment;
 import ecs.soton.dsj1n15.smesh.model.environment.EnvironmentObject;
 import ecs.soton.dsj1n15.smesh.model.environment.Forest;
@@ -49,7 +48,7 @@ public class LargeDataBroadcastTest extends Preset {
     Cloner cloner = new Cloner();
     double z = DEFAULT_NODE_Z;
     // Empty environment
-    environment = new Environment(FreeSpaceModelType.EFSPL);
+    environment = new Environment(FreeSpaceModelType.EFSPL, context);
     int nodeID = 1;
     for (int x = 0; x < countX; x++) {
       for (int y = 0; y < countY; y++) {
@@ -57,9 +56,9 @@ public class LargeDataBroadcastTest extends Preset {
         node.setX(x * spacing);
         node.setY(y * spacing);
         if (random) {
-          double xMod = (spacing * 0.35) * (Utilities.RANDOM.nextDouble() - 0.5);
+          double xMod = (spacing * 0.35) * (context.getRandom().nextDouble() - 0.5);
           node.setX(node.getX() + xMod);
-          double yMod = (spacing * 0.35) * (Utilities.RANDOM.nextDouble() - 0.5);
+          double yMod = (spacing * 0.35) * (context.getRandom().nextDouble() - 0.5);
           node.setY(node.getY() + yMod);
         }
         node.setZ(z);
@@ -22,7 +22,7 @@ public class NineNodeLine extends Preset {
   public void generate() {
     double z = DEFAULT_NODE_Z;
     // Empty environment
-    environment = new Environment(FreeSpaceModelType.EFSPL);
+    environment = new Environment(FreeSpaceModelType.EFSPL, context);
 
     // Node 1
     LoRaRadio node1 = generateLoRaRadio(1, LoRaCfg.getDataRate0());
@@ -5,23 +5,23 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import ecs.soton.dsj1n15.smesh.controller.Event;
+import ecs.soton.dsj1n15.smesh.model.SimulationContext;
 import ecs.soton.dsj1n15.smesh.model.environment.Environment;
 import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
 import ecs.soton.dsj1n15.smesh.model.lora.LoRaRadio;
-import ecs.soton.dsj1n15.smesh.model.lora.RFM95W;
 import ecs.soton.dsj1n15.smesh.radio.Radio;
 
 /**
  * Generic preset for radio testing. Can hold both an envioronment and a set of scheduled events
- * that can be executed by an environment runner. By changing the static radio type, any presets
- * created will use that radio type.
+ * that can be executed by an environment runner. The environment is generated using the preset's
+ * simulation context, its radio type determines the radios created.
  * 
  * @author David Jones (dsj1n15)
  */
 public abstract class Preset {
   public static final double DEFAULT_NODE_Z = 0.225;
-  public static RadioType radioType = RadioType.RFM95W;
 
+  protected SimulationContext context = new SimulationContext();
   protected Environment environment = null;
   protected Map<Long, List<Event>> events = new LinkedHashMap<>();
 
@@ -30,6 +30,24 @@ public abstract class Preset {
    */
   public abstract void generate();
 
+  /**
+   * @return The simulation context the preset is generated with.
+   */
+  public SimulationContext getContext() {
+    return context;
+  }
+
+  /**
+   * Set the simulation context and regenerate the preset using it.
+   * 
+   * @param context The new simulation context
+   */
+  public void setContext(SimulationContext context) {
+    this.context = context;
+    events.clear();
+    generate();
+  }
+
   /**
    * @return The generated environment.
    */
@@ -65,25 +83,14 @@ public abstract class Preset {
 
   /**
    * Method for generating a preset configured LoRa radio. Will throw an exception if the current
-   * preset radio type selection is not LoRa.
+   * context radio type selection is not LoRa.
    * 
    * @param id ID of radio
    * @param cfg LoRa configuration to preset with
    * @return Generated radio
    */
   protected LoRaRadio generateLoRaRadio(int id, LoRaCfg cfg) {
-    switch (radioType) {
-      case LoRaRadio:
-        return new LoRaRadio(id, cfg);
-      case RFM95W:
-        return new RFM95W(id, cfg);
-      default:
-        throw new IllegalStateException("Current radio type is not a LoRa radio");
-    }
-  }
-
-  public enum RadioType {
-    LoRaRadio, RFM95W
+    return context.createLoRaRadio(id, cfg);
   }
 
 }
@@ -33,7 +33,7 @@ public class TwoNode extends Preset {
 
     double z = DEFAULT_NODE_Z;
     // Empty environment
-    environment = new Environment(FreeSpaceModelType.EFSPL);
+    environment = new Environment(FreeSpaceModelType.EFSPL, context);
 
     Forest forest = new Forest(new Rectangle2D(0, 100, 1000, 500), 1);
     environment.getEnvironmentObjects().add(forest);
@@ -0,0 +1,17 @@
+package ecs.soton.dsj1n15.smesh.radio;
+
+/**
+ * Listener that gets called whenever a node's position or configuration changes in an environment.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public interface NodeListener {
+
+  /**
+   * Method that gets called after a node's position or configuration has changed.
+   *
+   * @param radio The node that has changed
+   */
+  public void nodeChanged(Radio radio);
+
+}
@@ -4,16 +4,21 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import ecs.soton.dsj1n15.smesh.model.RandomStream;
+import ecs.soton.dsj1n15.smesh.model.RandomStream.Purpose;
 import ecs.soton.dsj1n15.smesh.model.environment.Environment;
 import math.geom2d.Point2D;
 
 /**
  * Abstract class for a general radio. Radio Provides access to radio parameters and calculations
- * that all radios must make use of, e.g. frequency, bandwidth, SNR...
+ * that all radios must make use of, e.g. frequency, bandwidth, SNR...<br>
+ * Every radio in an environment is alerted as any transmission starts or ends, before the
+ * environment's transmission listeners, so it can track the channel without looking at it every
+ * time slice. By default this does nothing.
  * 
  * @author David Jones (dsj1n15)
  */
-public abstract class Radio {
+public abstract class Radio implements TransmissionListener {
   /** A unique ID */
   protected final int id;
 
@@ -23,14 +28,19 @@ public abstract class Radio {
   protected double y;
   protected double z;
 
-  /** A mapping of all transmissions seen to observation data */
-  protected Map<Long, PartialReceive> timeMap = new LinkedHashMap<>();
+  /** All samples listened to that are still of use, in time order */
+  protected final SampleBuffer samples = new SampleBuffer();
 
   /** Set of receive listeners that get triggered after every receive attempt */
   protected Set<ReceiveListener> receiveListeners = new LinkedHashSet<>();
 
-  /** Set of tick listeners that get triggered after every tick attempt */
-  protected Set<TickListener> tickListeners = new LinkedHashSet<>();
+  /** Tick listeners that get triggered after tick attempts, mapped to their wake up state */
+  protected Map<TickListener, TickRegistration> tickListeners = new LinkedHashMap<>();
+
+  /** Set of listeners that get triggered whenever the receive horizon changes */
+  protected Set<ReceiveHorizonListener> horizonListeners = new LinkedHashSet<>();
+  /** Lowest receive horizon seen since the horizon listeners were last alerted */
+  private long seenHorizon = Long.MAX_VALUE;
 
   protected ReceiveResult lastReceive = null;
 
@@ -64,6 +74,14 @@ public abstract class Radio {
     this.environment = environment;
   }
 
+  /**
+   * @param purpose What the randomness is used for
+   * @return The radio's time keyed random stream for the purpose in its current environment
+   */
+  protected RandomStream getRandom(Purpose purpose) {
+    return environment.getRandom(id, purpose);
+  }
+
   /**
    * @return The current x coordinate of the radio
    */
@@ -76,6 +94,7 @@ public abstract class Radio {
    */
   public void setX(double x) {
     this.x = x;
+    nodeChanged();
   }
 
   /**
@@ -90,6 +109,7 @@ public abstract class Radio {
    */
   public void setY(double y) {
     this.y = y;
+    nodeChanged();
   }
 
   /**
@@ -104,6 +124,16 @@ public abstract class Radio {
    */
   public void setZ(double z) {
     this.z = z;
+    nodeChanged();
+  }
+
+  /**
+   * Alert the environment the radio is in, if any, that its position or configuration has changed.
+   */
+  protected void nodeChanged() {
+    if (environment != null) {
+      environment.nodeChanged(this);
+    }
   }
 
   /**
@@ -211,10 +241,10 @@ public abstract class Radio {
   public abstract void recv();
 
   /**
-   * @return The current time map
+   * @return Read only view of the held samples as a map from time to partial receive
    */
   public Map<Long, PartialReceive> getTimeMap() {
-    return timeMap;
+    return samples.asMap();
   }
 
   /**
@@ -260,12 +290,18 @@ public abstract class Radio {
   public abstract void tick();
 
   /**
-   * Add a listener that will get triggered on every tick.
+   * Add a listener that will get triggered on every tick it needs, see {@link TickListener}.
    * 
    * @param tickListener Tick listener to add
    */
   public void addTickListener(TickListener tickListener) {
-    tickListeners.add(tickListener);
+    if (!tickListeners.containsKey(tickListener)) {
+      tickListeners.put(tickListener, new TickRegistration(tickListener));
+      // New listener needs ticking straight away
+      if (environment != null) {
+        environment.nodeWoken(this);
+      }
+    }
   }
 
   /**
@@ -278,14 +314,83 @@ public abstract class Radio {
   }
 
   /**
-   * Alert tick listeners.
+   * Alert tick listeners that have reached their wake time or have been woken by a radio event they
+   * are interested in. The wake time of each alerted listener is read straight after its tick.
    */
   protected void alertTickListeners() {
-    for (TickListener tickListener : tickListeners) {
-      tickListener.tick();
+    long time = environment.getTime();
+    for (TickRegistration registration : tickListeners.values()) {
+      if (registration.isWoken(time)) {
+        registration.listener.tick();
+        registration.wakeTime = registration.listener.getNextWakeTime();
+      }
+      registration.observe();
     }
+    // Tick listeners have now seen any receive results the horizon has moved past
+    alertHorizonListeners();
+  }
+
+  /**
+   * @param horizonListener Receive horizon listener to add
+   */
+  public void addReceiveHorizonListener(ReceiveHorizonListener horizonListener) {
+    horizonListeners.add(horizonListener);
   }
 
+  /**
+   * @param horizonListener Receive horizon listener to remove
+   */
+  public void removeReceiveHorizonListener(ReceiveHorizonListener horizonListener) {
+    horizonListeners.remove(horizonListener);
+  }
+
+  /**
+   * Alert all receive horizon listeners if the receive horizon differs from any seen since they
+   * were last alerted, so a listener that read a lower horizon mid tick is alerted once it moves on.
+   */
+  protected void alertHorizonListeners() {
+    if (horizonListeners.isEmpty()) {
+      return;
+    }
+    long horizon = findReceiveHorizon();
+    if (horizon != seenHorizon) {
+      seenHorizon = horizon;
+      for (ReceiveHorizonListener listener : horizonListeners) {
+        listener.receiveHorizonChanged(this, horizon);
+      }
+    }
+  }
+
+  /**
+   * Get the earliest time at which any tick listener attached to the radio needs to be ticked, as
+   * of the last time each listener was ticked. See {@link TickListener#getNextWakeTime()}.
+   * 
+   * @return The next wake time in ms
+   */
+  public long getNextWakeTime() {
+    long wakeTime = Long.MAX_VALUE;
+    for (TickRegistration registration : tickListeners.values()) {
+      wakeTime = Math.min(wakeTime, registration.wakeTime);
+    }
+    return wakeTime;
+  }
+
+  /**
+   * Check whether the radio is idle, i.e. it is not transmitting, receiving or doing any other
+   * timed behaviour and holds no receive data. If there are also no transmissions in the
+   * environment then a tick of an idle radio will only update its time reference.
+   * 
+   * @return Whether the radio is idle
+   */
+  public abstract boolean isIdle();
+
+  /**
+   * Bring an idle radio up to the current environment time without listening or ticking. This is
+   * used in place of {@link #recv()} and {@link #tick()} when the runner skips over a period in
+   * which nothing can happen.
+   */
+  public abstract void fastForward();
+
   /**
    * If the radio is currently transmitting return the transmission object. This object may still be
    * returned even if the transmission has finished but has not been tidied up.
@@ -294,6 +399,34 @@ public abstract class Radio {
    */
   public abstract Transmission getCurrentTransmission();
 
+  /**
+   * @return The transmission that the receiver is synchronised with, null if not synchronised
+   */
+  public abstract Transmission getSyncedSignal();
+
+  /**
+   * @return Whether the radio is currently doing channel activity detection
+   */
+  public abstract boolean isCADMode();
+
+  /**
+   * Get the receive horizon of the radio, the radio can no longer produce a receive result for any
+   * transmission that ended before it. Transmissions being received or held in the radio's samples
+   * end at or after the horizon.
+   * 
+   * @return The receive horizon in ms, Long.MAX_VALUE if the radio holds nothing to receive
+   */
+  public final long getReceiveHorizon() {
+    long horizon = findReceiveHorizon();
+    seenHorizon = Math.min(seenHorizon, horizon);
+    return horizon;
+  }
+
+  /**
+   * @return The current receive horizon in ms, see {@link #getReceiveHorizon()}
+   */
+  protected abstract long findReceiveHorizon();
+
   /**
    * Checks whether this radio can communicate with another radio using the current parameters of
    * each. This should not check any environmental parameters.
@@ -313,4 +446,82 @@ public abstract class Radio {
    */
   public abstract boolean canInterfere(Radio b);
 
+  /**
+   * Get the interference group of the radio's transmissions. Radios in equal groups must interfere
+   * with, and be heard by, exactly the same receivers, so that the environment can decide whether a
+   * receiver can hear a whole group from any one of its members. By default every radio is in a
+   * group of its own.
+   * 
+   * @return Key of the group, compared using equals
+   */
+  public Object getInterferenceGroup() {
+    return this;
+  }
+
+  /**
+   * A tick listener of the radio along with when it next needs ticking and the radio state it last
+   * saw, so that any radio events since can be found.
+   * 
+   * @author David Jones (dsj1n15)
+   */
+  protected final class TickRegistration {
+    /** The listener */
+    private final TickListener listener;
+    /** Radio events the listener is woken by */
+    private final Set<RadioEvent> interests;
+    /** Next wake time of the listener as of its last tick, not ticked yet if Long.MIN_VALUE */
+    private long wakeTime = Long.MIN_VALUE;
+
+    /* Radio state last seen by the listener */
+    private Transmission tx = null;
+    private Transmission synced = null;
+    private ReceiveResult receive = null;
+    private boolean cad = false;
+
+    /**
+     * @param listener The listener to register
+     */
+    private TickRegistration(TickListener listener) {
+      this.listener = listener;
+      this.interests = listener.getInterests();
+    }
+
+    /**
+     * @param time The current time in ms
+     * @return Whether the listener has reached its wake time or an event of interest has happened
+     *         since it last saw the radio
+     */
+    private boolean isWoken(long time) {
+      if (wakeTime <= time) {
+        return true;
+      }
+      Transmission currentTx = getCurrentTransmission();
+      if (currentTx != tx) {
+        if (currentTx != null && interests.contains(RadioEvent.SEND_STARTED)) {
+          return true;
+        }
+        if (tx != null && interests.contains(RadioEvent.SEND_FINISHED)) {
+          return true;
+        }
+      }
+      if (getSyncedSignal() != synced && interests.contains(RadioEvent.SYNC)) {
+        return true;
+      }
+      if (getLastReceive() != receive && interests.contains(RadioEvent.RECEIVE)) {
+        return true;
+      }
+      return cad && !isCADMode() && interests.contains(RadioEvent.CAD_DONE);
+    }
+
+    /**
+     * Record the current radio state as seen by the listener.
+     */
+    private void observe() {
+      tx = getCurrentTransmission();
+      synced = getSyncedSignal();
+      receive = getLastReceive();
+      cad = isCADMode();
+    }
+  }
+
 }
@@ -0,0 +1,21 @@
+package ecs.soton.dsj1n15.smesh.radio;
+
+/**
+ * Changes in the state of a radio that a tick listener can be interested in. A tick listener that
+ * is waiting for its next wake time is still ticked whenever one of the events it is interested in
+ * has happened since it was last ticked.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public enum RadioEvent {
+  /** The radio has started a transmission */
+  SEND_STARTED,
+  /** The radio has finished a transmission */
+  SEND_FINISHED,
+  /** The radio has synchronised with or lost a signal */
+  SYNC,
+  /** The radio has a new receive result */
+  RECEIVE,
+  /** The radio has finished channel activity detection */
+  CAD_DONE
+}
@@ -0,0 +1,20 @@
+package ecs.soton.dsj1n15.smesh.radio;
+
+/**
+ * Listener that gets called whenever the receive horizon of a radio changes, see
+ * {@link Radio#getReceiveHorizon()}. It is called at the end of a tick, after every tick listener
+ * of the radio has been alerted.
+ * 
+ * @author David Jones (dsj1n15)
+ */
+public interface ReceiveHorizonListener {
+
+  /**
+   * Method that gets called when the receive horizon of a radio changes.
+   * 
+   * @param radio The radio
+   * @param horizon The new receive horizon
+   */
+  public void receiveHorizonChanged(Radio radio, long horizon);
+
+}
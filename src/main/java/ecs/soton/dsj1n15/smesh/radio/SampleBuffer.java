@@ -0,0 +1,386 @@
+package ecs.soton.dsj1n15.smesh.radio;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Ring buffer of the samples a radio has listened to, one per time slice, held in parallel
+ * primitive arrays so that listening allocates nothing. Samples must be added in increasing time
+ * order, which allows old samples to be dropped up to a time by moving the head of the buffer. A
+ * sample with no transmission records that nothing receivable was heard in that time slice.<br>
+ * The earliest end time of the transmissions heard in the held samples is kept as samples are
+ * added and dropped, using a queue of the samples whose transmission ends before that of every
+ * later sample.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class SampleBuffer {
+  /** Capacity of the buffer when first created, must be a power of two */
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** Time of each sample */
+  private long[] times = new long[INITIAL_CAPACITY];
+  /** Transmission heard in each sample, null if none */
+  private Transmission[] transmissions = new Transmission[INITIAL_CAPACITY];
+  /** SNR of each sample, NaN if no transmission */
+  private double[] snrs = new double[INITIAL_CAPACITY];
+  /** RSSI of each sample, NaN if no transmission */
+  private double[] rssis = new double[INITIAL_CAPACITY];
+
+  /** Position of the oldest sample in the arrays */
+  private int head = 0;
+  /** Number of held samples */
+  private int size = 0;
+  /** Incremented whenever samples are dropped */
+  private long version = 0;
+  /** Number of samples ever added, the sequence number of the next sample */
+  private long added = 0;
+
+  /** Sequence number of each sample ending before every later sample, as a ring buffer */
+  private long[] endSeqs = new long[INITIAL_CAPACITY];
+  /** End time of the transmission of each sample in endSeqs, increasing from the oldest */
+  private long[] ends = new long[INITIAL_CAPACITY];
+  /** Position of the oldest entry of endSeqs */
+  private int endHead = 0;
+  /** Number of entries of endSeqs */
+  private int endSize = 0;
+
+  /** Read only map view of the samples, created on first use */
+  private SampleMap view;
+
+  /**
+   * Add a sample to the end of the buffer.
+   *
+   * @param time Time of the sample, must be later than every held sample
+   * @param transmission Transmission heard, null if none
+   * @param snr SNR of the transmission
+   * @param rssi RSSI at the time of the sample
+   */
+  public void add(long time, Transmission transmission, double snr, double rssi) {
+    if (size > 0 && time <= getTime(size - 1)) {
+      throw new IllegalArgumentException("Samples must be added in time order");
+    }
+    if (size == times.length) {
+      grow();
+    }
+    int position = (head + size) & (times.length - 1);
+    times[position] = time;
+    transmissions[position] = transmission;
+    snrs[position] = transmission == null ? Double.NaN : snr;
+    rssis[position] = transmission == null ? Double.NaN : rssi;
+    size++;
+    if (transmission != null) {
+      addEnd(added, transmission.endTime);
+    }
+    added++;
+  }
+
+  /**
+   * Queue the end time of a new sample's transmission, removing any queued sample that ends no
+   * earlier as it can never again be the earliest.
+   *
+   * @param seq Sequence number of the sample
+   * @param end End time of the transmission heard in the sample
+   */
+  private void addEnd(long seq, long end) {
+    while (endSize > 0 && ends[endPosition(endSize - 1)] >= end) {
+      endSize--;
+    }
+    if (endSize == endSeqs.length) {
+      long[] newSeqs = new long[endSeqs.length * 2];
+      long[] newEnds = new long[ends.length * 2];
+      for (int i = 0; i < endSize; i++) {
+        newSeqs[i] = endSeqs[endPosition(i)];
+        newEnds[i] = ends[endPosition(i)];
+      }
+      endSeqs = newSeqs;
+      ends = newEnds;
+      endHead = 0;
+    }
+    int position = endPosition(endSize);
+    endSeqs[position] = seq;
+    ends[position] = end;
+    endSize++;
+  }
+
+  /**
+   * @return The earliest end time of the transmissions heard in the held samples, Long.MAX_VALUE
+   *         if none were heard
+   */
+  public long getEarliestEnd() {
+    return endSize == 0 ? Long.MAX_VALUE : ends[endHead];
+  }
+
+  /**
+   * @param index Index of an entry of endSeqs, 0 being the oldest
+   * @return Position of the entry in the arrays
+   */
+  private int endPosition(int index) {
+    return (endHead + index) & (endSeqs.length - 1);
+  }
+
+  /**
+   * @return Number of held samples
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the version of the buffer, which changes whenever samples are dropped. Whilst it is
+   * unchanged samples are only appended, so the index of every held sample stays the same.
+   *
+   * @return The version of the buffer
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * @return Whether no samples are held
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @param index Index of a sample, 0 being the oldest
+   * @return The time of the sample
+   */
+  public long getTime(int index) {
+    return times[position(index)];
+  }
+
+  /**
+   * @param index Index of a sample, 0 being the oldest
+   * @return The transmission heard in the sample, null if none
+   */
+  public Transmission getTransmission(int index) {
+    return transmissions[position(index)];
+  }
+
+  /**
+   * @param index Index of a sample, 0 being the oldest
+   * @return The SNR of the transmission heard in the sample, NaN if none
+   */
+  public double getSNR(int index) {
+    return snrs[position(index)];
+  }
+
+  /**
+   * @param index Index of a sample, 0 being the oldest
+   * @return The RSSI at the time of the sample, NaN if no transmission was heard
+   */
+  public double getRSSI(int index) {
+    return rssis[position(index)];
+  }
+
+  /**
+   * Find the first sample at or after a time.
+   *
+   * @param time Time to search from
+   * @return Index of the first sample with a time not before the given time, the size of the
+   *         buffer if there are none
+   */
+  public int indexFrom(long time) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (getTime(middle) < time) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @param time Time of a sample
+   * @return Index of the sample at the time, -1 if there is none
+   */
+  public int indexOf(long time) {
+    int index = indexFrom(time);
+    return index < size && getTime(index) == time ? index : -1;
+  }
+
+  /**
+   * @param time Time of a sample
+   * @return Whether a sample is held for the time
+   */
+  public boolean contains(long time) {
+    return indexOf(time) >= 0;
+  }
+
+  /**
+   * Drop all samples up to and including a time.
+   *
+   * @param time Time to clear to (inclusive)
+   */
+  public void clearTo(long time) {
+    int count = time == Long.MAX_VALUE ? size : indexFrom(time + 1);
+    for (int i = 0; i < count; i++) {
+      transmissions[position(i)] = null;
+    }
+    head = (head + count) & (times.length - 1);
+    size -= count;
+    if (count > 0) {
+      version++;
+    }
+    // Forget the end times of dropped samples
+    long first = added - size;
+    while (endSize > 0 && endSeqs[endHead] < first) {
+      endHead = (endHead + 1) & (endSeqs.length - 1);
+      endSize--;
+    }
+  }
+
+  /**
+   * Drop all samples.
+   */
+  public void clear() {
+    clearTo(Long.MAX_VALUE);
+    head = 0;
+  }
+
+  /**
+   * Get a read only view of the samples as a map from time to partial receive, in time order. Time
+   * slices where nothing was heard map to null. Partial receives are created as entries are read.
+   *
+   * @return Map view of the samples
+   */
+  public Map<Long, PartialReceive> asMap() {
+    if (view == null) {
+      view = new SampleMap();
+    }
+    return view;
+  }
+
+  /**
+   * @param index Index of a sample, 0 being the oldest
+   * @return The sample as a partial receive, null if no transmission was heard
+   */
+  private PartialReceive toPartialReceive(int index) {
+    Transmission transmission = getTransmission(index);
+    if (transmission == null) {
+      return null;
+    }
+    return new PartialReceive(transmission, getTime(index), getSNR(index), getRSSI(index));
+  }
+
+  /**
+   * @param index Index of a sample, 0 being the oldest
+   * @return Position of the sample in the arrays
+   */
+  private int position(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return (head + index) & (times.length - 1);
+  }
+
+  /**
+   * Double the capacity of the buffer, moving the oldest sample to the start of the arrays.
+   */
+  private void grow() {
+    int capacity = times.length * 2;
+    long[] newTimes = new long[capacity];
+    Transmission[] newTransmissions = new Transmission[capacity];
+    double[] newSNRs = new double[capacity];
+    double[] newRSSIs = new double[capacity];
+    for (int i = 0; i < size; i++) {
+      int position = position(i);
+      newTimes[i] = times[position];
+      newTransmissions[i] = transmissions[position];
+      newSNRs[i] = snrs[position];
+      newRSSIs[i] = rssis[position];
+    }
+    times = newTimes;
+    transmissions = newTransmissions;
+    snrs = newSNRs;
+    rssis = newRSSIs;
+    head = 0;
+  }
+
+  @Override
+  public String toString() {
+    long[] held = new long[size];
+    for (int i = 0; i < size; i++) {
+      held[i] = getTime(i);
+    }
+    return "SampleBuffer [times=" + Arrays.toString(held) + "]";
+  }
+
+  /**
+   * Read only map view of the samples.
+   *
+   * @author David Jones (dsj1n15)
+   */
+  private class SampleMap extends AbstractMap<Long, PartialReceive> {
+
+    @Override
+    public PartialReceive get(Object key) {
+      if (!(key instanceof Long)) {
+        return null;
+      }
+      int index = indexOf((Long) key);
+      return index < 0 ? null : toPartialReceive(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return key instanceof Long && contains((Long) key);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public Set<Entry<Long, PartialReceive>> entrySet() {
+      return new AbstractSet<Entry<Long, PartialReceive>>() {
+        @Override
+        public Iterator<Entry<Long, PartialReceive>> iterator() {
+          return new SampleIterator();
+        }
+
+        @Override
+        public int size() {
+          return size;
+        }
+      };
+    }
+  }
+
+  /**
+   * Iterator over the samples as map entries.
+   *
+   * @author David Jones (dsj1n15)
+   */
+  private class SampleIterator implements Iterator<Map.Entry<Long, PartialReceive>> {
+    /** Index of the next sample */
+    private int next = 0;
+
+    @Override
+    public boolean hasNext() {
+      return next < size;
+    }
+
+    @Override
+    public Map.Entry<Long, PartialReceive> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      int index = next++;
+      return new AbstractMap.SimpleImmutableEntry<>(getTime(index), toPartialReceive(index));
+    }
+  }
+
+}
@@ -1,8 +1,13 @@
 package ecs.soton.dsj1n15.smesh.radio;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Listener that gets called every time the radios 'tick' method is called.<br>
- * All extra radio behaviour, such as protocols, can be attached using a tick listener.
+ * All extra radio behaviour, such as protocols, can be attached using a tick listener. A listener
+ * that gives a next wake time is only called once that time is reached, or sooner if a radio event
+ * it is interested in happens.
  * 
  * @author David Jones (dsj1n15)
  */
@@ -13,4 +18,27 @@ public interface TickListener {
    */
   public void tick();
 
+  /**
+   * Get the earliest time at which a tick could cause the listener to do something, assuming that
+   * none of the radio events it is interested in happen. Ticks before this time are skipped. The
+   * wake time is read after every call to {@link #tick()} so must only change during a tick or
+   * with one of the radio events. By default a listener is assumed to need every tick.
+   * 
+   * @return The next wake time in ms, Long.MIN_VALUE if every tick is required or Long.MAX_VALUE if
+   *         the listener has no scheduled behaviour
+   */
+  public default long getNextWakeTime() {
+    return Long.MIN_VALUE;
+  }
+
+  /**
+   * Get the radio events that wake the listener before its next wake time. Read once when the
+   * listener is added to a radio. By default a listener is interested in every event.
+   * 
+   * @return The radio events of interest
+   */
+  public default Set<RadioEvent> getInterests() {
+    return EnumSet.allOf(RadioEvent.class);
+  }
+
 }
@@ -0,0 +1,24 @@
+package ecs.soton.dsj1n15.smesh.radio;
+
+/**
+ * Listener that gets called whenever a transmission starts or ends in an environment.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public interface TransmissionListener {
+
+  /**
+   * Method that gets called when a radio starts a transmission.
+   *
+   * @param transmission The transmission that has started
+   */
+  public default void transmissionStarted(Transmission transmission) {}
+
+  /**
+   * Method that gets called when a transmission has finished and been cleared by its sender.
+   *
+   * @param transmission The transmission that has ended
+   */
+  public default void transmissionEnded(Transmission transmission) {}
+
+}
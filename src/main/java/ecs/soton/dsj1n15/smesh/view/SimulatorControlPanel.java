@@ -7,6 +7,7 @@ import javax.swing.border.BevelBorder;
 import com.rits.cloning.Cloner;
 import ecs.soton.dsj1n15.smesh.controller.EnvironmentRunner;
 import ecs.soton.dsj1n15.smesh.controller.EnvironmentRunnerListener;
+import ecs.soton.dsj1n15.smesh.model.SimulationContext;
 import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
 import ecs.soton.dsj1n15.smesh.model.lora.protocol.Protocol;
 import ecs.soton.dsj1n15.smesh.model.lora.protocol.adaptive.AdaptiveBroadcastProtocol;
@@ -55,6 +56,8 @@ public class SimulatorControlPanel extends JScrollPane {
 
   private final EnvironmentRunner runner;
   private final SimulatorViewPanel pnlView;
+  /** Context shared by all loaded presets so randomness continues between reloads */
+  private final SimulationContext context = new SimulationContext();
   private ViewUpdater viewUpdater = new ViewUpdater();
 
   private JComboBox<String> cboPreset;
@@ -414,8 +417,10 @@ public class SimulatorControlPanel extends JScrollPane {
     btnRun.addActionListener(x -> {
       if (runner.isRunning()) {
         runner.stop();
-        while (runner.isRunning()) {
-          // Wait until stopped
+        try {
+          runner.awaitIdle();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
         }
         loadEnvironment();
       } else {
@@ -526,9 +531,10 @@ public class SimulatorControlPanel extends JScrollPane {
     }
 
     Cloner cloner = new Cloner();
+    cloner.dontCloneInstanceOf(SimulationContext.class);
     Preset preset = cloner.deepClone(presets.get(strPreset));
     // Regenerate the preset in case it has any random effects
-    preset.generate();
+    preset.setContext(context);
 
     pnlView.setEnvironment(preset.getEnvironment());
     runner.clearEvents();
@@ -5,16 +5,18 @@ import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import org.apache.commons.lang3.StringUtils;
 import ecs.soton.dsj1n15.smesh.controller.EnvironmentRunner;
-import ecs.soton.dsj1n15.smesh.lib.Debugger;
+import ecs.soton.dsj1n15.smesh.model.SimulationContext;
 import ecs.soton.dsj1n15.smesh.model.environment.Environment;
 import ecs.soton.dsj1n15.smesh.model.lora.protocol.adaptive.AdaptiveBroadcastProtocol;
-import ecs.soton.dsj1n15.smesh.model.lora.protocol.adaptive.AdaptiveTickListener;
+import ecs.soton.dsj1n15.smesh.model.lora.protocol.adaptive.AdaptiveTuning;
 import ecs.soton.dsj1n15.smesh.model.presets.LargeDataBroadcastTest;
 import ecs.soton.dsj1n15.smesh.model.presets.LargeDataBroadcastTest.EnvironmentMode;
 import ecs.soton.dsj1n15.smesh.model.presets.Preset;
 import ecs.soton.dsj1n15.smesh.view.EnvironmentDrawer;
 
 public class AdaptiveProtocolTest {
+  /** Context shared by all runs of the test */
+  private final SimulationContext context = new SimulationContext();
 
   /**
    * The main method.<br>
@@ -23,7 +25,6 @@ public class AdaptiveProtocolTest {
    * @param args Passed arguments [Program uses no arguments]
    */
   public static void main(String[] args) {
-    Debugger.setOutputEnabled(true);
     AdaptiveProtocolTest apt = new AdaptiveProtocolTest();
     apt.run(EnvironmentMode.NO_FOREST);
     apt.run(EnvironmentMode.ALL_FOREST);
@@ -45,18 +46,17 @@ public class AdaptiveProtocolTest {
     // Make the test environment
     Preset preset = new LargeDataBroadcastTest(null, getXCount(), getYCount(), getSeparation(),
         getRandom(), em);
+    preset.setContext(context);
     Environment environment = preset.getEnvironment();
     runner.setEnvironment(environment);
     // Instantiate the protocol handler, this will handle setting of the correct data rate
-    AdaptiveTickListener.ANNOUNCEMENT_PACKET_COUNT = 1;
-    AdaptiveTickListener.HEARTBEAT_ENABLED = true;
-    AdaptiveTickListener.TARGET_CHEAT = false;
+    AdaptiveTuning tuning = context.getAdaptiveTuning();
+    tuning.setAnnouncementPacketCount(1);
+    tuning.setHeartbeatEnabled(true);
+    tuning.setTargetCheat(false);
     AdaptiveBroadcastProtocol abp = new AdaptiveBroadcastProtocol(environment, getDataRate());
     // Execute runner
-    runner.addUnitsToRun((long) Math.ceil(executionTime / (double) unit));
-    while (runner.isRunning()) {
-      // Wait until finished
-    }
+    runner.runFor(executionTime);
 
     // Print test environment to file
     EnvironmentDrawer.imgExport(environment);
@@ -87,7 +87,6 @@ public class AdaptiveProtocolTest {
     } catch (FileNotFoundException e) {
       e.printStackTrace();
     }
-    runner.getExecutionThread().interrupt();
   }
 
   /**
@@ -3,8 +3,7 @@ package ecs.soton.dsj1n15.smesh;
 import java.util.ArrayList;
 import java.util.List;
 import ecs.soton.dsj1n15.smesh.controller.EnvironmentRunner;
-import ecs.soton.dsj1n15.smesh.lib.Debugger;
-import ecs.soton.dsj1n15.smesh.lib.Utilities;
+import ecs.soton.dsj1n15.smesh.model.SimulationContext;
 import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
 import ecs.soton.dsj1n15.smesh.model.presets.CollisionVerificationPreset;
 
@@ -21,18 +20,17 @@ public class CollisionTest {
    * @param args No args
    */
   public static void main(String[] args) {
-    Debugger.setOutputEnabled(false);
     CollisionTest ct = new CollisionTest();
     // Datarates to execute
     int[] drs = {0, 1, 2, 3, 4, 5};
     // Need to use some random seeds where general packet failures from demodulation curve don't
-    // happen. This is a pain but is unavoidable and doesn't affect test validity.
-    int[] seeds = {10, 0, 500, 0, 0, 0};
+    // happen. This is a pain but is unavoidable and doesn't affect test validity. Seeds must be
+    // picked again whenever the draws made from the random streams change.
+    int[] seeds = {10, 0, 500, 0, 1, 0};
     List<Boolean> testResults = new ArrayList<>();
     for (int dr : drs) {
-      Utilities.RANDOM.setSeed(seeds[dr]);
       LoRaCfg cfg = LoRaCfg.getDatarate(dr);
-      boolean success = ct.run(cfg);
+      boolean success = ct.run(cfg, seeds[dr]);
       testResults.add(success);
       System.out.println("\n--------------------------------\n");
     }
@@ -54,30 +52,25 @@ public class CollisionTest {
    * Run a single collision test preset for the given configuration.
    * 
    * @param cfg Configuration to test
+   * @param seed Seed to run the test with
    * @return Whether the test passed
    */
-  public boolean run(LoRaCfg cfg) {
+  public boolean run(LoRaCfg cfg, long seed) {
     // Create a runner
     EnvironmentRunner runner = new EnvironmentRunner();
     int unit = getExecutionUnit();
     runner.setTimeUnit(unit);
     // Make the test environment
+    SimulationContext context = new SimulationContext(seed);
+    context.getDebugger().setOutputEnabled(false);
     CollisionVerificationPreset cvp = new CollisionVerificationPreset(cfg);
+    cvp.setContext(context);
     runner.setEnvironment(cvp.getEnvironment());
     runner.addEvents(cvp.getEvents());
 
     // Execute runner
     long executionTime = cvp.getTestLength();
-    runner.addUnitsToRun((long) Math.ceil(executionTime / (double) unit));
-    while (runner.isRunning()) {
-      // Wait until finished
-    }
-    runner.getExecutionThread().interrupt();
-    try {
-      runner.getExecutionThread().join();
-    } catch (InterruptedException e) {
-      // no behaviour necessary
-    }
+    runner.runFor(executionTime);
     return cvp.hasPassed();
   }
 
@@ -8,8 +8,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import ecs.soton.dsj1n15.smesh.controller.EnvironmentRunner;
-import ecs.soton.dsj1n15.smesh.lib.Debugger;
 import ecs.soton.dsj1n15.smesh.lib.Utilities;
+import ecs.soton.dsj1n15.smesh.model.SimulationContext;
 import ecs.soton.dsj1n15.smesh.model.environment.Environment;
 import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
 import ecs.soton.dsj1n15.smesh.model.presets.Preset;
@@ -31,7 +31,6 @@ public class FreeSpacePlot {
    * @param args Passed arguments [Program uses no arguments]
    */
   public static void main(String[] args) {
-    Debugger.setOutputEnabled(false);
     List<LoRaCfg> cfgs = new ArrayList<>();
     cfgs.add(LoRaCfg.getDataRate5());
     cfgs.add(LoRaCfg.getDataRate4());
@@ -89,6 +88,9 @@ public class FreeSpacePlot {
     // Create a runner with 5ms granularity
     EnvironmentRunner runner = new EnvironmentRunner();
     runner.setTimeUnit(10);
+    // Share a context between attempts so each sees different randomness
+    SimulationContext context = new SimulationContext();
+    context.getDebugger().setOutputEnabled(false);
     // Sweep through the distances, with a given number of attempts at each
     final int exp = getAttempts();
     final int maxFails = 5;
@@ -99,23 +101,17 @@ public class FreeSpacePlot {
       double avgRSSI = 0;
       for (int n = 0; n < exp; n++) {
         Preset preset = new TwoNode(distance, cfg);
+        preset.setContext(context);
         Environment environment = preset.getEnvironment();
         runner.clearEvents();
         runner.addEvents(preset.getEvents());
         TestListener listener = new TestListener();
         environment.getNode(2).addReceiveListener(listener);
         runner.setEnvironment(environment);
-        for (int t = 0; t < 20000; t++) {
-          runner.addUnitsToRun(1);
-          while (runner.isRunning()) {
-            // Wait for run to execute
-          }
-          if (listener.gotPacket) {
-            recv++;
-            avgSNR += Utilities.dbm2mw(listener.result.snr);
-            avgRSSI += Utilities.dbm2mw(listener.result.rssi);
-            break;
-          }
+        if (runner.runUntil(() -> listener.gotPacket, 20000L * runner.getTimeUnit())) {
+          recv++;
+          avgSNR += Utilities.dbm2mw(listener.result.snr);
+          avgRSSI += Utilities.dbm2mw(listener.result.rssi);
         }
       }
       exps.put(distance, exp);
@@ -127,8 +123,6 @@ public class FreeSpacePlot {
       }
       distance += step;
     }
-    // Stop the test
-    runner.getExecutionThread().interrupt();
   }
 
   /**
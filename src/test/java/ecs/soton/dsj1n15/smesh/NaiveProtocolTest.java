@@ -5,7 +5,7 @@ import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import org.apache.commons.lang3.StringUtils;
 import ecs.soton.dsj1n15.smesh.controller.EnvironmentRunner;
-import ecs.soton.dsj1n15.smesh.lib.Debugger;
+import ecs.soton.dsj1n15.smesh.model.SimulationContext;
 import ecs.soton.dsj1n15.smesh.model.environment.Environment;
 import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
 import ecs.soton.dsj1n15.smesh.model.lora.protocol.naive.NaiveBroadcastProtocol;
@@ -15,6 +15,8 @@ import ecs.soton.dsj1n15.smesh.model.presets.Preset;
 import ecs.soton.dsj1n15.smesh.view.EnvironmentDrawer;
 
 public class NaiveProtocolTest {
+  /** Context shared by all runs of the test */
+  private final SimulationContext context = new SimulationContext();
 
   /**
    * The main method.<br>
@@ -23,8 +25,8 @@ public class NaiveProtocolTest {
    * @param args Passed arguments [Program uses no arguments]
    */
   public static void main(String[] args) {
-    Debugger.setOutputEnabled(false);
     NaiveProtocolTest npt = new NaiveProtocolTest();
+    npt.context.getDebugger().setOutputEnabled(false);
     LoRaCfg cfg = LoRaCfg.getDataRate1();
     npt.run(cfg, EnvironmentMode.NO_FOREST);
     npt.run(cfg, EnvironmentMode.ALL_FOREST);
@@ -47,6 +49,7 @@ public class NaiveProtocolTest {
     // Make the test environment
     Preset preset =
         new LargeDataBroadcastTest(cfg, getXCount(), getYCount(), getSeparation(), getRandom(), em);
+    preset.setContext(context);
     Environment environment = preset.getEnvironment();
     runner.setEnvironment(environment);
     double dutyCycle = getDutyCycle();
@@ -54,10 +57,7 @@ public class NaiveProtocolTest {
     NaiveBroadcastProtocol nbp = new NaiveBroadcastProtocol(environment, dutyCycle, false);
     // runner.addEvents(preset.getEvents());
     // Execute runner
-    runner.addUnitsToRun((long) Math.ceil(executionTime / (double) unit));
-    while (runner.isRunning()) {
-      // Wait until finished
-    }
+    runner.runFor(executionTime);
 
     // Print test environment to file
     EnvironmentDrawer.imgExport(environment);
@@ -88,7 +88,6 @@ public class NaiveProtocolTest {
     } catch (FileNotFoundException e) {
       e.printStackTrace();
     }
-    runner.getExecutionThread().interrupt();
   }
 
   /**
@@ -2,7 +2,6 @@ package ecs.soton.dsj1n15.smesh;
 
 import java.awt.EventQueue;
 import javax.swing.UIManager;
-import ecs.soton.dsj1n15.smesh.lib.Debugger;
 import ecs.soton.dsj1n15.smesh.view.SimulatorFrame;
 
 /**
@@ -29,7 +28,6 @@ public class TestSimulator {
       @Override
       public void run() {
         try {
-          Debugger.setOutputEnabled(true);
           SimulatorFrame frame = new SimulatorFrame();
           frame.setVisible(true);
         } catch (Exception e) {
@@ -0,0 +1,129 @@
+package ecs.soton.dsj1n15.smesh;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import ecs.soton.dsj1n15.smesh.controller.EnvironmentRunner;
+import ecs.soton.dsj1n15.smesh.controller.Event;
+import ecs.soton.dsj1n15.smesh.controller.TransmissionEvent;
+import ecs.soton.dsj1n15.smesh.model.SimulationContext;
+import ecs.soton.dsj1n15.smesh.model.environment.Environment;
+import ecs.soton.dsj1n15.smesh.model.environment.Environment.FreeSpaceModelType;
+import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
+import ecs.soton.dsj1n15.smesh.model.lora.LoRaRadio;
+import ecs.soton.dsj1n15.smesh.model.lora.ReceiveMode;
+import ecs.soton.dsj1n15.smesh.radio.Packet;
+import ecs.soton.dsj1n15.smesh.radio.ReceiveResult;
+import junit.framework.TestCase;
+
+/**
+ * Test that the interval receive mode gives the same outcomes at every time unit the simulator
+ * offers. Transmissions are sent at times every time unit can represent, so only the time slices
+ * that receivers are evaluated in change between runs.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class TimeUnitTest extends TestCase {
+  /** Time between rounds of transmissions */
+  private static final int ROUND_LENGTH = 1000;
+  /** Number of rounds of transmissions */
+  private static final int ROUNDS = 60;
+
+  /**
+   * Every time unit receives the same transmissions with the same outcomes.
+   */
+  public void testOutcomesMatchAcrossTimeUnits() {
+    assertSameOutcomes(LoRaCfg.getDatarate(3));
+  }
+
+  /**
+   * The shortest packets end well within a coarse time unit and still give the same outcomes.
+   */
+  public void testShortPacketOutcomesMatchAcrossTimeUnits() {
+    assertSameOutcomes(LoRaCfg.getDatarate(5));
+  }
+
+  /**
+   * Check every node gives the same receive results at every time unit as at the finest.
+   *
+   * @param cfg Configuration of every node
+   */
+  private void assertSameOutcomes(LoRaCfg cfg) {
+    List<Integer> units = new EnvironmentRunner().getTimeUnitOptions();
+    Map<Integer, List<String>> expected = run(cfg, units.get(0));
+    int receives = 0;
+    for (List<String> results : expected.values()) {
+      receives += results.size();
+    }
+    assertTrue("Too few receives to compare", receives > ROUNDS);
+    for (int unit : units) {
+      Map<Integer, List<String>> actual = run(cfg, unit);
+      for (int id : expected.keySet()) {
+        assertEquals(String.format("Node %d at %dms", id, unit), expected.get(id), actual.get(id));
+      }
+    }
+  }
+
+  /**
+   * Send a fixed schedule of overlapping transmissions between a line of nodes receiving by
+   * interval.
+   *
+   * @param cfg Configuration of every node
+   * @param unit Time unit to run with
+   * @return Every receive result of each node by ID, in the order the node gave them
+   */
+  private Map<Integer, List<String>> run(LoRaCfg cfg, int unit) {
+    EnvironmentRunner runner = new EnvironmentRunner();
+    runner.setTimeUnit(unit);
+    SimulationContext context = new SimulationContext(0);
+    context.getDebugger().setOutputEnabled(false);
+    context.setReceiveMode(ReceiveMode.INTERVAL);
+    Environment environment = new Environment(FreeSpaceModelType.EFSPL, context);
+    // Senders and listen only nodes alternate along a line, so receivers hear a mix of strengths
+    List<LoRaRadio> senders = new ArrayList<>();
+    Map<Integer, List<String>> results = new TreeMap<>();
+    for (int i = 0; i < 8; i++) {
+      LoRaRadio radio = context.createLoRaRadio(i, cfg);
+      radio.setX(i * 150);
+      environment.addNode(radio);
+      if (i % 2 == 0) {
+        senders.add(radio);
+      }
+      List<String> receives = new ArrayList<>();
+      results.put(radio.getID(), receives);
+      radio.addReceiveListener(receive -> receives.add(describe(receive)));
+    }
+    runner.setEnvironment(environment);
+    // Send at whole rounds of the coarsest unit, each event runs in the slice before the send
+    Random random = new Random(1);
+    Map<Long, List<Event>> events = new HashMap<>();
+    for (int round = 1; round <= ROUNDS; round++) {
+      for (LoRaRadio sender : senders) {
+        if (random.nextInt(3) == 0) {
+          continue;
+        }
+        long time = round * ROUND_LENGTH + random.nextInt(4) * 100;
+        Packet packet = new Packet(1 + random.nextInt(cfg.getSF() < 9 ? 8 : 16));
+        events.computeIfAbsent(time - 1, t -> new ArrayList<>())
+            .add(new TransmissionEvent(sender, packet));
+      }
+    }
+    runner.addEvents(events);
+    runner.runFor((ROUNDS + 1) * ROUND_LENGTH);
+    assertEquals((ROUNDS + 1) * ROUND_LENGTH, environment.getTime());
+    return results;
+  }
+
+  /**
+   * @param receive A receive result
+   * @return Description of the result that does not depend on when it was given
+   */
+  private static String describe(ReceiveResult receive) {
+    return String.format("%d@%d %s %s %d", receive.transmission.sender.getID(),
+        receive.transmission.startTime, receive.status, receive.metadataStatus, receive.time);
+  }
+
+}
@@ -0,0 +1,129 @@
+package ecs.soton.dsj1n15.smesh.controller;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import ecs.soton.dsj1n15.smesh.model.environment.Environment;
+import ecs.soton.dsj1n15.smesh.model.environment.Environment.FreeSpaceModelType;
+import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
+import ecs.soton.dsj1n15.smesh.model.lora.LoRaRadio;
+import ecs.soton.dsj1n15.smesh.model.lora.protocol.naive.NaiveBroadcastProtocol;
+import ecs.soton.dsj1n15.smesh.model.presets.Preset;
+import ecs.soton.dsj1n15.smesh.radio.Radio;
+import junit.framework.TestCase;
+
+/**
+ * Test that islands split by configuration are run independently, and that a radio reconfigured
+ * on to another channel stops its island as soon as it changes.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class IslandExecutorTest extends TestCase {
+  /** Time to run each simulation for */
+  private static final long RUN_TIME = 60 * 1000;
+  /** Time the first node is reconfigured at, if it is */
+  private static final long RECONFIGURE_TIME = 5000;
+
+  /**
+   * Nodes on different channels are split into separate islands and run to completion.
+   */
+  public void testChannelsSplitIntoIslands() {
+    IslandExecutor executor = createExecutor(false, new AtomicBoolean());
+    executor.run(0);
+    assertEquals(2, executor.getIslands().size());
+  }
+
+  /**
+   * Reconfiguring a radio on to another channel throws before its island runs any further.
+   */
+  public void testReconfigurationFailsImmediately() {
+    AtomicBoolean continued = new AtomicBoolean();
+    IslandExecutor executor = createExecutor(true, continued);
+    try {
+      executor.run(0);
+      fail("Reconfiguration was not detected");
+    } catch (IllegalStateException e) {
+      assertFalse("Island ran on after reconfiguration", continued.get());
+    }
+  }
+
+  /**
+   * @param reconfigure Whether the first node is moved on to the other channel during the run
+   * @param continued Set if the first node's island runs on after it would be reconfigured
+   * @return Configuration aware executor of two pairs of nearby nodes on different channels
+   */
+  private static IslandExecutor createExecutor(boolean reconfigure, AtomicBoolean continued) {
+    IslandExecutor executor = new IslandExecutor(context -> {
+      Preset preset = new TwoChannels(reconfigure, continued);
+      preset.setContext(context);
+      return preset;
+    }, environment -> new NaiveBroadcastProtocol(environment, 0.1, false), RUN_TIME);
+    executor.setConfigurationAware(true);
+    executor.setParallelism(2);
+    return executor;
+  }
+
+  /**
+   * Two pairs of nodes close together, each pair on its own channel.
+   *
+   * @author David Jones (dsj1n15)
+   */
+  private static class TwoChannels extends Preset {
+    /** Frequency of each pair of nodes */
+    private static final double[] FREQUENCIES = {868.1, 868.5};
+
+    private final boolean reconfigure;
+    private final AtomicBoolean continued;
+
+    public TwoChannels(boolean reconfigure, AtomicBoolean continued) {
+      this.reconfigure = reconfigure;
+      this.continued = continued;
+    }
+
+    @Override
+    public void generate() {
+      environment = new Environment(FreeSpaceModelType.EFSPL, context);
+      for (int i = 0; i < 4; i++) {
+        LoRaCfg cfg = LoRaCfg.getDatarate(5);
+        cfg.setFreq(FREQUENCIES[i / 2]);
+        LoRaRadio radio = generateLoRaRadio(i, cfg);
+        radio.setX(i * 50);
+        radio.setZ(DEFAULT_NODE_Z);
+        environment.addNode(radio);
+      }
+      if (reconfigure) {
+        LoRaRadio radio = (LoRaRadio) environment.getNode(0);
+        addEvent(RECONFIGURE_TIME, new ActionEvent(radio, () -> {
+          LoRaCfg cfg = new LoRaCfg(radio.getLoRaCfg());
+          cfg.setFreq(FREQUENCIES[1]);
+          radio.setLoRaCfg(cfg);
+        }));
+        addEvent(RECONFIGURE_TIME + 1000, new ActionEvent(radio, () -> continued.set(true)));
+      }
+    }
+  }
+
+  /**
+   * Event running an action on a single radio.
+   *
+   * @author David Jones (dsj1n15)
+   */
+  private static class ActionEvent implements Event {
+    private final Radio radio;
+    private final Runnable action;
+
+    public ActionEvent(Radio radio, Runnable action) {
+      this.radio = radio;
+      this.action = action;
+    }
+
+    @Override
+    public void execute() {
+      action.run();
+    }
+
+    @Override
+    public Radio getRadio() {
+      return radio;
+    }
+  }
+
+}
@@ -0,0 +1,141 @@
+package ecs.soton.dsj1n15.smesh.controller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import ecs.soton.dsj1n15.smesh.controller.TimerWheel.Timer;
+import junit.framework.TestCase;
+
+/**
+ * Test that the timer wheel expires the same items at the same times as a sorted map of due times,
+ * with timers spread across every level of the wheel.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class TimerWheelTest extends TestCase {
+  /** Number of random operations of each sequence */
+  private static final int OPERATIONS = 50000;
+
+  /**
+   * Timers due soon after the current time, advanced in small steps.
+   */
+  public void testNearTimersMatchMap() {
+    assertMatchesMap(1, 0, 200, 50);
+  }
+
+  /**
+   * Timers due at every scale, advanced both in small steps and in large jumps.
+   */
+  public void testFarTimersMatchMap() {
+    assertMatchesMap(2, 1000, 1L << 40, 1L << 36);
+  }
+
+  /**
+   * Timers scheduled from a late start time, so moves carry into high digits.
+   */
+  public void testLateStartMatchesMap() {
+    assertMatchesMap(3, (1L << 48) - 5, 1L << 20, 1L << 14);
+  }
+
+  /**
+   * Timers must be due after the current time and the wheel cannot move backwards.
+   */
+  public void testInvalidTimesAreRejected() {
+    TimerWheel<String> wheel = new TimerWheel<>(10);
+    try {
+      wheel.schedule(10, "now");
+      fail("Timer due at the current time was scheduled");
+    } catch (IllegalArgumentException e) {
+      assertTrue(wheel.isEmpty());
+    }
+    try {
+      wheel.advance(9);
+      fail("Wheel moved backwards");
+    } catch (IllegalArgumentException e) {
+      assertEquals(10, wheel.getTime());
+    }
+  }
+
+  /**
+   * Apply random operations to a wheel and a map of due times, comparing them after every
+   * operation.
+   *
+   * @param seed Seed of the operations
+   * @param start Time the wheel starts at
+   * @param maxDelay Largest delay to schedule a timer with, delays are spread over every scale
+   * @param maxStep Largest step to advance the wheel by, steps are spread over every scale
+   */
+  private void assertMatchesMap(long seed, long start, long maxDelay, long maxStep) {
+    Random random = new Random(seed);
+    TimerWheel<Integer> wheel = new TimerWheel<>(start);
+    TreeMap<Long, List<Integer>> expected = new TreeMap<>();
+    Map<Integer, Timer<Integer>> timers = new HashMap<>();
+    List<Integer> held = new ArrayList<>();
+    int expiries = 0;
+    for (int op = 0; op < OPERATIONS; op++) {
+      int choice = random.nextInt(10);
+      if (choice < 5) {
+        long time = wheel.getTime() + 1 + randomScale(random, maxDelay);
+        Timer<Integer> timer = wheel.schedule(time, op);
+        assertEquals(time, timer.getTime());
+        assertTrue(timer.isScheduled());
+        expected.computeIfAbsent(time, t -> new ArrayList<>()).add(op);
+        timers.put(op, timer);
+        held.add(op);
+      } else if (choice < 7 && !held.isEmpty()) {
+        int item = held.remove(random.nextInt(held.size()));
+        Timer<Integer> timer = timers.remove(item);
+        wheel.cancel(timer);
+        assertFalse(timer.isScheduled());
+        List<Integer> due = expected.get(timer.getTime());
+        due.remove((Integer) item);
+        if (due.isEmpty()) {
+          expected.remove(timer.getTime());
+        }
+        // Cancelling again is ignored
+        wheel.cancel(timer);
+      } else {
+        long time = wheel.getTime() + randomScale(random, maxStep);
+        List<Integer> expired = wheel.advance(time);
+        assertEquals(time, wheel.getTime());
+        List<Integer> expectedExpired = new ArrayList<>();
+        for (List<Integer> due : expected.headMap(time, true).values()) {
+          expectedExpired.addAll(due);
+        }
+        expected.headMap(time, true).clear();
+        // Items due at the same time may expire in any order
+        long last = Long.MIN_VALUE;
+        for (int item : expired) {
+          Timer<Integer> timer = timers.remove(item);
+          assertNotNull("Item expired twice or after being cancelled", timer);
+          assertFalse(timer.isScheduled());
+          assertTrue("Items expired out of order", timer.getTime() >= last);
+          last = timer.getTime();
+        }
+        assertEquals(expectedExpired.size(), expired.size());
+        assertTrue(expired.containsAll(expectedExpired));
+        held.removeAll(expired);
+        expiries += expired.size();
+      }
+      assertEquals(held.size(), wheel.size());
+      assertEquals(held.isEmpty(), wheel.isEmpty());
+      assertEquals(expected.isEmpty() ? Long.MAX_VALUE : expected.firstKey(), wheel.nextExpiry());
+    }
+    assertTrue("Too few timers expired to compare", expiries > OPERATIONS / 10);
+  }
+
+  /**
+   * @param random Source of randomness
+   * @param max Largest value
+   * @return A value up to the maximum with a uniformly random number of bits
+   */
+  private static long randomScale(Random random, long max) {
+    int bits = Long.SIZE - Long.numberOfLeadingZeros(max);
+    long bound = Math.min(max, 1L << random.nextInt(bits + 1));
+    return (random.nextLong() & Long.MAX_VALUE) % (bound + 1);
+  }
+
+}
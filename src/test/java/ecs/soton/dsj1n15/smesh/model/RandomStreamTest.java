@@ -0,0 +1,130 @@
+package ecs.soton.dsj1n15.smesh.model;
+
+import ecs.soton.dsj1n15.smesh.model.RandomStream.Purpose;
+import ecs.soton.dsj1n15.smesh.model.environment.Environment;
+import ecs.soton.dsj1n15.smesh.model.environment.Environment.FreeSpaceModelType;
+import junit.framework.TestCase;
+
+/**
+ * Test that random streams give draws that only depend on their key, the time and the draws
+ * already made at that time, and that the draws are uniform.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class RandomStreamTest extends TestCase {
+  /** Number of draws to check the distribution with */
+  private static final int SAMPLES = 100000;
+  /** Number of equal width buckets to check the distribution with */
+  private static final int BUCKETS = 20;
+
+  private Environment environment;
+
+  @Override
+  protected void setUp() {
+    environment = new Environment(FreeSpaceModelType.EFSPL, new SimulationContext(0));
+  }
+
+  /**
+   * Streams with the same key give the same draws at the same time.
+   */
+  public void testSameKeyGivesSameDraws() {
+    RandomStream a = new RandomStream(1, 2, Purpose.RECEIVE, environment);
+    RandomStream b = new RandomStream(1, 2, Purpose.RECEIVE, environment);
+    for (long time = 0; time < 100; time += 10) {
+      environment.setTime(time);
+      for (int i = 0; i < 5; i++) {
+        assertEquals(a.nextLong(), b.nextLong());
+      }
+    }
+  }
+
+  /**
+   * Draws restart at every time, so they do not depend on how many draws were made before it.
+   */
+  public void testDrawsOnlyDependOnDrawsAtTheSameTime() {
+    RandomStream busy = new RandomStream(1, 2, Purpose.RECEIVE, environment);
+    RandomStream idle = new RandomStream(1, 2, Purpose.RECEIVE, environment);
+    environment.setTime(10);
+    for (int i = 0; i < 7; i++) {
+      busy.nextDouble();
+    }
+    environment.setTime(20);
+    double expected = busy.nextDouble();
+    assertEquals(expected, idle.nextDouble());
+    // Drawing at a time again continues its counter from where it was left
+    assertEquals(busy.nextDouble(), idle.nextDouble());
+    assertFalse(expected == idle.nextDouble());
+  }
+
+  /**
+   * The seed, owner and purpose each give different draws.
+   */
+  public void testKeysGiveDifferentDraws() {
+    environment.setTime(10);
+    double draw = new RandomStream(1, 2, Purpose.RECEIVE, environment).nextDouble();
+    assertFalse(draw == new RandomStream(3, 2, Purpose.RECEIVE, environment).nextDouble());
+    assertFalse(draw == new RandomStream(1, 4, Purpose.RECEIVE, environment).nextDouble());
+    assertFalse(draw == new RandomStream(1, 2, Purpose.WANTED, environment).nextDouble());
+  }
+
+  /**
+   * Keyed draws only depend on their arguments and do not move the stream on.
+   */
+  public void testKeyedDrawsArePure() {
+    RandomStream a = new RandomStream(1, 2, Purpose.RECEIVE, environment);
+    RandomStream b = new RandomStream(1, 2, Purpose.RECEIVE, environment);
+    environment.setTime(10);
+    double keyed = a.doubleAt(5, 6);
+    a.nextDouble();
+    environment.setTime(30);
+    assertEquals(keyed, a.doubleAt(5, 6));
+    assertEquals(keyed, b.doubleAt(5, 6));
+    assertFalse(keyed == a.doubleAt(6, 5));
+    assertEquals(a.nextDouble(), b.nextDouble());
+  }
+
+  /**
+   * Draws made in sequence at a single time are uniform.
+   */
+  public void testDrawsAreUniform() {
+    RandomStream stream = new RandomStream(1, 2, Purpose.LISTEN_NOISE, environment);
+    double[] values = new double[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      values[i] = stream.nextDouble();
+    }
+    assertUniform(values);
+  }
+
+  /**
+   * Keyed draws are uniform across both times and subkeys.
+   */
+  public void testKeyedDrawsAreUniform() {
+    RandomStream stream = new RandomStream(1, 2, Purpose.LISTEN_NOISE, environment);
+    double[] values = new double[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      values[i] = stream.doubleAt(i / 10, i % 10);
+    }
+    assertUniform(values);
+  }
+
+  /**
+   * Check values lie in [0, 1) and pass a chi-squared test of equal width buckets.
+   *
+   * @param values Values to check
+   */
+  private static void assertUniform(double[] values) {
+    int[] counts = new int[BUCKETS];
+    for (double value : values) {
+      assertTrue(value >= 0 && value < 1);
+      counts[(int) (value * BUCKETS)]++;
+    }
+    double expected = (double) values.length / BUCKETS;
+    double chiSquared = 0;
+    for (int count : counts) {
+      chiSquared += (count - expected) * (count - expected) / expected;
+    }
+    // Critical value for 19 degrees of freedom at a significance of 0.001
+    assertTrue("Draws are not uniform, chi-squared " + chiSquared, chiSquared < 43.82);
+  }
+
+}
@@ -0,0 +1,149 @@
+package ecs.soton.dsj1n15.smesh.model.dutycycle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Test that the duty cycle ledger gives the same answers as summing every logged transmission and
+ * stepping through time one ms at a time.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class FullPeriodDutyCycleManagerTest extends TestCase {
+  /** Length of the duty cycle period, short so that the brute force search stays quick */
+  private static final int PERIOD = 2000;
+  /** Number of steps of each random schedule */
+  private static final int STEPS = 2000;
+
+  /**
+   * Transmissions sent as soon as they are allowed, keeping the ledger at its limit.
+   */
+  public void testBusyScheduleMatchesBruteForce() {
+    assertMatchesBruteForce(0.05, 1, 0);
+  }
+
+  /**
+   * Transmissions sent at random gaps, so the period is often part full.
+   */
+  public void testSparseScheduleMatchesBruteForce() {
+    assertMatchesBruteForce(0.05, 2, 400);
+  }
+
+  /**
+   * Transmissions that are each a large share of the allowance.
+   */
+  public void testLongTransmissionsMatchBruteForce() {
+    assertMatchesBruteForce(0.1, 3, 100);
+  }
+
+  /**
+   * Drive the ledger and a brute force manager through the same random schedule, comparing every
+   * query along the way.
+   *
+   * @param dutyCycle Duty cycle of both managers
+   * @param seed Seed of the schedule
+   * @param maxGap Largest gap to leave after a query before the next one
+   */
+  private void assertMatchesBruteForce(double dutyCycle, long seed, int maxGap) {
+    FullPeriodDutyCycleManager ledger = new FullPeriodDutyCycleManager(dutyCycle, PERIOD);
+    BruteForceDutyCycleManager expected = new BruteForceDutyCycleManager(dutyCycle, PERIOD);
+    int allowance = ledger.getPeriodTotalAirtime();
+    Random random = new Random(seed);
+    long time = 0;
+    int sent = 0;
+    for (int step = 0; step < STEPS; step++) {
+      String at = String.format("Step %d at %dms", step, time);
+      int airtime = 1 + random.nextInt(allowance + allowance / 4);
+      // Airtime must be queried first as it looks at the period ending at the current time
+      assertEquals(at, expected.getPeriodAirtime(time), ledger.getPeriodAirtime(time));
+      assertEquals(at, expected.canTransmit(time, airtime), ledger.canTransmit(time, airtime));
+      assertEquals(at, expected.getAvailableTransmitTime(time),
+          ledger.getAvailableTransmitTime(time));
+      long when = expected.whenCanTransmit(time, airtime);
+      assertEquals(at, when, ledger.whenCanTransmit(time, airtime));
+      if (when != Long.MAX_VALUE) {
+        time = when;
+        assertEquals(at, expected.getPeriodAirtime(time), ledger.getPeriodAirtime(time));
+        ledger.transmit(time, airtime);
+        expected.transmit(time, airtime);
+        sent++;
+      }
+      time += maxGap > 0 ? random.nextInt(maxGap) : 0;
+    }
+    assertTrue("Too few transmissions to compare", sent > STEPS / 2);
+  }
+
+  /**
+   * Reference duty cycle manager that keeps every transmission still in the period and sums them
+   * for every query, searching for transmit times one ms at a time.
+   *
+   * @author David Jones (dsj1n15)
+   */
+  private static class BruteForceDutyCycleManager extends DutyCycleManager {
+    private final int dutyCyclePeriod;
+    /** Start time and airtime of every transmission */
+    private final List<long[]> transmissions = new ArrayList<>();
+
+    public BruteForceDutyCycleManager(double dutyCycle, int dutyCyclePeriod) {
+      super(dutyCycle);
+      this.dutyCyclePeriod = dutyCyclePeriod;
+    }
+
+    @Override
+    public void transmit(long time, int airtime) {
+      if (!canTransmit(time, airtime)) {
+        throw new IllegalStateException("Cannot transmit within boundaries of duty cycle manager");
+      }
+      // Times only move forward so transmissions ended before this period are never counted again
+      transmissions.removeIf(t -> t[0] + t[1] < time - dutyCyclePeriod);
+      transmissions.add(new long[] {time, airtime});
+    }
+
+    @Override
+    public boolean canTransmit(long time, int airtime) {
+      int allowance = getPeriodTotalAirtime();
+      int before = allowance - getPeriodAirtime(time + 1);
+      int after = allowance - getPeriodAirtime(time + airtime);
+      return before >= 1 && (after - airtime) >= 0;
+    }
+
+    @Override
+    public long whenCanTransmit(long time, int airtime) {
+      if (airtime > getPeriodTotalAirtime()) {
+        return Long.MAX_VALUE;
+      }
+      while (!canTransmit(time, airtime)) {
+        time++;
+      }
+      return time;
+    }
+
+    @Override
+    public long getAvailableTransmitTime(long time) {
+      int airtime = 0;
+      while (canTransmit(time, airtime + 1)) {
+        airtime++;
+      }
+      return airtime;
+    }
+
+    public int getPeriodAirtime(long time) {
+      long periodStart = time - dutyCyclePeriod;
+      int totalAirtime = 0;
+      for (long[] transmission : transmissions) {
+        if (transmission[0] + transmission[1] < periodStart) {
+          continue;
+        }
+        totalAirtime += transmission[1] - Math.max(0, periodStart - transmission[0]);
+      }
+      return totalAirtime;
+    }
+
+    public int getPeriodTotalAirtime() {
+      return (int) (dutyCyclePeriod * dutyCycle);
+    }
+  }
+
+}
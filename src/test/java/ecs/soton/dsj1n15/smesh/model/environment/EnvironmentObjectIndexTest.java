@@ -0,0 +1,161 @@
+package ecs.soton.dsj1n15.smesh.model.environment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+import math.geom2d.Box2D;
+import math.geom2d.polygon.Rectangle2D;
+
+/**
+ * Test that the object index finds the same objects as box testing every object, for segments in
+ * every direction including those outside of the grid.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class EnvironmentObjectIndexTest extends TestCase {
+  /** Width of the square objects are placed in */
+  private static final double WIDTH = 5000;
+  /** Number of random segments to query */
+  private static final int QUERIES = 5000;
+  /** Distance the index may expand boxes by, larger than it does */
+  private static final double TOLERANCE = 1e-2;
+
+  /**
+   * Many small objects spread over the area, with one covering all of it that is too large to be
+   * held in the grid.
+   */
+  public void testSmallObjectsMatchBruteForce() {
+    List<EnvironmentObject> objects = createObjects(2, 1500, 100);
+    objects.add(2, new Forest(new Rectangle2D(-WIDTH, -WIDTH, 3 * WIDTH, 3 * WIDTH), 0.1));
+    assertMatchesBruteForce(objects, 3);
+  }
+
+  /**
+   * Objects of very different sizes, so many span several cells.
+   */
+  public void testMixedObjectsMatchBruteForce() {
+    assertMatchesBruteForce(createObjects(4, 100, 2000), 5);
+  }
+
+  /**
+   * A single object and no objects at all.
+   */
+  public void testFewObjectsMatchBruteForce() {
+    assertMatchesBruteForce(createObjects(6, 1, 500), 7);
+    assertMatchesBruteForce(createObjects(6, 0, 500), 7);
+  }
+
+  /**
+   * @param seed Seed of the placement
+   * @param count Number of objects
+   * @param maxSize Largest width or height of an object
+   * @return Randomly placed rectangular forests
+   */
+  private static List<EnvironmentObject> createObjects(long seed, int count, double maxSize) {
+    Random random = new Random(seed);
+    List<EnvironmentObject> objects = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      double x = random.nextDouble() * WIDTH;
+      double y = random.nextDouble() * WIDTH;
+      double width = 1 + random.nextDouble() * maxSize;
+      double height = 1 + random.nextDouble() * maxSize;
+      objects.add(new Forest(new Rectangle2D(x, y, width, height), 0.5));
+    }
+    return objects;
+  }
+
+  /**
+   * Query random segments, including axis aligned, zero length and distant ones, and check the
+   * index returns, in order, every object the segment crosses the box of and nothing it only
+   * passes near.
+   *
+   * @param objects Objects to index
+   * @param seed Seed of the segments
+   */
+  private void assertMatchesBruteForce(List<EnvironmentObject> objects, long seed) {
+    EnvironmentObjectIndex index = new EnvironmentObjectIndex(objects);
+    Random random = new Random(seed);
+    int found = 0;
+    for (int q = 0; q < QUERIES; q++) {
+      double x1 = (random.nextDouble() * 1.4 - 0.2) * WIDTH;
+      double y1 = (random.nextDouble() * 1.4 - 0.2) * WIDTH;
+      double x2 = (random.nextDouble() * 1.4 - 0.2) * WIDTH;
+      double y2 = (random.nextDouble() * 1.4 - 0.2) * WIDTH;
+      switch (q % 5) {
+        case 1:
+          x2 = x1;
+          break;
+        case 2:
+          y2 = y1;
+          break;
+        case 3:
+          x2 = x1;
+          y2 = y1;
+          break;
+        default:
+          break;
+      }
+      String segment = String.format("Segment (%f, %f)-(%f, %f)", x1, y1, x2, y2);
+      List<EnvironmentObject> actual = index.query(x1, y1, x2, y2);
+      int position = 0;
+      for (EnvironmentObject object : objects) {
+        boolean returned = position < actual.size() && actual.get(position) == object;
+        if (returned) {
+          position++;
+          found++;
+        }
+        Box2D box = object.getBoundingBox();
+        if (crossesBox(box, 0, x1, y1, x2, y2)) {
+          assertTrue(segment + " missed an object", returned);
+        } else if (!crossesBox(box, TOLERANCE, x1, y1, x2, y2)) {
+          assertFalse(segment + " found a distant object", returned);
+        }
+      }
+      assertEquals(segment + " returned objects out of order", actual.size(), position);
+    }
+    if (!objects.isEmpty()) {
+      assertTrue("No objects found to compare", found > 0);
+    }
+  }
+
+  /**
+   * Clip a segment against each pair of sides of an expanded box in turn.
+   *
+   * @param box Box to test
+   * @param margin Distance to expand the box by
+   * @param x1 X coordinate of the segment start
+   * @param y1 Y coordinate of the segment start
+   * @param x2 X coordinate of the segment end
+   * @param y2 Y coordinate of the segment end
+   * @return Whether any part of the segment is in the box
+   */
+  private static boolean crossesBox(Box2D box, double margin, double x1, double y1, double x2,
+      double y2) {
+    double minX = box.getMinX() - margin;
+    double minY = box.getMinY() - margin;
+    double maxX = box.getMaxX() + margin;
+    double maxY = box.getMaxY() + margin;
+    // Parameter range where the segment is within each slab of the box
+    double t0 = 0;
+    double t1 = 1;
+    double[] starts = {x1, y1};
+    double[] deltas = {x2 - x1, y2 - y1};
+    double[] mins = {minX, minY};
+    double[] maxs = {maxX, maxY};
+    for (int axis = 0; axis < 2; axis++) {
+      if (deltas[axis] == 0) {
+        if (starts[axis] < mins[axis] || starts[axis] > maxs[axis]) {
+          return false;
+        }
+        continue;
+      }
+      double ta = (mins[axis] - starts[axis]) / deltas[axis];
+      double tb = (maxs[axis] - starts[axis]) / deltas[axis];
+      t0 = Math.max(t0, Math.min(ta, tb));
+      t1 = Math.min(t1, Math.max(ta, tb));
+    }
+    return t0 <= t1;
+  }
+
+}
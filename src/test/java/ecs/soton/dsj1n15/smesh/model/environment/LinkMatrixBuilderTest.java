@@ -0,0 +1,127 @@
+package ecs.soton.dsj1n15.smesh.model.environment;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import ecs.soton.dsj1n15.smesh.model.SimulationContext;
+import ecs.soton.dsj1n15.smesh.model.environment.Environment.FreeSpaceModelType;
+import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
+import ecs.soton.dsj1n15.smesh.model.lora.LoRaRadio;
+import ecs.soton.dsj1n15.smesh.radio.Radio;
+import junit.framework.TestCase;
+import math.geom2d.polygon.Rectangle2D;
+
+/**
+ * Test that sparse link matrices hold exactly the pairs of a dense matrix that are within range,
+ * with the same values, across several tiles of nodes.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class LinkMatrixBuilderTest extends TestCase {
+  /** Number of nodes, not a multiple of the tile size so the last tiles are partial */
+  private static final int NODES = 300;
+  /** Width of the square nodes are placed in */
+  private static final double WIDTH = 3000;
+
+  private Environment environment;
+  private LinkMatrix dense;
+
+  @Override
+  protected void setUp() {
+    SimulationContext context = new SimulationContext(0);
+    context.getDebugger().setOutputEnabled(false);
+    environment = new Environment(FreeSpaceModelType.EFSPL, context);
+    environment.getEnvironmentObjects().add(new Forest(new Rectangle2D(0, 0, 1000, 3000), 0.5));
+    Random random = new Random(1);
+    for (int i = 0; i < NODES; i++) {
+      LoRaRadio radio = context.createLoRaRadio(i, LoRaCfg.getDatarate(3));
+      radio.setX(random.nextDouble() * WIDTH);
+      radio.setY(random.nextDouble() * WIDTH);
+      environment.addNode(radio);
+    }
+    dense = environment.computeLinkMatrix();
+  }
+
+  /**
+   * A dense matrix holds every pair.
+   */
+  public void testDenseHoldsEveryPair() {
+    assertFalse(dense.isSparse());
+    assertEquals((long) NODES * (NODES - 1) / 2, dense.getLinkCount());
+    for (int a = 0; a < NODES; a++) {
+      assertEquals(NODES - 1, dense.getNeighbours(a).length);
+      assertEquals(Float.POSITIVE_INFINITY, dense.getPathLoss(a, a));
+    }
+  }
+
+  /**
+   * A sparse matrix holds the pairs within range with the values of the dense matrix.
+   */
+  public void testSparseMatchesDenseWithinRange() {
+    assertSparseMatchesDense(environment.computeLinkMatrix(500), 500);
+  }
+
+  /**
+   * Building on a single thread gives the same matrix as building in parallel.
+   */
+  public void testSparseMatchesDenseOnSingleThread() {
+    ForkJoinPool pool = new ForkJoinPool(1);
+    try {
+      assertSparseMatchesDense(environment.computeLinkMatrix(800, pool), 800);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * A range of zero holds no pairs.
+   */
+  public void testZeroRangeHoldsNothing() {
+    LinkMatrix sparse = environment.computeLinkMatrix(0);
+    assertEquals(0, sparse.getLinkCount());
+    for (int a = 0; a < NODES; a++) {
+      assertEquals(0, sparse.getNeighbours(a).length);
+    }
+  }
+
+  /**
+   * Check every pair of a sparse matrix against the dense matrix.
+   *
+   * @param sparse Sparse matrix to check
+   * @param range Range the sparse matrix was built with
+   */
+  private void assertSparseMatchesDense(LinkMatrix sparse, double range) {
+    assertTrue(sparse.isSparse());
+    assertEquals(NODES, sparse.size());
+    long links = 0;
+    for (int a = 0; a < NODES; a++) {
+      assertSame(dense.getNode(a), sparse.getNode(a));
+      int[] neighbours = sparse.getNeighbours(a);
+      int n = 0;
+      for (int b = 0; b < NODES; b++) {
+        String pair = String.format("Pair %d-%d", a, b);
+        if (b != a && getDistance(sparse.getNode(a), sparse.getNode(b)) <= range) {
+          assertEquals(pair, dense.getPathLoss(a, b), sparse.getPathLoss(a, b));
+          assertTrue(pair, n < neighbours.length && neighbours[n++] == b);
+          links++;
+        } else {
+          assertEquals(pair, Float.POSITIVE_INFINITY, sparse.getPathLoss(a, b));
+        }
+      }
+      assertEquals(n, neighbours.length);
+    }
+    assertTrue("Too few pairs in range", links > NODES);
+    assertEquals(links / 2, sparse.getLinkCount());
+  }
+
+  /**
+   * @param a A node
+   * @param b A node
+   * @return Distance between the nodes in the plane
+   */
+  private static double getDistance(Radio a, Radio b) {
+    double dx = a.getX() - b.getX();
+    double dy = a.getY() - b.getY();
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+}
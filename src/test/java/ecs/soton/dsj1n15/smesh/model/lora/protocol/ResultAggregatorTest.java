@@ -0,0 +1,77 @@
+package ecs.soton.dsj1n15.smesh.model.lora.protocol;
+
+import ecs.soton.dsj1n15.smesh.controller.EnvironmentRunner;
+import ecs.soton.dsj1n15.smesh.model.SimulationContext;
+import ecs.soton.dsj1n15.smesh.model.environment.Environment;
+import ecs.soton.dsj1n15.smesh.model.environment.Environment.FreeSpaceModelType;
+import ecs.soton.dsj1n15.smesh.model.lora.LoRaCfg;
+import ecs.soton.dsj1n15.smesh.model.lora.LoRaRadio;
+import ecs.soton.dsj1n15.smesh.model.lora.ReceiveMode;
+import ecs.soton.dsj1n15.smesh.model.lora.protocol.naive.NaiveBroadcastProtocol;
+import ecs.soton.dsj1n15.smesh.radio.Transmission;
+import junit.framework.TestCase;
+
+/**
+ * Test that the aggregator only resolves a transmission at a receiver once the receiver can no
+ * longer give a result for it, so the receive results listeners hold are only those still to be
+ * resolved.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class ResultAggregatorTest extends TestCase {
+  /** How long to run each protocol for */
+  private static final long RUN_TIME = 10 * 60 * 1000;
+
+  /**
+   * Receive results are not left behind when receiving by interval at any time unit.
+   */
+  public void testIntervalResultsAreResolved() {
+    assertResultsResolved(ReceiveMode.INTERVAL);
+  }
+
+  /**
+   * Receive results are not left behind when receiving by slot at any time unit.
+   */
+  public void testSlotResultsAreResolved() {
+    assertResultsResolved(ReceiveMode.SLOT);
+  }
+
+  /**
+   * Run a line of naive broadcast nodes at the fastest data rates at every time unit and check
+   * every receive result still held is for a transmission the receiver has not resolved.
+   *
+   * @param receiveMode How the radios receive
+   */
+  private void assertResultsResolved(ReceiveMode receiveMode) {
+    for (int unit : new EnvironmentRunner().getTimeUnitOptions()) {
+      for (int dr = 5; dr <= 6; dr++) {
+        SimulationContext context = new SimulationContext(3);
+        context.getDebugger().setOutputEnabled(false);
+        context.setReceiveMode(receiveMode);
+        Environment environment = new Environment(FreeSpaceModelType.EFSPL, context);
+        for (int i = 0; i < 4; i++) {
+          LoRaRadio radio = context.createLoRaRadio(i, LoRaCfg.getDatarate(dr));
+          radio.setX(i * 100);
+          environment.addNode(radio);
+        }
+        NaiveBroadcastProtocol protocol = new NaiveBroadcastProtocol(environment, 0.1, false);
+        EnvironmentRunner runner = new EnvironmentRunner();
+        runner.setTimeUnit(unit);
+        runner.setEnvironment(environment);
+        runner.runFor(RUN_TIME);
+
+        int received = 0;
+        for (ProtocolTickListener listener : protocol.listeners.values()) {
+          for (Transmission transmission : listener.receivedData.keySet()) {
+            assertTrue(String.format("DR%d at %dms left a result of node %d", dr, unit,
+                listener.radio.getID()),
+                protocol.aggregator.isUnresolved(transmission, listener.radio));
+          }
+          received += listener.getReceiveCounts(false).receivedWanted;
+        }
+        assertTrue("Nothing was received", received > 0);
+      }
+    }
+  }
+
+}
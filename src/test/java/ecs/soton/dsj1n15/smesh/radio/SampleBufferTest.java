@@ -0,0 +1,163 @@
+package ecs.soton.dsj1n15.smesh.radio;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+import junit.framework.TestCase;
+
+/**
+ * Test that the sample buffer holds the same samples as a sorted map of partial receives through
+ * random sequences of adding and dropping samples, growing and wrapping its arrays.
+ *
+ * @author David Jones (dsj1n15)
+ */
+public class SampleBufferTest extends TestCase {
+  /** Number of random operations of each sequence */
+  private static final int OPERATIONS = 20000;
+
+  /**
+   * Samples are mostly dropped a few at a time, so the buffer wraps often.
+   */
+  public void testShortWindowMatchesMap() {
+    assertMatchesMap(1, 8);
+  }
+
+  /**
+   * Samples build up before being dropped, so the buffer grows several times.
+   */
+  public void testLongWindowMatchesMap() {
+    assertMatchesMap(2, 400);
+  }
+
+  /**
+   * Samples must be added in increasing time order.
+   */
+  public void testSamplesMustBeInTimeOrder() {
+    SampleBuffer buffer = new SampleBuffer();
+    buffer.add(10, null, 0, 0);
+    try {
+      buffer.add(10, null, 0, 0);
+      fail("Sample at a held time was added");
+    } catch (IllegalArgumentException e) {
+      assertEquals(1, buffer.size());
+    }
+  }
+
+  /**
+   * Apply random operations to a buffer and a map, comparing them after every operation.
+   *
+   * @param seed Seed of the operations
+   * @param window Rough number of samples held before they are dropped
+   */
+  private void assertMatchesMap(long seed, int window) {
+    Random random = new Random(seed);
+    SampleBuffer buffer = new SampleBuffer();
+    TreeMap<Long, PartialReceive> expected = new TreeMap<>();
+    List<Transmission> transmissions = new ArrayList<>();
+    long time = 0;
+    for (int op = 0; op < OPERATIONS; op++) {
+      long version = buffer.getVersion();
+      int choice = random.nextInt(window + 2);
+      if (choice < window) {
+        time += 1 + random.nextInt(20);
+        Transmission transmission = null;
+        if (random.nextInt(4) != 0) {
+          // Reuse recent transmissions so several samples hear each of them
+          if (transmissions.isEmpty() || random.nextInt(5) == 0) {
+            transmissions.add(new Transmission(null, null, time, 1 + random.nextInt(500)));
+          }
+          transmission = transmissions.get(random.nextInt(transmissions.size()));
+        }
+        double snr = random.nextGaussian();
+        double rssi = random.nextGaussian() - 100;
+        buffer.add(time, transmission, snr, rssi);
+        expected.put(time, transmission == null ? null
+            : new PartialReceive(transmission, time, snr, rssi));
+        assertEquals(version, buffer.getVersion());
+      } else if (choice == window) {
+        long to = time - random.nextInt(10 * window + 1);
+        int before = expected.size();
+        buffer.clearTo(to);
+        expected.headMap(to, true).clear();
+        assertEquals(before == expected.size(), version == buffer.getVersion());
+      } else if (random.nextInt(20) == 0) {
+        buffer.clear();
+        expected.clear();
+        transmissions.clear();
+      }
+      assertSameSamples(expected, buffer, random, time);
+    }
+  }
+
+  /**
+   * @param expected Expected samples by time
+   * @param buffer Buffer to check
+   * @param random Source of times to search for
+   * @param time Time of the latest sample added
+   */
+  private static void assertSameSamples(TreeMap<Long, PartialReceive> expected,
+      SampleBuffer buffer, Random random, long time) {
+    assertEquals(expected.size(), buffer.size());
+    assertEquals(expected.isEmpty(), buffer.isEmpty());
+    long earliestEnd = Long.MAX_VALUE;
+    int index = 0;
+    for (Entry<Long, PartialReceive> entry : expected.entrySet()) {
+      PartialReceive sample = entry.getValue();
+      assertEquals((long) entry.getKey(), buffer.getTime(index));
+      if (sample == null) {
+        assertNull(buffer.getTransmission(index));
+        assertTrue(Double.isNaN(buffer.getSNR(index)));
+        assertTrue(Double.isNaN(buffer.getRSSI(index)));
+      } else {
+        assertSame(sample.transmission, buffer.getTransmission(index));
+        assertEquals(sample.snr, buffer.getSNR(index));
+        assertEquals(sample.rssi, buffer.getRSSI(index));
+        earliestEnd = Math.min(earliestEnd, sample.transmission.endTime);
+      }
+      index++;
+    }
+    assertEquals(earliestEnd, buffer.getEarliestEnd());
+    // Search for held times, times between them and times outside of the buffer
+    for (int i = 0; i < 3; i++) {
+      long search = time - random.nextInt(200) + 5;
+      Long ceiling = expected.ceilingKey(search);
+      int from = ceiling == null ? expected.size() : expected.headMap(ceiling).size();
+      assertEquals(from, buffer.indexFrom(search));
+      assertEquals(expected.containsKey(search), buffer.contains(search));
+      assertEquals(expected.containsKey(search) ? from : -1, buffer.indexOf(search));
+    }
+    if (random.nextInt(50) == 0) {
+      assertSameMap(expected, buffer.asMap());
+    }
+  }
+
+  /**
+   * @param expected Expected samples by time
+   * @param actual Map view of the buffer
+   */
+  private static void assertSameMap(TreeMap<Long, PartialReceive> expected,
+      Map<Long, PartialReceive> actual) {
+    assertEquals(expected.size(), actual.size());
+    Iterator<Entry<Long, PartialReceive>> iterator = actual.entrySet().iterator();
+    for (Entry<Long, PartialReceive> entry : expected.entrySet()) {
+      assertTrue(iterator.hasNext());
+      Entry<Long, PartialReceive> next = iterator.next();
+      assertEquals(entry.getKey(), next.getKey());
+      assertEquals(entry.getValue() == null, next.getValue() == null);
+      assertEquals(entry.getValue() == null, actual.get(entry.getKey()) == null);
+      assertTrue(actual.containsKey(entry.getKey()));
+      if (entry.getValue() != null) {
+        assertSame(entry.getValue().transmission, next.getValue().transmission);
+        assertEquals(entry.getValue().time, next.getValue().time);
+        assertEquals(entry.getValue().snr, next.getValue().snr);
+        assertEquals(entry.getValue().rssi, next.getValue().rssi);
+      }
+    }
+    assertFalse(iterator.hasNext());
+  }
+
+}